@@ -0,0 +1,90 @@
+package geometries;
+
+import geometries.Intersectable.GeoPoint;
+import primitives.Double3;
+import primitives.Ray;
+
+import java.util.List;
+
+/**
+ * A spatial index over the primitives of a {@link Geometries}, which answers the ray queries without testing
+ * every primitive. Different scenes suit different indexes, so the index is chosen per scene
+ * (see {@link Geometries#buildAccelerator(Type)}).
+ *
+ * @author Yair and Noam
+ */
+public interface Accelerator
+{
+	/**
+	 * The available kinds of spatial indexes
+	 */
+	enum Type
+	{
+		/**
+		 * No index - every primitive is tested by every ray
+		 */
+		NONE,
+
+		/**
+		 * A bounding volume hierarchy built by the surface area heuristic, suits most scenes
+		 */
+		BVH,
+
+		/**
+		 * A uniform grid traversed by a 3D-DDA, suits many small primitives spread evenly
+		 */
+		GRID,
+
+		/**
+		 * An octree, suits many small primitives that are not spread evenly
+		 */
+		OCTREE
+	}
+
+	/**
+	 * Finds all the intersections of a ray with the primitives up to a given distance.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the intersections, or null if there are none
+	 */
+	List<GeoPoint> findGeoIntersections(Ray ray, double maxDistance);
+
+	/**
+	 * Finds the intersection nearest to the ray origin, see
+	 * {@link Intersectable#findClosestGeoIntersection(Ray, double)}.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	double findClosestGeoIntersection(Ray ray, double maxDistance, GeoPoint hit);
+
+	/**
+	 * Finds the intersections nearest to the origins of a bundle of rays. An index that can trace coherent
+	 * rays together (e.g. the primary rays of neighbouring pixels) overrides it, the default implementation
+	 * searches every ray on its own.
+	 *
+	 * @param rays         the rays
+	 * @param maxDistances the distance of the best hit of every ray so far, updated in place
+	 * @param hits         the hit records of the rays to update
+	 */
+	default void findClosestGeoIntersections(Ray[] rays, double[] maxDistances, GeoPoint[] hits)
+	{
+		for (int i = 0; i < rays.length; i++)
+			maxDistances[i] = findClosestGeoIntersection(rays[i], maxDistances[i], hits[i]);
+	}
+
+	/**
+	 * Calculates the transparency along a ray up to a given distance, see
+	 * {@link Intersectable#findTransparency(Ray, double, double)}.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param ktr         the transparency accumulated so far
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the accumulated transparency, the {@link Double3#ZERO} constant if the light is blocked
+	 */
+	Double3 findTransparency(Ray ray, double maxDistance, Double3 ktr, double minK);
+}
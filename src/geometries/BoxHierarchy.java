@@ -0,0 +1,114 @@
+package geometries;
+
+import primitives.Point;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A bounding volume hierarchy over items known only by their axis-aligned boxes, which finds the boxes that
+ * contain a point - for example the lights whose sphere of influence reaches a shaded point.
+ * The hierarchy is built and kept in flat arrays by a {@link FlatTree}, in the layout the {@link Mesh} keeps
+ * its tree in. A query walks it without a stack: every node keeps the index that follows its sub-tree, where
+ * the walk goes on when the node does not contain the point.
+ *
+ * @author Yair and Noam
+ */
+public final class BoxHierarchy
+{
+	/**
+	 * The boxes of the items, 6 values per item: minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	private final double[] boxes;
+
+	/**
+	 * The item indices, ordered so that every leaf covers a continuous range
+	 */
+	private final int[] items;
+
+	/**
+	 * The boxes of the nodes, 6 values per node
+	 */
+	private final double[] bounds;
+
+	/**
+	 * Two values per node: the right child and -1 - axis of an inner node, or the first item and the amount
+	 * of items of a leaf
+	 */
+	private final int[] nodes;
+
+	/**
+	 * The index that follows the sub-tree of every node in the depth-first order
+	 */
+	private final int[] skips;
+
+	/**
+	 * Builds the hierarchy over the given boxes. The array is kept as is (not copied).
+	 *
+	 * @param boxes the boxes of the items, 6 values per item: minX, minY, minZ, maxX, maxY, maxZ
+	 * @throws IllegalArgumentException if the array is not made of whole boxes
+	 */
+	public BoxHierarchy(double[] boxes)
+	{
+		if (boxes.length % 6 != 0)
+			throw new IllegalArgumentException("The box array must hold 6 bounds per box");
+
+		this.boxes = boxes;
+		FlatTree tree = new FlatTree(boxes, boxes.length / 6, 1);
+		items = tree.order;
+		bounds = tree.bounds;
+		nodes = tree.nodes;
+
+		// the sub-tree of an inner node ends where the sub-tree of its right child (which comes later) does
+		int nodeCount = nodes.length / 2;
+		skips = new int[nodeCount];
+		for (int node = nodeCount - 1; node >= 0; node--)
+			skips[node] = nodes[2 * node + 1] < 0 ? skips[nodes[2 * node]] : node + 1;
+	}
+
+	/**
+	 * Checks whether a box contains a point, its faces included.
+	 *
+	 * @param array  the array of the box
+	 * @param offset the offset of the box in the array
+	 * @param x      the x coordinate of the point
+	 * @param y      the y coordinate of the point
+	 * @param z      the z coordinate of the point
+	 * @return true if the point is in the box
+	 */
+	private static boolean contains(double[] array, int offset, double x, double y, double z)
+	{
+		return array[offset] <= x && x <= array[offset + 3]
+				&& array[offset + 1] <= y && y <= array[offset + 4]
+				&& array[offset + 2] <= z && z <= array[offset + 5];
+	}
+
+	/**
+	 * Visits every item whose box contains a point, in no particular order.
+	 *
+	 * @param point  the point
+	 * @param action the action done with the index of every item found
+	 */
+	public void forEachContaining(Point point, IntConsumer action)
+	{
+		double x = point.getX(), y = point.getY(), z = point.getZ();
+		int node = 0;
+		while (node < skips.length)
+		{
+			if (!contains(bounds, 6 * node, x, y, z))
+			{
+				node = skips[node];
+				continue;
+			}
+
+			int count = nodes[2 * node + 1];
+			if (count >= 0)
+			{
+				int first = nodes[2 * node];
+				for (int i = first; i < first + count; i++)
+					if (contains(boxes, 6 * items[i], x, y, z))
+						action.accept(items[i]);
+			}
+			node++;
+		}
+	}
+}
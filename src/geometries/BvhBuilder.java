@@ -0,0 +1,612 @@
+package geometries;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Top-down builder of a bounding volume hierarchy that chooses its splits by the surface area heuristic (SAH).
+ * The primitives are described only by their bounding boxes, so the same builder serves any kind of node
+ * representation - the subclasses decide how a leaf and an inner node are created.
+ * Every level bins the primitive centroids into a fixed amount of buckets per axis, so each level costs O(n)
+ * and the whole build costs O(n log n).
+ * With a parallelism above 1 the build runs on a fork/join pool: the two sub-hierarchies of every big enough
+ * node are built by separate tasks, and the top levels - where a single node holds most of the primitives -
+ * also bin their primitives in parallel. The subclasses must then create nodes safely from several threads.
+ *
+ * @param <N> the type of the nodes created by the builder
+ * @author Yair and Noam
+ */
+abstract class BvhBuilder<N>
+{
+	/**
+	 * Amount of buckets the centroids are binned into on every axis
+	 */
+	static final int BIN_COUNT = 16;
+
+	/**
+	 * Maximal amount of primitives that may share a leaf
+	 */
+	static final int MAX_LEAF_SIZE = 4;
+
+	/**
+	 * Estimated cost of visiting an inner node (testing a box)
+	 */
+	static final double TRAVERSAL_COST = 1;
+
+	/**
+	 * Estimated cost of intersecting a single primitive
+	 */
+	static final double INTERSECTION_COST = 1;
+
+	/**
+	 * Smallest amount of primitives whose sub-hierarchy is built by its own fork/join task
+	 */
+	static final int PARALLEL_CUTOFF = 4096;
+
+	/**
+	 * Amount of primitives binned by a single fork/join task, nodes with more than twice this amount are
+	 * binned in parallel
+	 */
+	static final int BINNING_GRAIN = 32768;
+
+	/**
+	 * Maximal amount of threads building the hierarchy, 1 for a sequential build
+	 */
+	private final int parallelism;
+
+	/**
+	 * Bounding boxes of the primitives, 6 values per primitive: minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	protected final double[] bounds;
+
+	/**
+	 * Centroids of the primitives' bounding boxes, 3 values per primitive
+	 */
+	protected final double[] centroids;
+
+	/**
+	 * Permutation of the primitive indices, every leaf covers a continuous range of it
+	 */
+	protected final int[] order;
+
+	/**
+	 * Constructs a sequential builder over the given primitive bounding boxes.
+	 *
+	 * @param bounds the bounding boxes of the primitives, 6 values per primitive
+	 * @param count  the amount of primitives
+	 */
+	BvhBuilder(double[] bounds, int count)
+	{
+		this(bounds, count, 1);
+	}
+
+	/**
+	 * Constructs a builder over the given primitive bounding boxes.
+	 *
+	 * @param bounds      the bounding boxes of the primitives, 6 values per primitive
+	 * @param count       the amount of primitives
+	 * @param parallelism the maximal amount of threads building the hierarchy, 1 for a sequential build
+	 */
+	BvhBuilder(double[] bounds, int count, int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive");
+
+		this.parallelism = parallelism;
+		this.bounds = bounds;
+		this.centroids = new double[3 * count];
+		this.order = new int[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = i;
+			for (int axis = 0; axis < 3; axis++)
+				centroids[3 * i + axis] = (bounds[6 * i + axis] + bounds[6 * i + axis + 3]) / 2d;
+		}
+	}
+
+	/**
+	 * Creates a leaf that holds the primitives {@code order[begin..end)}.
+	 *
+	 * @param begin the first index (inclusive) in {@link #order}
+	 * @param end   the last index (exclusive) in {@link #order}
+	 * @return the leaf node
+	 */
+	protected abstract N createLeaf(int begin, int end);
+
+	/**
+	 * Creates an inner node with the given two children.
+	 *
+	 * @param left  the child holding the lower part of the split
+	 * @param right the child holding the upper part of the split
+	 * @param axis  the axis the primitives were split along (0 - x, 1 - y, 2 - z)
+	 * @return the inner node
+	 */
+	protected abstract N createNode(N left, N right, int axis);
+
+	/**
+	 * Builds the hierarchy over all the primitives.
+	 *
+	 * @return the root node, or null if there are no primitives
+	 */
+	N build()
+	{
+		if (order.length == 0)
+			return null;
+
+		if (parallelism == 1 || order.length < PARALLEL_CUTOFF)
+			return build(0, order.length);
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			return pool.invoke(new BuildTask(0, order.length));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Builds the sub-hierarchy over the primitives {@code order[begin..end)}.
+	 *
+	 * @param begin the first index (inclusive) in {@link #order}
+	 * @param end   the last index (exclusive) in {@link #order}
+	 * @return the root of the sub-hierarchy
+	 */
+	N build(int begin, int end)
+	{
+		int count = end - begin;
+		if (count == 1)
+			return createLeaf(begin, end);
+
+		Split split = findSplit(begin, end);
+		if (split == null)
+			return createLeaf(begin, end);
+
+		return createNode(build(begin, split.middle), build(split.middle, end), split.axis);
+	}
+
+	/**
+	 * Builds the sub-hierarchy over a range of primitives, forking a task for the lower part of every split until
+	 * the parts become too small to be worth a task of their own
+	 */
+	private final class BuildTask extends RecursiveTask<N>
+	{
+		/**
+		 * The serialization version - a task is serializable through ForkJoinTask, but never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The first index (inclusive) in {@link #order}
+		 */
+		private final int begin;
+
+		/**
+		 * The last index (exclusive) in {@link #order}
+		 */
+		private final int end;
+
+		/**
+		 * Constructs a task over the primitives {@code order[begin..end)}.
+		 *
+		 * @param begin the first index (inclusive) in {@link #order}
+		 * @param end   the last index (exclusive) in {@link #order}
+		 */
+		BuildTask(int begin, int end)
+		{
+			this.begin = begin;
+			this.end = end;
+		}
+
+		/**
+		 * Builds the sub-hierarchy over the range.
+		 *
+		 * @return the root of the sub-hierarchy
+		 */
+		@Override
+		protected N compute()
+		{
+			if (end - begin < PARALLEL_CUTOFF)
+				return build(begin, end);
+
+			Split split = end - begin < 2 * BINNING_GRAIN ? findSplit(begin, end) : findSplitInParallel(begin, end);
+			if (split == null)
+				return createLeaf(begin, end);
+
+			BuildTask lower = new BuildTask(begin, split.middle);
+			lower.fork();
+			N upper = new BuildTask(split.middle, end).compute();
+			return createNode(lower.join(), upper, split.axis);
+		}
+	}
+
+	/**
+	 * Reduces a range of primitives into their boxes or their bins, splitting the range between fork/join tasks
+	 */
+	private final class ReduceTask extends RecursiveTask<double[]>
+	{
+		/**
+		 * The serialization version - a task is serializable through ForkJoinTask, but never serialized
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The first index (inclusive) in {@link #order}
+		 */
+		private final int begin;
+
+		/**
+		 * The last index (exclusive) in {@link #order}
+		 */
+		private final int end;
+
+		/**
+		 * The bounding box of the centroids to bin by, or null for reducing the boxes
+		 */
+		private final double[] centroidBox;
+
+		/**
+		 * Constructs a task over the primitives {@code order[begin..end)}.
+		 *
+		 * @param begin       the first index (inclusive) in {@link #order}
+		 * @param end         the last index (exclusive) in {@link #order}
+		 * @param centroidBox the bounding box of the centroids to bin by, or null for reducing the boxes
+		 */
+		ReduceTask(int begin, int end, double[] centroidBox)
+		{
+			this.begin = begin;
+			this.end = end;
+			this.centroidBox = centroidBox;
+		}
+
+		/**
+		 * Reduces the range.
+		 *
+		 * @return the boxes as returned by {@link #rangeBoxes}, or the bins as returned by {@link #binCentroids}
+		 */
+		@Override
+		protected double[] compute()
+		{
+			if (end - begin <= BINNING_GRAIN)
+				return centroidBox == null ? rangeBoxes(begin, end) : binCentroids(begin, end, centroidBox);
+
+			int middle = (begin + end) >>> 1;
+			ReduceTask lower = new ReduceTask(begin, middle, centroidBox);
+			lower.fork();
+			double[] result = new ReduceTask(middle, end, centroidBox).compute();
+			double[] other = lower.join();
+
+			// boxes are 6 values each, bins are an amount followed by a box
+			int stride = centroidBox == null ? 6 : 7;
+			int box = centroidBox == null ? 0 : 1;
+			for (int offset = 0; offset < result.length; offset += stride)
+			{
+				if (box == 1)
+					result[offset] += other[offset];
+				for (int k = 0; k < 3; k++)
+				{
+					result[offset + box + k] = Math.min(result[offset + box + k], other[offset + box + k]);
+					result[offset + box + 3 + k] = Math.max(result[offset + box + 3 + k], other[offset + box + 3 + k]);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The chosen partition of a range of primitives
+	 *
+	 * @param axis   the axis the range was split along
+	 * @param middle the first index of the upper part
+	 */
+	record Split(int axis, int middle) {}
+
+	/**
+	 * Finds the cheapest split of {@code order[begin..end)} according to the SAH, and partitions the range
+	 * accordingly.
+	 *
+	 * @param begin the first index (inclusive) in {@link #order}
+	 * @param end   the last index (exclusive) in {@link #order}
+	 * @return the split, or null if a leaf is cheaper than any split
+	 */
+	Split findSplit(int begin, int end)
+	{
+		double[] boxes = rangeBoxes(begin, end);
+		double[] nodeBox = Arrays.copyOfRange(boxes, 0, 6);
+		double[] centroidBox = Arrays.copyOfRange(boxes, 6, 12);
+
+		return chooseSplit(begin, end, nodeBox, centroidBox, binCentroids(begin, end, centroidBox), end - begin);
+	}
+
+	/**
+	 * Finds the cheapest split like {@link #findSplit}, but calculates the boxes and the bins of the range by
+	 * several fork/join tasks. Must be called from within the fork/join pool.
+	 *
+	 * @param begin the first index (inclusive) in {@link #order}
+	 * @param end   the last index (exclusive) in {@link #order}
+	 * @return the split, or null if a leaf is cheaper than any split
+	 */
+	Split findSplitInParallel(int begin, int end)
+	{
+		double[] boxes = new ReduceTask(begin, end, null).invoke();
+		double[] nodeBox = Arrays.copyOfRange(boxes, 0, 6);
+		double[] centroidBox = Arrays.copyOfRange(boxes, 6, 12);
+
+		double[] bins = new ReduceTask(begin, end, centroidBox).invoke();
+		return chooseSplit(begin, end, nodeBox, centroidBox, bins, end - begin);
+	}
+
+	/**
+	 * Calculates the bounding box of the primitives {@code order[begin..end)} and the bounding box of their
+	 * centroids.
+	 *
+	 * @param begin the first index (inclusive) in {@link #order}
+	 * @param end   the last index (exclusive) in {@link #order}
+	 * @return the box of the primitives followed by the box of the centroids, 12 values
+	 */
+	double[] rangeBoxes(int begin, int end)
+	{
+		double[] nodeBox = emptyBox();
+		double[] centroidBox = emptyBox();
+		for (int i = begin; i < end; i++)
+		{
+			int prim = order[i];
+			growBox(nodeBox, bounds, 6 * prim);
+			growPoint(centroidBox, centroids, 3 * prim);
+		}
+
+		double[] boxes = Arrays.copyOf(nodeBox, 12);
+		System.arraycopy(centroidBox, 0, boxes, 6, 6);
+		return boxes;
+	}
+
+	/**
+	 * Bins the primitives {@code order[begin..end)} on all three axes.
+	 * For every axis and bucket, the result holds the amount of primitives followed by their bounding box,
+	 * 7 values per bucket.
+	 *
+	 * @param begin       the first index (inclusive) in {@link #order}
+	 * @param end         the last index (exclusive) in {@link #order}
+	 * @param centroidBox the bounding box of the centroids of the range
+	 * @return the bins, indexed by {@code (axis * BIN_COUNT + bin) * 7}
+	 */
+	double[] binCentroids(int begin, int end, double[] centroidBox)
+	{
+		double[] bins = new double[3 * BIN_COUNT * 7];
+		for (int b = 0; b < 3 * BIN_COUNT; b++)
+			resetBin(bins, b * 7);
+
+		for (int i = begin; i < end; i++)
+		{
+			int prim = order[i];
+			for (int axis = 0; axis < 3; axis++)
+			{
+				int bin = binOf(centroids[3 * prim + axis], centroidBox, axis);
+				if (bin < 0)
+					continue;
+				int offset = (axis * BIN_COUNT + bin) * 7;
+				bins[offset]++;
+				for (int k = 0; k < 3; k++)
+				{
+					bins[offset + 1 + k] = Math.min(bins[offset + 1 + k], bounds[6 * prim + k]);
+					bins[offset + 4 + k] = Math.max(bins[offset + 4 + k], bounds[6 * prim + 3 + k]);
+				}
+			}
+		}
+
+		return bins;
+	}
+
+	/**
+	 * Evaluates the SAH cost of every bucket boundary on every axis, and partitions the range by the cheapest.
+	 *
+	 * @param begin       the first index (inclusive) in {@link #order}
+	 * @param end         the last index (exclusive) in {@link #order}
+	 * @param nodeBox     the bounding box of the range
+	 * @param centroidBox the bounding box of the centroids of the range
+	 * @param bins        the bins as returned by {@link #binCentroids}
+	 * @param count       the amount of primitives in the range
+	 * @return the split, or null if a leaf is cheaper than any split
+	 */
+	Split chooseSplit(int begin, int end, double[] nodeBox, double[] centroidBox, double[] bins, int count)
+	{
+		double nodeArea = surfaceArea(nodeBox, 0);
+		double bestCost = Double.POSITIVE_INFINITY;
+		int bestAxis = -1;
+		int bestBin = -1;
+
+		double[] rightArea = new double[BIN_COUNT];
+		int[] rightCount = new int[BIN_COUNT];
+		double[] box = new double[6];
+
+		for (int axis = 0; axis < 3; axis++)
+		{
+			if (centroidBox[axis + 3] - centroidBox[axis] <= 0)
+				continue; // all the centroids are on the same plane - no split on this axis
+
+			int base = axis * BIN_COUNT * 7;
+
+			// sweep from the right, remembering the area and amount right of every boundary
+			resetBin(box, -1);
+			int accumulated = 0;
+			for (int bin = BIN_COUNT - 1; bin > 0; bin--)
+			{
+				accumulated += growByBin(box, bins, base + bin * 7);
+				rightCount[bin] = accumulated;
+				rightArea[bin] = surfaceArea(box, 0);
+			}
+
+			// sweep from the left and evaluate every boundary
+			resetBin(box, -1);
+			accumulated = 0;
+			for (int bin = 0; bin < BIN_COUNT - 1; bin++)
+			{
+				accumulated += growByBin(box, bins, base + bin * 7);
+				if (accumulated == 0 || rightCount[bin + 1] == 0)
+					continue;
+
+				double cost = TRAVERSAL_COST + INTERSECTION_COST *
+						(surfaceArea(box, 0) * accumulated + rightArea[bin + 1] * rightCount[bin + 1]) / nodeArea;
+				if (cost < bestCost)
+				{
+					bestCost = cost;
+					bestAxis = axis;
+					bestBin = bin;
+				}
+			}
+		}
+
+		if (bestAxis == -1)
+			// identical centroids - split in the middle so that big leaves are not created
+			return count <= MAX_LEAF_SIZE ? null : new Split(0, begin + count / 2);
+
+		if (count <= MAX_LEAF_SIZE && bestCost >= INTERSECTION_COST * count)
+			return null;
+
+		return new Split(bestAxis, partition(begin, end, bestAxis, bestBin, centroidBox));
+	}
+
+	/**
+	 * Reorders {@code order[begin..end)} so that the primitives binned up to (and including) the given bucket are
+	 * at the start of the range.
+	 *
+	 * @param begin       the first index (inclusive) in {@link #order}
+	 * @param end         the last index (exclusive) in {@link #order}
+	 * @param axis        the split axis
+	 * @param bin         the last bucket of the lower part
+	 * @param centroidBox the bounding box of the centroids of the range
+	 * @return the first index of the upper part
+	 */
+	int partition(int begin, int end, int axis, int bin, double[] centroidBox)
+	{
+		int i = begin, j = end - 1;
+		while (i <= j)
+		{
+			if (binOf(centroids[3 * order[i] + axis], centroidBox, axis) <= bin)
+				i++;
+			else
+			{
+				int temp = order[i];
+				order[i] = order[j];
+				order[j--] = temp;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the bucket a centroid coordinate belongs to.
+	 *
+	 * @param value       the centroid coordinate
+	 * @param centroidBox the bounding box of the centroids
+	 * @param axis        the axis of the coordinate
+	 * @return the bucket index, or -1 if the axis has no extent
+	 */
+	static int binOf(double value, double[] centroidBox, int axis)
+	{
+		double extent = centroidBox[axis + 3] - centroidBox[axis];
+		if (extent <= 0)
+			return -1;
+		int bin = (int) ((value - centroidBox[axis]) * (BIN_COUNT / extent));
+		return bin >= BIN_COUNT ? BIN_COUNT - 1 : Math.max(bin, 0);
+	}
+
+	/**
+	 * Creates an empty box (every minimum is +infinity and every maximum is -infinity).
+	 *
+	 * @return the box as 6 values
+	 */
+	static double[] emptyBox()
+	{
+		double[] box = new double[6];
+		resetBin(box, -1);
+		return box;
+	}
+
+	/**
+	 * Resets a bucket (amount followed by a box) or, when {@code offset} is -1, a bare box that starts at index 0.
+	 *
+	 * @param array  the array holding the bucket
+	 * @param offset the offset of the bucket, or -1 for a bare box
+	 */
+	static void resetBin(double[] array, int offset)
+	{
+		int box = offset + 1;
+		if (offset >= 0)
+			array[offset] = 0;
+		for (int k = 0; k < 3; k++)
+		{
+			array[box + k] = Double.POSITIVE_INFINITY;
+			array[box + 3 + k] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Grows a box so that it contains a bucket's box.
+	 *
+	 * @param box    the box to grow
+	 * @param bins   the bins array
+	 * @param offset the offset of the bucket
+	 * @return the amount of primitives in the bucket
+	 */
+	static int growByBin(double[] box, double[] bins, int offset)
+	{
+		if (bins[offset] == 0)
+			return 0;
+		growBox(box, bins, offset + 1);
+		return (int) bins[offset];
+	}
+
+	/**
+	 * Grows a box so that it contains another box.
+	 *
+	 * @param box    the box to grow
+	 * @param other  the array holding the other box
+	 * @param offset the offset of the other box
+	 */
+	static void growBox(double[] box, double[] other, int offset)
+	{
+		for (int k = 0; k < 3; k++)
+		{
+			box[k] = Math.min(box[k], other[offset + k]);
+			box[k + 3] = Math.max(box[k + 3], other[offset + 3 + k]);
+		}
+	}
+
+	/**
+	 * Grows a box so that it contains a point.
+	 *
+	 * @param box    the box to grow
+	 * @param points the array holding the point
+	 * @param offset the offset of the point
+	 */
+	static void growPoint(double[] box, double[] points, int offset)
+	{
+		for (int k = 0; k < 3; k++)
+		{
+			box[k] = Math.min(box[k], points[offset + k]);
+			box[k + 3] = Math.max(box[k + 3], points[offset + k]);
+		}
+	}
+
+	/**
+	 * Calculates the surface area of a box, an empty box has no area.
+	 *
+	 * @param box    the array holding the box
+	 * @param offset the offset of the box
+	 * @return the surface area
+	 */
+	static double surfaceArea(double[] box, int offset)
+	{
+		double dx = box[offset + 3] - box[offset];
+		double dy = box[offset + 4] - box[offset + 1];
+		double dz = box[offset + 5] - box[offset + 2];
+		if (dx < 0 || dy < 0 || dz < 0)
+			return 0;
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+}
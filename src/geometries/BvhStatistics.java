@@ -0,0 +1,30 @@
+package geometries;
+
+/**
+ * Build-time and quality report of a bounding volume hierarchy, used for comparing the hierarchy builders.
+ * The SAH cost is the expected cost of tracing a ray that hits the root box, relative to the cost of
+ * intersecting a single primitive - lower is better.
+ *
+ * @param builder        the name of the builder that produced the hierarchy
+ * @param buildTimeNanos the time it took to build the hierarchy, in nanoseconds
+ * @param primitiveCount the amount of bounded primitives in the hierarchy
+ * @param nodeCount      the amount of box nodes in the hierarchy
+ * @param maxDepth       the depth of the deepest box node (the root is at depth 1)
+ * @param sahCost        the surface area heuristic cost of the hierarchy
+ * @author Yair and Noam
+ */
+public record BvhStatistics(String builder, long buildTimeNanos, int primitiveCount, int nodeCount, int maxDepth,
+							double sahCost)
+{
+	/**
+	 * Returns a one-line human readable report.
+	 *
+	 * @return the report
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("%s BVH: %d primitives, %d nodes, depth %d, SAH cost %.2f, built in %.3f ms",
+							 builder, primitiveCount, nodeCount, maxDepth, sahCost, buildTimeNanos / 1e6);
+	}
+}
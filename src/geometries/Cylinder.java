@@ -55,18 +55,9 @@ public class Cylinder extends Tube
 		Point p0 = axisRay.getP0();
 		Vector v0 = axisRay.getDir();
 		
-		Vector v;
-		double t = 0;
-		
-		try
-		{
-			v = p.subtract(p0);
-			t = v.dotProduct(v0);
-		}
-		catch (IllegalArgumentException e)
-		{
-			t = 0;
-		}
+		// (p - p0) * v0 by components, as p may be p0 itself - the center of the bottom base
+		double t = (p.getX() - p0.getX()) * v0.getX() + (p.getY() - p0.getY()) * v0.getY()
+				+ (p.getZ() - p0.getZ()) * v0.getZ();
 		
 		if (t == 0) // bottom base
 		{
@@ -0,0 +1,846 @@
+package geometries;
+
+import geometries.Intersectable.GeoPoint;
+import primitives.Box;
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static primitives.Util.alignZero;
+
+/**
+ * A bounding volume hierarchy compiled into flat arrays.
+ * The nodes are stored in depth-first order, so the left child of a node always directly follows it,
+ * and for every node the arrays hold:
+ * <ul>
+ * <li>{@code bounds[6i..6i+6)} - minX, minY, minZ, maxX, maxY, maxZ of the node box</li>
+ * <li>{@code nodes[3i]} - the index of the right child for an inner node, or the index of the first primitive
+ * in {@code primitives} for a leaf</li>
+ * <li>{@code nodes[3i+1]} - the amount of primitives of a leaf, 0 for an inner node</li>
+ * <li>{@code nodes[3i+2]} - the axis the children of an inner node are separated along</li>
+ * </ul>
+ * The traversal is iterative with an explicit stack, and visits the child nearer to the ray origin first.
+ * The unbounded primitives stay outside the tree and are tested by every ray - the planes among them by a
+ * dedicated test over their coefficients, so a floor plane costs a single dot product or two per ray.
+ *
+ * @author Yair and Noam
+ */
+final class FlatBvh implements Accelerator
+{
+	/**
+	 * The boxes of the nodes, 6 values per node
+	 */
+	final double[] bounds;
+
+	/**
+	 * The child/primitive offsets of the nodes, 3 values per node
+	 */
+	final int[] nodes;
+
+	/**
+	 * The primitives, ordered so that every leaf covers a continuous range
+	 */
+	final Intersectable[] primitives;
+
+	/**
+	 * The primitives without a finite box, other than planes, tested by every ray
+	 */
+	final Intersectable[] unbounded;
+
+	/**
+	 * The unbounded planes, tested by every ray
+	 */
+	final Plane[] planes;
+
+	/**
+	 * The coefficients of the planes, 4 values per plane - the normal, and its dot product with a point on
+	 * the plane
+	 */
+	final double[] planeCoefficients;
+
+	/**
+	 * The depth of the deepest node, bounds the size of the traversal stack
+	 */
+	final int maxDepth;
+
+	/**
+	 * Compiles a hierarchy of nested Geometries into flat arrays.
+	 * Every Geometries whose elements are all primitives becomes a leaf, any other Geometries is split into a
+	 * binary sub-tree over its elements.
+	 *
+	 * @param elements the top level elements of the hierarchy
+	 */
+	FlatBvh(List<Intersectable> elements)
+	{
+		List<Intersectable> bounded = new ArrayList<>();
+		List<Intersectable> infinite = new ArrayList<>();
+		List<Plane> infinitePlanes = new ArrayList<>();
+		for (Intersectable geo : elements)
+		{
+			if (!geo.box.checkInfinite())
+				bounded.add(geo);
+			else if (geo instanceof Plane plane)
+				infinitePlanes.add(plane);
+			else
+				infinite.add(geo);
+		}
+
+		Compiler compiler = new Compiler(countPrimitives(bounded));
+		if (!bounded.isEmpty())
+			compiler.compileGroup(bounded, 0, bounded.size(), 1);
+
+		bounds = Arrays.copyOf(compiler.bounds, 6 * compiler.nodeCount);
+		nodes = Arrays.copyOf(compiler.nodes, 3 * compiler.nodeCount);
+		primitives = compiler.primitives;
+		unbounded = infinite.toArray(new Intersectable[0]);
+		maxDepth = compiler.maxDepth;
+
+		planes = infinitePlanes.toArray(new Plane[0]);
+		planeCoefficients = new double[4 * planes.length];
+		refitPlanes();
+	}
+
+	/**
+	 * Recalculates the boxes of the nodes from the current boxes of the primitives, keeping the structure of
+	 * the tree. A node always comes before its children, so a single pass backwards over the nodes is enough.
+	 */
+	void refit()
+	{
+		for (int node = nodes.length / 3 - 1; node >= 0; node--)
+		{
+			int offset = 6 * node;
+			bounds[offset] = bounds[offset + 1] = bounds[offset + 2] = Double.POSITIVE_INFINITY;
+			bounds[offset + 3] = bounds[offset + 4] = bounds[offset + 5] = Double.NEGATIVE_INFINITY;
+
+			int count = nodes[3 * node + 1];
+			if (count == 0)
+			{
+				include(offset, 6 * (node + 1));
+				include(offset, 6 * nodes[3 * node]);
+				continue;
+			}
+
+			int first = nodes[3 * node];
+			for (int i = first; i < first + count; i++)
+			{
+				Box box = primitives[i].box;
+				bounds[offset] = Math.min(bounds[offset], box.minX);
+				bounds[offset + 1] = Math.min(bounds[offset + 1], box.minY);
+				bounds[offset + 2] = Math.min(bounds[offset + 2], box.minZ);
+				bounds[offset + 3] = Math.max(bounds[offset + 3], box.maxX);
+				bounds[offset + 4] = Math.max(bounds[offset + 4], box.maxY);
+				bounds[offset + 5] = Math.max(bounds[offset + 5], box.maxZ);
+			}
+		}
+
+		refitPlanes();
+	}
+
+	/**
+	 * Grows the box of a node so that it contains the box of another node.
+	 *
+	 * @param offset the offset of the growing box in {@code bounds}
+	 * @param other  the offset of the contained box in {@code bounds}
+	 */
+	private void include(int offset, int other)
+	{
+		for (int k = 0; k < 3; k++)
+		{
+			bounds[offset + k] = Math.min(bounds[offset + k], bounds[other + k]);
+			bounds[offset + k + 3] = Math.max(bounds[offset + k + 3], bounds[other + k + 3]);
+		}
+	}
+
+	/**
+	 * Recalculates the coefficients of the planes.
+	 */
+	private void refitPlanes()
+	{
+		for (int k = 0; k < planes.length; k++)
+		{
+			Vector normal = planes[k].getNormal();
+			Point q0 = planes[k].getQ0();
+			planeCoefficients[4 * k] = normal.getX();
+			planeCoefficients[4 * k + 1] = normal.getY();
+			planeCoefficients[4 * k + 2] = normal.getZ();
+			planeCoefficients[4 * k + 3] = normal.getX() * q0.getX() + normal.getY() * q0.getY()
+										   + normal.getZ() * q0.getZ();
+		}
+	}
+
+	/**
+	 * Counts the primitives under a list of elements, including those of nested Geometries.
+	 *
+	 * @param elements the elements
+	 * @return the amount of primitives
+	 */
+	private static int countPrimitives(List<Intersectable> elements)
+	{
+		int count = 0;
+		for (Intersectable geo : elements)
+			count += geo instanceof Geometries nested ? countPrimitives(nested.elements) : 1;
+		return count;
+	}
+
+	/**
+	 * Writes the nodes of a nested hierarchy into growing arrays
+	 */
+	private static final class Compiler
+	{
+		/**
+		 * The boxes of the nodes written so far
+		 */
+		double[] bounds;
+
+		/**
+		 * The child/primitive offsets of the nodes written so far
+		 */
+		int[] nodes;
+
+		/**
+		 * The primitives in leaf order
+		 */
+		final Intersectable[] primitives;
+
+		/**
+		 * Amount of nodes written so far
+		 */
+		int nodeCount = 0;
+
+		/**
+		 * Amount of primitives written so far
+		 */
+		int primitiveCount = 0;
+
+		/**
+		 * The depth of the deepest node written so far
+		 */
+		int maxDepth = 0;
+
+		/**
+		 * Allocates the arrays for a binary tree over the given amount of primitives.
+		 *
+		 * @param primitiveCount the amount of primitives
+		 */
+		Compiler(int primitiveCount)
+		{
+			int capacity = Math.max(1, 2 * primitiveCount - 1);
+			bounds = new double[6 * capacity];
+			nodes = new int[3 * capacity];
+			primitives = new Intersectable[primitiveCount];
+		}
+
+		/**
+		 * Compiles a single element - a leaf if it is a primitive or a Geometries of primitives only.
+		 *
+		 * @param geo   the element
+		 * @param depth the depth of the new node
+		 */
+		void compile(Intersectable geo, int depth)
+		{
+			if (!(geo instanceof Geometries group))
+			{
+				compileLeaf(List.of(geo), geo.box, depth);
+				return;
+			}
+
+			for (Intersectable child : group.elements)
+			{
+				if (child instanceof Geometries)
+				{
+					compileGroup(group.elements, 0, group.elements.size(), depth);
+					return;
+				}
+			}
+			compileLeaf(group.elements, group.box, depth);
+		}
+
+		/**
+		 * Compiles a range of elements into a binary sub-tree.
+		 *
+		 * @param elements the elements
+		 * @param from     the first element (inclusive)
+		 * @param to       the last element (exclusive)
+		 * @param depth    the depth of the new node
+		 */
+		void compileGroup(List<Intersectable> elements, int from, int to, int depth)
+		{
+			if (to - from == 1)
+			{
+				compile(elements.get(from), depth);
+				return;
+			}
+
+			int index = allocate(depth);
+			Box box = new Box();
+			for (int i = from; i < to; i++)
+				box.include(elements.get(i).box);
+			box.copyTo(bounds, 6 * index);
+
+			int middle = (from + to) / 2;
+			compileGroup(elements, from, middle, depth + 1);
+			nodes[3 * index] = nodeCount;
+			nodes[3 * index + 2] = separatingAxis(index + 1, nodeCount);
+			compileGroup(elements, middle, to, depth + 1);
+		}
+
+		/**
+		 * Compiles a leaf over the given primitives.
+		 *
+		 * @param leafPrimitives the primitives
+		 * @param box            the box of the leaf
+		 * @param depth          the depth of the leaf
+		 */
+		void compileLeaf(List<Intersectable> leafPrimitives, Box box, int depth)
+		{
+			int index = allocate(depth);
+			box.copyTo(bounds, 6 * index);
+			nodes[3 * index] = primitiveCount;
+			nodes[3 * index + 1] = leafPrimitives.size();
+			for (Intersectable primitive : leafPrimitives)
+				primitives[primitiveCount++] = primitive;
+		}
+
+		/**
+		 * Allocates a new node.
+		 *
+		 * @param depth the depth of the node
+		 * @return the index of the node
+		 */
+		int allocate(int depth)
+		{
+			if (nodeCount * 3 == nodes.length)
+			{
+				bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+				nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+			}
+			maxDepth = Math.max(maxDepth, depth);
+			return nodeCount++;
+		}
+
+		/**
+		 * Finds the axis along which the centers of two nodes are farthest apart.
+		 *
+		 * @param left  the index of the first node
+		 * @param right the index of the second node
+		 * @return the axis (0 - x, 1 - y, 2 - z)
+		 */
+		int separatingAxis(int left, int right)
+		{
+			int axis = 0;
+			double best = -1;
+			for (int k = 0; k < 3; k++)
+			{
+				double gap = Math.abs(bounds[6 * right + k] + bounds[6 * right + k + 3]
+											  - bounds[6 * left + k] - bounds[6 * left + k + 3]);
+				if (gap > best)
+				{
+					best = gap;
+					axis = k;
+				}
+			}
+			return axis;
+		}
+	}
+
+	/**
+	 * Finds the distance along a ray to one of the unbounded planes, by the same rules as
+	 * {@link Plane#findIntersectionDistance(Ray, double)}.
+	 *
+	 * @param k           the index of the plane
+	 * @param ox          the x coordinate of the ray origin
+	 * @param oy          the y coordinate of the ray origin
+	 * @param oz          the z coordinate of the ray origin
+	 * @param dx          the x component of the ray direction
+	 * @param dy          the y component of the ray direction
+	 * @param dz          the z component of the ray direction
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the distance to the intersection, or positive infinity if there is none within maxDistance
+	 */
+	private double planeDistance(int k, double ox, double oy, double oz, double dx, double dy, double dz,
+								 double maxDistance)
+	{
+		int offset = 4 * k;
+		double nx = planeCoefficients[offset], ny = planeCoefficients[offset + 1], nz = planeCoefficients[offset + 2];
+
+		double nd = alignZero(nx * dx + ny * dy + nz * dz);
+		if (nd == 0) // parallel
+			return Double.POSITIVE_INFINITY;
+
+		double t = alignZero((planeCoefficients[offset + 3] - (nx * ox + ny * oy + nz * oz)) / nd);
+		return t > 0 && alignZero(t - maxDistance) < 0 ? t : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Checks whether a ray enters a node box before a given distance.
+	 *
+	 * @param node the index of the node
+	 * @param ox   the x coordinate of the ray origin
+	 * @param oy   the y coordinate of the ray origin
+	 * @param oz   the z coordinate of the ray origin
+	 * @param ix   the inverse of the x component of the ray direction
+	 * @param iy   the inverse of the y component of the ray direction
+	 * @param iz   the inverse of the z component of the ray direction
+	 * @param tMax the distance along the ray beyond which the box is not interesting
+	 * @return true if the ray passes through the box before tMax
+	 */
+	boolean intersectsNode(int node, double ox, double oy, double oz, double ix, double iy, double iz, double tMax)
+	{
+		int offset = 6 * node;
+		double tEnter = 0, tExit = tMax;
+
+		double t1 = (bounds[offset] - ox) * ix, t2 = (bounds[offset + 3] - ox) * ix;
+		// a NaN (origin on the box face of a parallel ray) keeps the previous interval
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > tEnter) tEnter = t1;
+		if (t2 < tExit) tExit = t2;
+
+		t1 = (bounds[offset + 1] - oy) * iy;
+		t2 = (bounds[offset + 4] - oy) * iy;
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > tEnter) tEnter = t1;
+		if (t2 < tExit) tExit = t2;
+
+		t1 = (bounds[offset + 2] - oz) * iz;
+		t2 = (bounds[offset + 5] - oz) * iz;
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > tEnter) tEnter = t1;
+		if (t2 < tExit) tExit = t2;
+
+		return tEnter <= tExit;
+	}
+
+	/**
+	 * Finds all the intersections of a ray with the primitives up to a given distance.
+	 * Any box the ray enters only beyond maxDistance is skipped.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the intersections, or null if there are none
+	 */
+	@Override
+	public List<GeoPoint> findGeoIntersections(Ray ray, double maxDistance)
+	{
+		double ox = ray.getP0().getX(), oy = ray.getP0().getY(), oz = ray.getP0().getZ();
+		Vector dir = ray.getDir();
+		double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+		List<GeoPoint> intersections = null;
+
+		for (int k = 0; k < planes.length; k++)
+		{
+			double t = planeDistance(k, ox, oy, oz, dx, dy, dz, maxDistance);
+			if (t != Double.POSITIVE_INFINITY)
+				intersections = addAll(intersections, List.of(new GeoPoint(planes[k], ray.getPoint(t))));
+		}
+
+		for (Intersectable geo : unbounded)
+			intersections = addAll(intersections, geo.findGeoIntersections(ray, maxDistance));
+
+		if (nodes.length == 0)
+			return intersections;
+
+		double ix = ray.getInvDirX(), iy = ray.getInvDirY(), iz = ray.getInvDirZ();
+		int[] stack = new int[maxDepth + 1];
+		int top = 0;
+		int node = 0;
+
+		while (true)
+		{
+			if (intersectsNode(node, ox, oy, oz, ix, iy, iz, maxDistance))
+			{
+				int count = nodes[3 * node + 1];
+				if (count == 0)
+				{
+					// visit the near child first, push the far one
+					int left = node + 1, right = nodes[3 * node];
+					if (isNegative(nodes[3 * node + 2], dir))
+					{
+						stack[top++] = left;
+						node = right;
+					}
+					else
+					{
+						stack[top++] = right;
+						node = left;
+					}
+					continue;
+				}
+
+				int first = nodes[3 * node];
+				for (int i = first; i < first + count; i++)
+					intersections = addAll(intersections, primitives[i].findGeoIntersections(ray, maxDistance));
+			}
+
+			if (top == 0)
+				return intersections;
+			node = stack[--top];
+		}
+	}
+
+	/**
+	 * Finds the intersection nearest to the ray origin.
+	 * The unbounded primitives are tested first, so that their hits already shorten the search, and the
+	 * distance of the best hit so far keeps shrinking during the traversal - any box the ray enters only beyond
+	 * it is skipped.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	@Override
+	public double findClosestGeoIntersection(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		maxDistance = findClosestUnbounded(ray, maxDistance, hit);
+		if (nodes.length == 0)
+			return maxDistance;
+
+		double ox = ray.getP0().getX(), oy = ray.getP0().getY(), oz = ray.getP0().getZ();
+		Vector dir = ray.getDir();
+		double ix = ray.getInvDirX(), iy = ray.getInvDirY(), iz = ray.getInvDirZ();
+		int[] stack = new int[maxDepth + 1];
+		int top = 0;
+		int node = 0;
+
+		while (true)
+		{
+			if (intersectsNode(node, ox, oy, oz, ix, iy, iz, maxDistance))
+			{
+				int count = nodes[3 * node + 1];
+				if (count == 0)
+				{
+					// visit the near child first - its hits may prune the far one
+					int left = node + 1, right = nodes[3 * node];
+					if (isNegative(nodes[3 * node + 2], dir))
+					{
+						stack[top++] = left;
+						node = right;
+					}
+					else
+					{
+						stack[top++] = right;
+						node = left;
+					}
+					continue;
+				}
+
+				int first = nodes[3 * node];
+				for (int i = first; i < first + count; i++)
+					maxDistance = primitives[i].findClosestGeoIntersectionHelper(ray, maxDistance, hit);
+			}
+
+			if (top == 0)
+				return maxDistance;
+			node = stack[--top];
+		}
+	}
+
+	/**
+	 * Finds the intersection of a ray nearest to its origin among the unbounded primitives.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	private double findClosestUnbounded(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		double ox = ray.getP0().getX(), oy = ray.getP0().getY(), oz = ray.getP0().getZ();
+		Vector dir = ray.getDir();
+		double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+		for (int k = 0; k < planes.length; k++)
+		{
+			double t = planeDistance(k, ox, oy, oz, dx, dy, dz, maxDistance);
+			if (t < maxDistance)
+			{
+				maxDistance = t;
+				hit.geometry = planes[k];
+			}
+		}
+
+		for (Intersectable geo : unbounded)
+			maxDistance = geo.findClosestGeoIntersectionHelper(ray, maxDistance, hit);
+		return maxDistance;
+	}
+
+	/**
+	 * Finds the intersections nearest to the origins of a bundle of coherent rays, walking the tree once for
+	 * the whole bundle instead of once per ray.
+	 * Every node is entered with the index of the first ray of the bundle that may still hit it (the rays before
+	 * it missed an ancestor). The node is tested against the rays from that index on until one of them hits it,
+	 * so for a coherent bundle a node usually costs a single box test, and the rays that miss are left out of
+	 * its sub-tree. When all the rays share their origin and the signs of their directions, the node is first
+	 * tested against the whole bundle at once by interval arithmetic over the ray directions, and the bundle
+	 * skips a node it misses entirely without any per-ray test.
+	 * The children are visited near to far by the direction of the first active ray, and in a leaf every ray
+	 * that hits the leaf box is tested against its primitives.
+	 *
+	 * @param rays         the rays
+	 * @param maxDistances the distance of the best hit of every ray so far, updated in place
+	 * @param hits         the hit records of the rays to update
+	 */
+	@Override
+	public void findClosestGeoIntersections(Ray[] rays, double[] maxDistances, GeoPoint[] hits)
+	{
+		int n = rays.length;
+		for (int r = 0; r < n; r++)
+			maxDistances[r] = findClosestUnbounded(rays[r], maxDistances[r], hits[r]);
+		if (nodes.length == 0 || n == 0)
+			return;
+
+		double[] origins = new double[3 * n];
+		double[] inverses = new double[3 * n];
+		for (int r = 0; r < n; r++)
+		{
+			Point p0 = rays[r].getP0();
+			origins[3 * r] = p0.getX();
+			origins[3 * r + 1] = p0.getY();
+			origins[3 * r + 2] = p0.getZ();
+			inverses[3 * r] = rays[r].getInvDirX();
+			inverses[3 * r + 1] = rays[r].getInvDirY();
+			inverses[3 * r + 2] = rays[r].getInvDirZ();
+		}
+
+		// the range of the inverse directions along every axis, null if the bundle has no common origin and signs
+		double[] inverseRange = inverseRange(origins, inverses, n);
+		double packetMax = max(maxDistances);
+
+		int[] stackNodes = new int[maxDepth + 1];
+		int[] stackFirsts = new int[maxDepth + 1];
+		int top = 0;
+		int node = 0;
+		int first = 0;
+
+		while (true)
+		{
+			if (inverseRange == null || intersectsPacket(node, origins, inverseRange, packetMax))
+			{
+				while (first < n && !intersectsNode(node, origins[3 * first], origins[3 * first + 1],
+													 origins[3 * first + 2], inverses[3 * first],
+													 inverses[3 * first + 1], inverses[3 * first + 2],
+													 maxDistances[first]))
+					first++;
+
+				if (first < n)
+				{
+					int count = nodes[3 * node + 1];
+					if (count == 0)
+					{
+						int left = node + 1, right = nodes[3 * node];
+						stackFirsts[top] = first;
+						if (isNegative(nodes[3 * node + 2], rays[first].getDir()))
+						{
+							stackNodes[top++] = left;
+							node = right;
+						}
+						else
+						{
+							stackNodes[top++] = right;
+							node = left;
+						}
+						continue;
+					}
+
+					int start = nodes[3 * node];
+					for (int r = first; r < n; r++)
+					{
+						if (r != first && !intersectsNode(node, origins[3 * r], origins[3 * r + 1], origins[3 * r + 2],
+														  inverses[3 * r], inverses[3 * r + 1], inverses[3 * r + 2],
+														  maxDistances[r]))
+							continue;
+						for (int i = start; i < start + count; i++)
+							maxDistances[r] = primitives[i].findClosestGeoIntersectionHelper(rays[r], maxDistances[r],
+																							  hits[r]);
+					}
+					packetMax = max(maxDistances);
+				}
+			}
+
+			if (top == 0)
+				return;
+			--top;
+			node = stackNodes[top];
+			first = stackFirsts[top];
+		}
+	}
+
+	/**
+	 * Finds the range of the inverse ray directions of a bundle along every axis, for testing nodes against the
+	 * whole bundle. It is defined only when all the rays start at the same point and their directions have the
+	 * same sign along every axis, so that all of them enter a box through the same faces.
+	 *
+	 * @param origins  the ray origins, 3 values per ray
+	 * @param inverses the inverse ray directions, 3 values per ray
+	 * @param n        the amount of rays
+	 * @return the lowest and highest inverse direction along every axis (6 values), or null if undefined
+	 */
+	private static double[] inverseRange(double[] origins, double[] inverses, int n)
+	{
+		double[] range = new double[6];
+		for (int k = 0; k < 3; k++)
+		{
+			range[k] = range[k + 3] = inverses[k];
+			if (Double.isInfinite(inverses[k]))
+				return null;
+		}
+
+		for (int r = 1; r < n; r++)
+		{
+			for (int k = 0; k < 3; k++)
+			{
+				double inverse = inverses[3 * r + k];
+				if (origins[3 * r + k] != origins[k] || Double.isInfinite(inverse) || (inverse < 0) != (range[k] < 0))
+					return null;
+				range[k] = Math.min(range[k], inverse);
+				range[k + 3] = Math.max(range[k + 3], inverse);
+			}
+		}
+		return range;
+	}
+
+	/**
+	 * Checks conservatively whether any ray of a bundle may enter a node box before a given distance, see
+	 * {@link #inverseRange}: along every axis, the bundle enters the slab of the box no sooner than the lowest
+	 * entry distance over the range of inverse directions, and leaves it no later than the highest exit distance.
+	 * If the latest of these entries comes after the earliest exit, every ray of the bundle misses the box.
+	 *
+	 * @param node         the index of the node
+	 * @param origins      the ray origins, the common origin is the first 3 values
+	 * @param inverseRange the range of the inverse ray directions
+	 * @param tMax         the largest distance of interest over the bundle
+	 * @return false if no ray of the bundle enters the box before tMax
+	 */
+	private boolean intersectsPacket(int node, double[] origins, double[] inverseRange, double tMax)
+	{
+		int offset = 6 * node;
+		double tEnter = 0, tExit = tMax;
+		for (int k = 0; k < 3; k++)
+		{
+			double low = inverseRange[k], high = inverseRange[k + 3];
+			boolean negative = low < 0;
+			double near = bounds[offset + (negative ? k + 3 : k)] - origins[k];
+			double far = bounds[offset + (negative ? k : k + 3)] - origins[k];
+			tEnter = Math.max(tEnter, Math.min(near * low, near * high));
+			tExit = Math.min(tExit, Math.max(far * low, far * high));
+		}
+		return tEnter <= tExit;
+	}
+
+	/**
+	 * Finds the largest value of an array.
+	 *
+	 * @param values the values
+	 * @return the largest value
+	 */
+	private static double max(double[] values)
+	{
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : values)
+			max = Math.max(max, value);
+		return max;
+	}
+
+	/**
+	 * Calculates the transparency along a ray, searching only the boxes the ray enters before maxDistance.
+	 * The search stops at the first primitive that blocks the light.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param ktr         the transparency accumulated so far
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the accumulated transparency, the {@link Double3#ZERO} constant if the light is blocked
+	 */
+	@Override
+	public Double3 findTransparency(Ray ray, double maxDistance, Double3 ktr, double minK)
+	{
+		double ox = ray.getP0().getX(), oy = ray.getP0().getY(), oz = ray.getP0().getZ();
+		Vector dir = ray.getDir();
+		double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+		for (int k = 0; k < planes.length; k++)
+		{
+			if (planeDistance(k, ox, oy, oz, dx, dy, dz, maxDistance) != Double.POSITIVE_INFINITY)
+			{
+				ktr = planes[k].attenuate(ktr, 1, minK);
+				if (ktr == Double3.ZERO)
+					return ktr;
+			}
+		}
+
+		for (Intersectable geo : unbounded)
+		{
+			ktr = geo.findTransparencyHelper(ray, maxDistance, ktr, minK);
+			if (ktr == Double3.ZERO)
+				return ktr;
+		}
+
+		if (nodes.length == 0)
+			return ktr;
+
+		double ix = ray.getInvDirX(), iy = ray.getInvDirY(), iz = ray.getInvDirZ();
+		int[] stack = new int[maxDepth + 1];
+		int top = 0;
+		int node = 0;
+
+		while (true)
+		{
+			if (intersectsNode(node, ox, oy, oz, ix, iy, iz, maxDistance))
+			{
+				int count = nodes[3 * node + 1];
+				if (count == 0)
+				{
+					stack[top++] = nodes[3 * node];
+					node = node + 1;
+					continue;
+				}
+
+				int first = nodes[3 * node];
+				for (int i = first; i < first + count; i++)
+				{
+					ktr = primitives[i].findTransparencyHelper(ray, maxDistance, ktr, minK);
+					if (ktr == Double3.ZERO)
+						return ktr;
+				}
+			}
+
+			if (top == 0)
+				return ktr;
+			node = stack[--top];
+		}
+	}
+
+	/**
+	 * Checks whether a ray goes in the negative direction of an axis, so the upper child of a node split along
+	 * that axis is the nearer one.
+	 *
+	 * @param axis the axis (0 - x, 1 - y, 2 - z)
+	 * @param dir  the ray direction
+	 * @return true if the direction component along the axis is negative
+	 */
+	static boolean isNegative(int axis, Vector dir)
+	{
+		return (axis == 0 ? dir.getX() : axis == 1 ? dir.getY() : dir.getZ()) < 0;
+	}
+
+	/**
+	 * Adds the intersections of a primitive to the total list.
+	 *
+	 * @param total         the total list, may be null
+	 * @param intersections the intersections of the primitive, may be null
+	 * @return the total list, or null if both are empty
+	 */
+	private static List<GeoPoint> addAll(List<GeoPoint> total, List<GeoPoint> intersections)
+	{
+		if (intersections == null)
+			return total;
+		if (total == null)
+			total = new LinkedList<>();
+		total.addAll(intersections);
+		return total;
+	}
+}
@@ -0,0 +1,136 @@
+package geometries;
+
+/**
+ * A bounding volume hierarchy over items known by their axis-aligned boxes, built by the SAH {@link BvhBuilder}
+ * and written into the flat layout of the trees kept in arrays ({@link Mesh}, {@link BoxHierarchy}).
+ * The nodes are written in depth-first order, so the left child of a node directly follows it. Every node
+ * takes 6 bounds - minX, minY, minZ, maxX, maxY, maxZ - and 2 ints: an inner node keeps the index of its right
+ * child and -1 minus the axis its children are separated along, and a leaf keeps the index of its first item
+ * in {@link #order} and the amount of its items.
+ *
+ * @author Yair and Noam
+ */
+final class FlatTree
+{
+	/**
+	 * A node under construction
+	 *
+	 * @param left  the left child, null for a leaf
+	 * @param right the right child, null for a leaf
+	 * @param axis  the axis the children are separated along
+	 * @param begin the first index of the leaf items in the builder order (inclusive)
+	 * @param end   the last index of the leaf items in the builder order (exclusive)
+	 * @param size  the amount of nodes in the sub-tree
+	 */
+	private record BuildNode(BuildNode left, BuildNode right, int axis, int begin, int end, int size) {}
+
+	/**
+	 * The boxes of the items, 6 values per item
+	 */
+	private final double[] boxes;
+
+	/**
+	 * The item indices, ordered so that every leaf covers a continuous range
+	 */
+	final int[] order;
+
+	/**
+	 * The boxes of the nodes, 6 values per node
+	 */
+	final double[] bounds;
+
+	/**
+	 * The nodes, 2 values per node
+	 */
+	final int[] nodes;
+
+	/**
+	 * The depth of the deepest node, which bounds the stack of a traversal
+	 */
+	final int maxDepth;
+
+	/**
+	 * Builds the tree over the given boxes. The array is kept as is (not copied).
+	 *
+	 * @param boxes       the boxes of the items, 6 values per item: minX, minY, minZ, maxX, maxY, maxZ
+	 * @param count       the amount of items
+	 * @param parallelism the maximal amount of threads building the tree, 1 for a sequential build
+	 */
+	FlatTree(double[] boxes, int count, int parallelism)
+	{
+		this.boxes = boxes;
+		BvhBuilder<BuildNode> builder = new BvhBuilder<>(boxes, count, parallelism)
+		{
+			@Override
+			protected BuildNode createLeaf(int begin, int end)
+			{
+				return new BuildNode(null, null, 0, begin, end, 1);
+			}
+
+			@Override
+			protected BuildNode createNode(BuildNode left, BuildNode right, int axis)
+			{
+				return new BuildNode(left, right, axis, 0, 0, 1 + left.size + right.size);
+			}
+		};
+		BuildNode root = builder.build();
+
+		order = builder.order;
+		int nodeCount = root == null ? 0 : root.size;
+		bounds = new double[6 * nodeCount];
+		nodes = new int[2 * nodeCount];
+		maxDepth = root == null ? 0 : writeNode(root, 0, 0);
+	}
+
+	/**
+	 * Writes a built sub-tree into the flat arrays in depth-first order, and calculates the boxes of its nodes.
+	 *
+	 * @param node  the root of the sub-tree
+	 * @param index the index to write the root at
+	 * @param depth the depth of the root
+	 * @return the depth of the deepest node of the sub-tree
+	 */
+	private int writeNode(BuildNode node, int index, int depth)
+	{
+		int offset = 6 * index;
+		for (int k = 0; k < 3; k++)
+		{
+			bounds[offset + k] = Double.POSITIVE_INFINITY;
+			bounds[offset + k + 3] = Double.NEGATIVE_INFINITY;
+		}
+
+		if (node.left == null)
+		{
+			nodes[2 * index] = node.begin;
+			nodes[2 * index + 1] = node.end - node.begin;
+			for (int i = node.begin; i < node.end; i++)
+				include(offset, boxes, 6 * order[i]);
+			return depth;
+		}
+
+		int right = index + 1 + node.left.size;
+		nodes[2 * index] = right;
+		nodes[2 * index + 1] = -1 - node.axis;
+		int depthLeft = writeNode(node.left, index + 1, depth + 1);
+		int depthRight = writeNode(node.right, right, depth + 1);
+		include(offset, bounds, 6 * (index + 1));
+		include(offset, bounds, 6 * right);
+		return Math.max(depthLeft, depthRight);
+	}
+
+	/**
+	 * Grows the box of a node so that it contains another box.
+	 *
+	 * @param offset the offset of the growing box in {@link #bounds}
+	 * @param source the array of the contained box
+	 * @param other  the offset of the contained box in the source array
+	 */
+	private void include(int offset, double[] source, int other)
+	{
+		for (int k = 0; k < 3; k++)
+		{
+			bounds[offset + k] = Math.min(bounds[offset + k], source[other + k]);
+			bounds[offset + k + 3] = Math.max(bounds[offset + k + 3], source[other + k + 3]);
+		}
+	}
+}
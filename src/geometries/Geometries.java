@@ -1,9 +1,11 @@
 package geometries;
 
-import primitives.Point;
+import primitives.Box;
+import primitives.Double3;
 import primitives.Ray;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -17,12 +19,57 @@ import static primitives.Box.distance;
  */
 public class Geometries extends Intersectable
 {
+	/**
+	 * The growth of the SAH cost, relative to the cost at the last build, beyond which a refit also rebuilds
+	 * the degraded sub-trees. A sub-tree is degraded if its box grew by this factor since it was built.
+	 */
+	public static final double REBUILD_THRESHOLD = 1.5;
 	
 	/**
 	 * A list of intersectable elements
 	 */
 	List<Intersectable> elements;
 	
+	/**
+	 * The root of the bounded part of the BVH tree (always the first element), null if there is none
+	 */
+	private Intersectable bvhRoot = null;
+	
+	/**
+	 * The surface area of the box of this BVH node when it was built
+	 */
+	private double builtArea = 0;
+	
+	/**
+	 * The SAH cost of the tree at the last build
+	 */
+	private double builtSahCost = 0;
+	
+	/**
+	 * The maximal amount of threads building the BVH tree
+	 */
+	private int bvhParallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The report of the last BVH build or refit
+	 */
+	private BvhStatistics bvhStatistics = null;
+	
+	/**
+	 * The last built BVH tree compiled into flat arrays, null if there is no up-to-date tree
+	 */
+	private FlatBvh bvh = null;
+	
+	/**
+	 * The spatial index answering the ray queries - the flat BVH tree, a grid or an octree - null if there is none
+	 */
+	private Accelerator accelerator = null;
+	
+	/**
+	 * The kind of the spatial index, kept up-to-date by {@link #add(Intersectable...)}
+	 */
+	private Accelerator.Type acceleratorType = Accelerator.Type.NONE;
+	
 	/**
 	 * Constructs an empty Geometries object.
 	 */
@@ -31,6 +78,16 @@ public class Geometries extends Intersectable
 		elements = new LinkedList<Intersectable>();
 	}
 	
+	/**
+	 * Constructs an empty node of a BVH tree, holding its elements in the given list.
+	 *
+	 * @param elements the (empty) list to hold the elements
+	 */
+	private Geometries(List<Intersectable> elements)
+	{
+		this.elements = elements;
+	}
+	
 	/**
 	 * Constructs a Geometries object with the given intersectable geometries.
 	 *
@@ -39,11 +96,14 @@ public class Geometries extends Intersectable
 	public Geometries(Intersectable... geometries)
 	{
 		elements = new LinkedList<Intersectable>();
-		Collections.addAll(elements, geometries);
+		add(geometries);
 	}
 	
 	/**
 	 * Adds the given intersectable geometries to the collection.
+	 * Once the BVH tree is built, the bounded geometries are inserted into it incrementally - each one goes
+	 * down into the child whose box grows the least, so the tree does not have to be rebuilt.
+	 * A grid or an octree is rebuilt after adding the geometries.
 	 *
 	 * @param geometries the intersectable geometries to add to the collection.
 	 */
@@ -54,14 +114,32 @@ public class Geometries extends Intersectable
 			throw new IllegalArgumentException("Add geometries is null");
 		}
 		
-		elements = new LinkedList<Intersectable>();
 		for (Intersectable g: geometries)
 		{
 			g.createBox();
 			this.createBox(g);
-			elements.add(g);
+			if (bvh == null)
+			{
+				elements.add(g);
+				continue;
+			}
+			
+			List<Intersectable> finite = new ArrayList<>();
+			List<Intersectable> infinite = new ArrayList<>();
+			if (g instanceof Geometries nested)
+				nested.collectPrimitives(finite, infinite);
+			else
+				(g.box.checkInfinite() ? infinite : finite).add(g);
+			
+			for (Intersectable geo : finite)
+				insertIntoBvh(geo);
+			elements.addAll(infinite);
 		}
-//		Collections.addAll(elements, geometries);
+		
+		if (bvh != null)
+			accelerator = bvh = new FlatBvh(elements);
+		else if (accelerator != null)
+			buildAccelerator(acceleratorType);
 	}
 	
 	@Override
@@ -95,9 +173,296 @@ public class Geometries extends Intersectable
 	
 	/**
 	 * Builds the BVH (Bounding Volume Hierarchy) tree for efficient ray-object intersection tests.
-	 * The BVH tree is constructed by iteratively merging the geometries in the scene.
-	 * Note: This method assumes that the 'elements' list contains the geometries to be included in the BVH tree.
-	 * After building the BVH tree, the 'elements' list will be modified to contain the root node of the BVH tree.
+	 * The tree is built top-down: every node splits its primitives into two groups by the cheapest
+	 * boundary according to the surface area heuristic (SAH), after binning the primitive centroids
+	 * (see {@link BvhBuilder}). The build runs in O(n log n), on up to {@link #setBvhParallelism} threads.
+	 * Nested Geometries are flattened into their primitives before the build, and the infinite
+	 * geometries (e.g. Plane) are kept aside of the tree, as they do not have a box.
+	 * After building the BVH tree, the 'elements' list will contain the root node of the BVH tree
+	 * followed by the infinite geometries.
+	 *
+	 * @return the build-time and quality report of the new tree
+	 */
+	public BvhStatistics buildBvhTree()
+	{
+		long start = System.nanoTime();
+		
+		List<Intersectable> finiteGeometries = new ArrayList<>();
+		List<Intersectable> infiniteGeometries = new LinkedList<>();
+		collectPrimitives(finiteGeometries, infiniteGeometries);
+		
+		bvhRoot = buildSubtree(finiteGeometries, bvhParallelism);
+		
+		elements = new LinkedList<>();
+		if (bvhRoot != null)
+			elements.add(bvhRoot);
+		elements.addAll(infiniteGeometries);
+		accelerator = bvh = new FlatBvh(elements);
+		acceleratorType = Accelerator.Type.BVH;
+		
+		bvhStatistics = calcStatistics("SAH", start);
+		builtSahCost = bvhStatistics.sahCost();
+		return bvhStatistics;
+	}
+	
+	/**
+	 * Builds a BVH sub-tree over bounded primitives with the SAH builder.
+	 *
+	 * @param finiteGeometries the primitives, with up-to-date boxes
+	 * @param parallelism      the maximal amount of threads building the sub-tree
+	 * @return the root of the sub-tree - a primitive if there is only one, or null if there are none
+	 */
+	private static Intersectable buildSubtree(List<Intersectable> finiteGeometries, int parallelism)
+	{
+		double[] bounds = new double[6 * finiteGeometries.size()];
+		for (int i = 0; i < finiteGeometries.size(); i++)
+		{
+			finiteGeometries.get(i).box.copyTo(bounds, 6 * i);
+		}
+		
+		return new BvhBuilder<Intersectable>(bounds, finiteGeometries.size(), parallelism)
+		{
+			@Override
+			protected Intersectable createLeaf(int begin, int end)
+			{
+				if (end - begin == 1)
+					return finiteGeometries.get(order[begin]);
+				
+				Geometries leaf = new Geometries(new ArrayList<>(end - begin));
+				for (int i = begin; i < end; i++)
+					leaf.addBoxed(finiteGeometries.get(order[i]));
+				leaf.builtArea = leaf.box.surfaceArea();
+				return leaf;
+			}
+			
+			@Override
+			protected Intersectable createNode(Intersectable left, Intersectable right, int axis)
+			{
+				return pair(left, right);
+			}
+		}.build();
+	}
+	
+	/**
+	 * Creates a BVH node over two elements.
+	 *
+	 * @param left  the first element, with an up-to-date box
+	 * @param right the second element, with an up-to-date box
+	 * @return the node
+	 */
+	private static Geometries pair(Intersectable left, Intersectable right)
+	{
+		Geometries node = new Geometries(new ArrayList<>(2));
+		node.addBoxed(left);
+		node.addBoxed(right);
+		node.builtArea = node.box.surfaceArea();
+		return node;
+	}
+	
+	/**
+	 * Inserts a bounded primitive into the BVH tree, and grows the boxes on its way down.
+	 *
+	 * @param geo the primitive, with an up-to-date box
+	 */
+	private void insertIntoBvh(Intersectable geo)
+	{
+		if (bvhRoot == null)
+			elements.add(0, bvhRoot = geo);
+		else if (bvhRoot instanceof Geometries root)
+			root.insertBoxed(geo);
+		else
+			elements.set(0, bvhRoot = pair(bvhRoot, geo));
+	}
+	
+	/**
+	 * Inserts a bounded primitive into the sub-tree of this node: a leaf with room takes it, otherwise it goes
+	 * down into the child whose box grows the least, and replaces a primitive child with a node over both.
+	 *
+	 * @param geo the primitive, with an up-to-date box
+	 */
+	private void insertBoxed(Intersectable geo)
+	{
+		createBox(geo);
+		
+		boolean leaf = true;
+		for (Intersectable child : elements)
+			leaf &= !(child instanceof Geometries);
+		if (leaf && elements.size() < BvhBuilder.MAX_LEAF_SIZE)
+		{
+			elements.add(geo);
+			return;
+		}
+		
+		int best = 0;
+		double bestGrowth = Double.POSITIVE_INFINITY;
+		Box union = new Box();
+		for (int i = 0; i < elements.size(); i++)
+		{
+			Box childBox = elements.get(i).box;
+			union.clear();
+			union.include(childBox);
+			union.include(geo.box);
+			double growth = union.surfaceArea() - childBox.surfaceArea();
+			if (growth < bestGrowth)
+			{
+				bestGrowth = growth;
+				best = i;
+			}
+		}
+		
+		if (elements.get(best) instanceof Geometries node)
+			node.insertBoxed(geo);
+		else
+			elements.set(best, pair(elements.get(best), geo));
+	}
+	
+	/**
+	 * Refits the BVH tree to geometries that moved (or changed) since it was built, e.g. between the frames of
+	 * an animation. The boxes are recalculated bottom-up in O(n), keeping the structure of the tree.
+	 * If the SAH cost of the refitted tree grew beyond {@link #REBUILD_THRESHOLD} times its cost at the last
+	 * build, the degraded sub-trees - those whose box grew by that factor - are rebuilt with the SAH builder,
+	 * instead of rebuilding the whole tree.
+	 * If the active index is a grid or an octree, which cannot be refitted, it is rebuilt over the moved
+	 * geometries by {@link #buildAccelerator(Accelerator.Type)}. If there is no index at all, a BVH tree is built.
+	 *
+	 * @return the report of the refitted tree, or null if a grid or an octree was rebuilt instead
+	 */
+	public BvhStatistics refitBvhTree()
+	{
+		if (acceleratorType == Accelerator.Type.GRID || acceleratorType == Accelerator.Type.OCTREE)
+		{
+			buildAccelerator(acceleratorType);
+			return null;
+		}
+		if (bvh == null)
+			return buildBvhTree();
+		
+		long start = System.nanoTime();
+		refitBoxes();
+		bvh.refit();
+		
+		BvhStatistics statistics = calcStatistics("Refit", start);
+		if (statistics.sahCost() > REBUILD_THRESHOLD * builtSahCost && bvhRoot instanceof Geometries root)
+		{
+			root.rebuildDegraded(bvhParallelism);
+			accelerator = bvh = new FlatBvh(elements);
+			statistics = calcStatistics("Partially rebuilt", start);
+			builtSahCost = statistics.sahCost();
+		}
+		
+		return bvhStatistics = statistics;
+	}
+	
+	/**
+	 * Recalculates the boxes of this node and of its whole sub-tree, bottom-up.
+	 */
+	private void refitBoxes()
+	{
+		box.clear();
+		for (Intersectable geo : elements)
+		{
+			if (geo instanceof Geometries node)
+				node.refitBoxes();
+			else
+			{
+				geo.box.clear();
+				geo.createBox();
+			}
+			createBox(geo);
+		}
+	}
+	
+	/**
+	 * Rebuilds the top-most degraded sub-trees under this node (including itself) with the SAH builder.
+	 *
+	 * @param parallelism the maximal amount of threads building a sub-tree
+	 */
+	private void rebuildDegraded(int parallelism)
+	{
+		if (box.surfaceArea() <= REBUILD_THRESHOLD * builtArea)
+		{
+			for (Intersectable geo : elements)
+				if (geo instanceof Geometries node)
+					node.rebuildDegraded(parallelism);
+			return;
+		}
+		
+		List<Intersectable> finite = new ArrayList<>();
+		collectPrimitives(finite, new ArrayList<>());
+		Intersectable root = buildSubtree(finite, parallelism);
+		elements = root instanceof Geometries node ? node.elements : new ArrayList<>(List.of(root));
+		builtArea = box.surfaceArea();
+	}
+	
+	/**
+	 * Caps the amount of threads building the BVH tree. By default, the tree is built by as many threads as
+	 * there are available processors.
+	 *
+	 * @param parallelism the maximal amount of threads, 1 for a sequential build
+	 * @return the Geometries object itself
+	 */
+	public Geometries setBvhParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("BVH parallelism must be positive");
+		
+		bvhParallelism = parallelism;
+		return this;
+	}
+	
+	/**
+	 * Checks whether the BVH tree is built, and kept up-to-date by {@link #add(Intersectable...)}.
+	 *
+	 * @return true if the tree is built
+	 */
+	public boolean hasBvhTree()
+	{
+		return bvh != null;
+	}
+	
+	/**
+	 * Builds a spatial index of the given kind over the geometries, replacing the current one.
+	 * The BVH tree is built by {@link #buildBvhTree()}. A grid or an octree is built over the primitives
+	 * (nested Geometries are flattened), and the infinite geometries are kept aside and tested by every ray.
+	 * With {@link Accelerator.Type#NONE} every ray searches the elements one by one.
+	 *
+	 * @param type the kind of the spatial index
+	 * @return the Geometries object itself
+	 */
+	public Geometries buildAccelerator(Accelerator.Type type)
+	{
+		bvh = null;
+		accelerator = null;
+		acceleratorType = type;
+		
+		if (type == Accelerator.Type.BVH)
+			buildBvhTree();
+		else if (type != Accelerator.Type.NONE)
+		{
+			List<Intersectable> finite = new ArrayList<>();
+			List<Intersectable> infinite = new ArrayList<>();
+			collectPrimitives(finite, infinite);
+			accelerator = type == Accelerator.Type.GRID ? new UniformGrid(finite, infinite)
+					: new Octree(finite, infinite);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Returns the kind of the current spatial index.
+	 *
+	 * @return the kind, {@link Accelerator.Type#NONE} if there is no index
+	 */
+	public Accelerator.Type getAcceleratorType()
+	{
+		return acceleratorType;
+	}
+	
+	/**
+	 * Builds the BVH tree by iteratively merging the nearest pair of geometries.
+	 * This is the original greedy builder, it runs in O(n^2) or worse and is kept for comparison with
+	 * {@link #buildBvhTree()}.
 	 * The algorithm works as follows:
 	 * Create a temporary list to hold the infinite geometries (e.g., Plane) separately, as they do not have a center.
 	 * Remove the infinite geometries from the 'elements' list.
@@ -107,21 +472,18 @@ public class Geometries extends Intersectable
 	 * Remove the two individual geometries from the 'elements' list.
 	 * Add the merged Geometries object to the 'elements' list.
 	 * Add the infinite geometries back to the 'elements' list.
-	 * After the BVH tree is built, the 'elements' list will contain the root node of the BVH tree.
-	 * The BVH tree improves the efficiency of ray-object intersection tests by organizing the geometries
-	 * into a hierarchical structure, allowing for faster spatial querying and reducing the number of intersection tests.
+	 *
+	 * @return the build-time and quality report of the new tree
 	 */
-	public void buildBvhTree()
+	public BvhStatistics buildBvhTreeGreedy()
 	{
+		long start = System.nanoTime();
+		
 		//a plane list because they didn't have center...
 		List<Intersectable> infiniteGeometries = new LinkedList<>();
-		for (Intersectable geo : elements)
-		{
-			if (geo.box.checkInfinite())
-				infiniteGeometries.add(geo);
-		}
-		
-		elements.removeAll(infiniteGeometries);
+		List<Intersectable> finiteGeometries = new LinkedList<>();
+		collectPrimitives(finiteGeometries, infiniteGeometries);
+		elements = finiteGeometries;
 		
 		double distance = 0;
 		Intersectable geo1 = null;
@@ -141,35 +503,157 @@ public class Geometries extends Intersectable
 				}
 			}
 			
-			Geometries tempGeometries = new Geometries(geo1, geo2);
 			elements.remove(geo1);
 			elements.remove(geo2);
-			elements.add(tempGeometries);
+			elements.add(pair(geo1, geo2));
 		}
 		
+		bvhRoot = elements.isEmpty() ? null : elements.get(0);
 		elements.addAll(infiniteGeometries);
+		accelerator = bvh = new FlatBvh(elements);
+		acceleratorType = Accelerator.Type.BVH;
+		
+		bvhStatistics = calcStatistics("Greedy", start);
+		builtSahCost = bvhStatistics.sahCost();
+		return bvhStatistics;
+	}
+	
+	/**
+	 * Returns the report of the last BVH build or refit.
+	 *
+	 * @return the report, or null if no tree was built yet
+	 */
+	public BvhStatistics getBvhStatistics()
+	{
+		return bvhStatistics;
+	}
+	
+	/**
+	 * Adds an element whose bounding box is already up-to-date, and grows this box to contain it.
+	 *
+	 * @param inter the element to add
+	 */
+	private void addBoxed(Intersectable inter)
+	{
+		elements.add(inter);
+		createBox(inter);
+	}
+	
+	/**
+	 * Collects all the primitives under this object, including those of nested Geometries,
+	 * and sorts them by whether their bounding box is finite.
+	 *
+	 * @param finite   the list to add the primitives with a finite bounding box to
+	 * @param infinite the list to add the primitives with an infinite bounding box to
+	 */
+	private void collectPrimitives(List<Intersectable> finite, List<Intersectable> infinite)
+	{
+		for (Intersectable geo : elements)
+		{
+			if (geo instanceof Geometries nested)
+			{
+				nested.collectPrimitives(finite, infinite);
+				continue;
+			}
+			
+			geo.createBox();
+			if (geo.box.checkInfinite())
+				infinite.add(geo);
+			else
+				finite.add(geo);
+		}
+	}
+	
+	/**
+	 * Calculates the report of the tree currently held in 'elements'.
+	 *
+	 * @param builder the name of the builder that built the tree
+	 * @param start   the time the build started at, as returned by {@link System#nanoTime()}
+	 * @return the report
+	 */
+	private BvhStatistics calcStatistics(String builder, long start)
+	{
+		long buildTime = System.nanoTime() - start;
+		
+		Box rootBox = new Box();
+		for (Intersectable geo : elements)
+			if (!geo.box.checkInfinite())
+				rootBox.include(geo.box);
+		
+		// {primitives, nodes, max depth, cost}
+		double[] totals = new double[4];
+		double rootArea = rootBox.surfaceArea();
+		for (Intersectable geo : elements)
+		{
+			if (geo.box.checkInfinite())
+				continue;
+			
+			if (geo instanceof Geometries node)
+				node.accumulateStatistics(1, rootArea, totals);
+			else
+			{
+				totals[0]++;
+				totals[3] += BvhBuilder.INTERSECTION_COST;
+			}
+		}
+		
+		return new BvhStatistics(builder, buildTime, (int) totals[0], (int) totals[1], (int) totals[2], totals[3]);
+	}
+	
+	/**
+	 * Adds this node and its sub-tree to the totals of a report.
+	 * A node costs the probability of a ray hitting its box (relative to the root box) times the cost of
+	 * visiting it and of intersecting each primitive it directly holds.
+	 *
+	 * @param depth    the depth of this node
+	 * @param rootArea the surface area of the root box
+	 * @param totals   {primitives, nodes, max depth, cost}
+	 */
+	private void accumulateStatistics(int depth, double rootArea, double[] totals)
+	{
+		double probability = rootArea == 0 ? 1 : box.surfaceArea() / rootArea;
+		
+		totals[1]++;
+		totals[2] = Math.max(totals[2], depth);
+		totals[3] += probability * BvhBuilder.TRAVERSAL_COST;
+		
+		for (Intersectable geo : elements)
+		{
+			if (geo instanceof Geometries node)
+				node.accumulateStatistics(depth + 1, rootArea, totals);
+			else
+			{
+				totals[0]++;
+				totals[3] += probability * BvhBuilder.INTERSECTION_COST;
+			}
+		}
 	}
 	
 	
 	/**
 	 * Finds the geometric intersections between the given Ray and the objects contained in the BVH tree.
+	 * Once the tree is built, it is traversed in its flat form (see {@link FlatBvh}), and so is any other
+	 * spatial index built by {@link #buildAccelerator}.
+	 * Any box the ray enters only beyond maxDistance is skipped together with everything inside it.
 	 *
-	 * @param ray The Ray to intersect with the objects.
+	 * @param ray         The Ray to intersect with the objects.
+	 * @param maxDistance The maximum distance for intersection.
 	 * @return A list of GeoPoint objects representing the intersections between the Ray and the objects, or null if there are no intersections.
 	 */
 	@Override
-	public List<GeoPoint> findGeoIntersectionsBVH(Ray ray)
+	public List<GeoPoint> findGeoIntersectionsBVH(Ray ray, double maxDistance)
 	{
+		if (accelerator != null)
+			return accelerator.findGeoIntersections(ray, maxDistance);
+		
 		List<GeoPoint> intersections = null;
-		List<GeoPoint> tempIntersection = null;
 		
 		for (Intersectable geo : elements)
 		{
-			if (geo.box.checkIntersectionWithBox(ray))
-			{
-				tempIntersection = geo.findGeoIntersectionsBVH(ray);
-			}
+			if (!geo.box.checkIntersectionWithBox(ray, maxDistance))
+				continue;
 			
+			List<GeoPoint> tempIntersection = geo.findGeoIntersectionsBVH(ray, maxDistance);
 			if (tempIntersection != null)
 			{
 				if (intersections == null)
@@ -182,6 +666,91 @@ public class Geometries extends Intersectable
 		return intersections;
 	}
 	
+	/**
+	 * Helper method for finding the intersection nearest to the ray origin.
+	 * Once a spatial index is built, it is traversed, otherwise every element is searched with
+	 * the distance of the best hit so far.
+	 *
+	 * @param ray         the ray to intersect with the elements
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	@Override
+	protected double findClosestGeoIntersectionHelper(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		if (accelerator != null)
+			return accelerator.findClosestGeoIntersection(ray, maxDistance, hit);
+		
+		for (Intersectable geo : elements)
+			maxDistance = geo.findClosestGeoIntersectionHelper(ray, maxDistance, hit);
+		
+		return maxDistance;
+	}
+	
+	/**
+	 * Finds the intersections nearest to the origins of a bundle of rays.
+	 * Once a spatial index is built, the rays are traced through it together (see
+	 * {@link Accelerator#findClosestGeoIntersections}), which pays for coherent rays such as the primary rays
+	 * of neighbouring pixels; otherwise every ray is searched on its own.
+	 *
+	 * @param rays the rays to intersect with the elements
+	 * @return the nearest intersection of every ray, null for a ray without intersections
+	 */
+	public GeoPoint[] findClosestGeoIntersections(Ray[] rays)
+	{
+		GeoPoint[] hits = new GeoPoint[rays.length];
+		if (accelerator == null)
+		{
+			for (int i = 0; i < rays.length; i++)
+				hits[i] = findClosestGeoIntersection(rays[i]);
+			return hits;
+		}
+		
+		double[] distances = new double[rays.length];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < rays.length; i++)
+			hits[i] = new GeoPoint(null, null);
+		
+		accelerator.findClosestGeoIntersections(rays, distances, hits);
+		
+		for (int i = 0; i < rays.length; i++)
+		{
+			if (hits[i].geometry == null)
+				hits[i] = null;
+			else
+				hits[i].point = rays[i].getPoint(distances[i]);
+		}
+		return hits;
+	}
+	
+	/**
+	 * Helper method for calculating the transparency along a ray.
+	 * Once a spatial index is built, only the cells the ray enters before maxDistance are searched.
+	 * The search stops at the first element that blocks the light.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param ktr         the transparency accumulated so far
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the accumulated transparency
+	 */
+	@Override
+	protected Double3 findTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK)
+	{
+		if (accelerator != null)
+			return accelerator.findTransparency(ray, maxDistance, ktr, minK);
+		
+		for (Intersectable geo : elements)
+		{
+			ktr = geo.findTransparencyHelper(ray, maxDistance, ktr, minK);
+			if (ktr == Double3.ZERO)
+				return ktr;
+		}
+		
+		return ktr;
+	}
+	
 	/**
 	 * Helper method to find the geometric intersections of a ray with the elements in the scene.
 	 *
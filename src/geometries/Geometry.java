@@ -1,10 +1,14 @@
 package geometries;
 
 import primitives.Color;
+import primitives.Double3;
 import primitives.Material;
 import primitives.Point;
+import primitives.Ray;
 import primitives.Vector;
 
+import java.util.List;
+
 /**
  * The Geometry interface represents a geometrical object in 3D space.
  *
@@ -70,4 +74,92 @@ public abstract class Geometry extends Intersectable
      * @return the normal vector of the geometry at the specified point.
      */
     public abstract Vector getNormal(Point p);
+
+    /**
+     * Finds the distance from the ray origin to the nearest intersection with the geometry.
+     * The default implementation scans the list of all intersections, subclasses override it with a
+     * calculation that allocates nothing.
+     *
+     * @param ray         the ray to intersect with
+     * @param maxDistance the maximum distance for intersection
+     * @return the distance to the nearest intersection, or positive infinity if there is none within maxDistance
+     */
+    protected double findIntersectionDistance(Ray ray, double maxDistance)
+    {
+        List<GeoPoint> intersections = findGeoIntersectionsHelper(ray, maxDistance);
+        double distance = Double.POSITIVE_INFINITY;
+        if (intersections != null)
+            for (GeoPoint gp : intersections)
+                distance = Math.min(distance, ray.getP0().distance(gp.point));
+        return distance;
+    }
+
+    @Override
+    protected double findClosestGeoIntersectionHelper(Ray ray, double maxDistance, GeoPoint hit)
+    {
+        double distance = findIntersectionDistance(ray, maxDistance);
+        if (distance >= maxDistance)
+            return maxDistance;
+
+        hit.geometry = this;
+        return distance;
+    }
+
+    /**
+     * Counts the intersections of a ray with the geometry.
+     * The default implementation counts the list of all intersections, subclasses override it with a
+     * calculation that allocates nothing.
+     *
+     * @param ray         the ray to intersect with
+     * @param maxDistance the maximum distance for intersection
+     * @return the amount of intersections within maxDistance
+     */
+    protected int countIntersections(Ray ray, double maxDistance)
+    {
+        List<GeoPoint> intersections = findGeoIntersectionsHelper(ray, maxDistance);
+        return intersections == null ? 0 : intersections.size();
+    }
+
+    /**
+     * Helper method for calculating the transparency along a ray.
+     * The intersections are only counted, as all of them share the material of the geometry.
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximum distance for intersection
+     * @param ktr         the transparency accumulated so far
+     * @param minK        the attenuation below which the light counts as blocked
+     * @return the accumulated transparency, the {@link Double3#ZERO} constant if the light is blocked
+     */
+    @Override
+    protected Double3 findTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK)
+    {
+        return attenuate(ktr, countIntersections(ray, maxDistance), minK);
+    }
+
+    /**
+     * Attenuates light by the transparency of the geometry, once for every intersection it passes.
+     *
+     * @param ktr   the transparency accumulated so far
+     * @param count the amount of intersections with the geometry
+     * @param minK  the attenuation below which the light counts as blocked
+     * @return the accumulated transparency, the {@link Double3#ZERO} constant if the light is blocked
+     */
+    final Double3 attenuate(Double3 ktr, int count, double minK)
+    {
+        if (count == 0)
+            return ktr;
+
+        Double3 kT = material.kT;
+        if (kT.equals(Double3.ZERO)) // opaque - no need to look any further
+            return Double3.ZERO;
+
+        for (int i = 0; i < count; i++)
+        {
+            ktr = ktr.product(kT);
+            if (ktr.lowerThan(minK))
+                return Double3.ZERO;
+        }
+
+        return ktr;
+    }
 }
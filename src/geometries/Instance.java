@@ -0,0 +1,255 @@
+package geometries;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Transform;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A placement of shared geometries in the scene by an affine transformation - the bottom level of a two-level
+ * acceleration structure. Any number of instances may share the same Geometries (e.g. a mesh), which holds its
+ * own BVH tree in its own (object) space: the tree is built once, by the first instance, and reused by all of
+ * them, so the memory grows with the amount of unique geometries and not with the amount of copies.
+ * A Geometries of instances with a BVH tree of its own is the top level.
+ * A ray is intersected with an instance by moving it into object space with the inverse transformation.
+ *
+ * @author Yair and Noam
+ */
+public class Instance extends Intersectable
+{
+	/**
+	 * The shared geometries, in object space
+	 */
+	private final Geometries geometries;
+
+	/**
+	 * The transformation from object space into the scene
+	 */
+	private Transform transform;
+
+	/**
+	 * Constructs an instance of shared geometries, and builds their BVH tree if it was not built yet.
+	 *
+	 * @param geometries the shared geometries
+	 * @param transform  the transformation from object space into the scene
+	 */
+	public Instance(Geometries geometries, Transform transform)
+	{
+		this.geometries = geometries;
+		this.transform = transform;
+
+		if (!geometries.hasBvhTree())
+			geometries.buildBvhTree();
+	}
+
+	/**
+	 * Returns the shared geometries.
+	 *
+	 * @return the geometries, in object space
+	 */
+	public Geometries getGeometries()
+	{
+		return geometries;
+	}
+
+	/**
+	 * Returns the transformation of the instance.
+	 *
+	 * @return the transformation from object space into the scene
+	 */
+	public Transform getTransform()
+	{
+		return transform;
+	}
+
+	/**
+	 * Moves the instance by setting a new transformation.
+	 * The bounding box follows only when a tree holding the instance is refitted (see
+	 * {@link Geometries#refitBvhTree()}).
+	 *
+	 * @param transform the transformation from object space into the scene
+	 * @return the instance itself
+	 */
+	public Instance setTransform(Transform transform)
+	{
+		this.transform = transform;
+		return this;
+	}
+
+	/**
+	 * Creates the bounding box of the instance - the box containing the 8 transformed corners of the box of the
+	 * shared geometries.
+	 */
+	@Override
+	protected void createBox()
+	{
+		box.clear();
+		if (geometries.box.checkInfinite())
+		{
+			box.minX = box.minY = box.minZ = Double.NEGATIVE_INFINITY;
+			box.maxX = box.maxY = box.maxZ = Double.POSITIVE_INFINITY;
+			return;
+		}
+
+		if (geometries.box.minX > geometries.box.maxX) // no geometries
+			return;
+
+		for (int corner = 0; corner < 8; corner++)
+		{
+			Point p = transform.transform(new Point(
+					(corner & 1) == 0 ? geometries.box.minX : geometries.box.maxX,
+					(corner & 2) == 0 ? geometries.box.minY : geometries.box.maxY,
+					(corner & 4) == 0 ? geometries.box.minZ : geometries.box.maxZ));
+
+			box.minX = Math.min(box.minX, p.getX());
+			box.minY = Math.min(box.minY, p.getY());
+			box.minZ = Math.min(box.minZ, p.getZ());
+			box.maxX = Math.max(box.maxX, p.getX());
+			box.maxY = Math.max(box.maxY, p.getY());
+			box.maxZ = Math.max(box.maxZ, p.getZ());
+		}
+	}
+
+	/**
+	 * Moves a ray into object space. The direction of the moved ray is normalized, so distances along it
+	 * are the distances along the original ray times the length of the moved (unnormalized) direction.
+	 *
+	 * @param ray the ray in the scene
+	 * @return the ray in object space
+	 */
+	private Ray toObjectSpace(Ray ray)
+	{
+		return new Ray(transform.inverseTransform(ray.getP0()), transform.inverseTransform(ray.getDir()));
+	}
+
+	/**
+	 * Calculates the ratio between distances in object space and distances in the scene, along a ray.
+	 *
+	 * @param ray the ray in the scene
+	 * @return the length of the ray direction in object space
+	 */
+	private double objectSpaceScale(Ray ray)
+	{
+		return transform.inverseTransform(ray.getDir()).length();
+	}
+
+	/**
+	 * Helper method to find the geometric intersections of a ray with the instance.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the maximum distance for intersection
+	 * @return a list of GeoPoint objects representing the intersections, or null if no intersection was found
+	 */
+	@Override
+	protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
+	{
+		List<GeoPoint> intersections = geometries.findGeoIntersectionsBVH(toObjectSpace(ray),
+																		  maxDistance * objectSpaceScale(ray));
+		if (intersections == null)
+			return null;
+
+		List<GeoPoint> result = new ArrayList<>(intersections.size());
+		for (GeoPoint gp : intersections)
+			result.add(new GeoPoint(new InstanceHit(gp.geometry), transform.transform(gp.point)));
+		return result;
+	}
+
+	/**
+	 * Helper method for finding the intersection nearest to the ray origin.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	@Override
+	protected double findClosestGeoIntersectionHelper(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		double scale = objectSpaceScale(ray);
+		Geometry before = hit.geometry;
+		double distance = geometries.findClosestGeoIntersectionHelper(toObjectSpace(ray), maxDistance * scale, hit);
+		if (hit.geometry == before)
+			return maxDistance;
+
+		hit.geometry = new InstanceHit(hit.geometry);
+		return distance / scale;
+	}
+
+	/**
+	 * Helper method for calculating the transparency along a ray.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param ktr         the transparency accumulated so far
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the accumulated transparency, the {@link Double3#ZERO} constant if the light is blocked
+	 */
+	@Override
+	protected Double3 findTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK)
+	{
+		return geometries.findTransparencyHelper(toObjectSpace(ray), maxDistance * objectSpaceScale(ray), ktr, minK);
+	}
+
+	/**
+	 * A geometry hit through the instance, as seen in the scene: it has the emission and material of the
+	 * geometry in object space, and its normal is transformed into the scene.
+	 * It only describes a hit, and is never intersected itself.
+	 */
+	private final class InstanceHit extends Geometry
+	{
+		/**
+		 * The geometry in object space
+		 */
+		private final Geometry geometry;
+
+		/**
+		 * Constructs the description of a hit.
+		 *
+		 * @param geometry the geometry hit, in object space
+		 */
+		InstanceHit(Geometry geometry)
+		{
+			this.geometry = geometry;
+			emission = geometry.getEmission();
+			setMaterial(geometry.getMaterial());
+		}
+
+		/**
+		 * Returns the normal at a point in the scene - the normal of the geometry at the matching point in
+		 * object space, transformed into the scene.
+		 *
+		 * @param p the point in the scene
+		 * @return the normal in the scene
+		 */
+		@Override
+		public Vector getNormal(Point p)
+		{
+			return transform.transformNormal(geometry.getNormal(transform.inverseTransform(p)));
+		}
+
+		/**
+		 * A hit is never put in a tree, so it has no box.
+		 */
+		@Override
+		protected void createBox()
+		{
+		}
+
+		/**
+		 * A hit is never intersected.
+		 *
+		 * @param ray         the ray
+		 * @param maxDistance the maximum distance for intersection
+		 * @return null
+		 */
+		@Override
+		protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
+		{
+			return null;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package geometries;
 
 import primitives.Box;
+import primitives.Double3;
 import primitives.Point;
 import primitives.Ray;
 
@@ -31,15 +32,23 @@ public abstract class Intersectable
 	 * @param ray the ray to intersect with
 	 * @return a list of GeoPoint objects representing the intersections, or null if no intersections occur
 	 */
-	public List<GeoPoint> findGeoIntersectionsBVH(Ray ray)
+	public final List<GeoPoint> findGeoIntersectionsBVH(Ray ray)
 	{
-		return box.checkIntersectionWithBox(ray) == null ? null : findGeoIntersections(ray);
+		return findGeoIntersectionsBVH(ray, Double.POSITIVE_INFINITY);
 	}
 	
-//	public List<GeoPoint> findGeoIntersectionsBVH(Ray ray , double maxDistance)
-//	{
-//		return box.checkIntersectionWithBox(ray) == null ? null : findGeoIntersections(ray , maxDistance);
-//	}
+	/**
+	 * Finds the geometric intersections between the intersectable object and a ray in a bounding volume hierarchy (BVH),
+	 * up to a given distance. The object is skipped if the ray enters its box only beyond maxDistance.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the maximum distance for intersection
+	 * @return a list of GeoPoint objects representing the intersections, or null if no intersections occur
+	 */
+	public List<GeoPoint> findGeoIntersectionsBVH(Ray ray, double maxDistance)
+	{
+		return box.checkIntersectionWithBox(ray, maxDistance) ? findGeoIntersections(ray, maxDistance) : null;
+	}
 	
 	/**
 	 * Finds the geometric intersections of a ray with the elements in the scene.
@@ -76,6 +85,131 @@ public abstract class Intersectable
 		return findGeoIntersections(ray, Double.POSITIVE_INFINITY);
 	}
 	
+	/**
+	 * Finds the intersection nearest to the origin of a ray.
+	 *
+	 * @param ray the ray to intersect with
+	 * @return the nearest intersection, or null if the ray does not intersect
+	 */
+	public final GeoPoint findClosestGeoIntersection(Ray ray)
+	{
+		return findClosestGeoIntersection(ray, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Finds the intersection nearest to the origin of a ray, closer than a given distance.
+	 * Unlike {@link #findGeoIntersections(Ray, double)}, the other intersections are never collected:
+	 * the search carries the distance of the best hit so far and skips anything farther, and the returned
+	 * GeoPoint is the only object allocated.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the nearest intersection, or null if there is none closer than maxDistance
+	 */
+	public final GeoPoint findClosestGeoIntersection(Ray ray, double maxDistance)
+	{
+		GeoPoint hit = new GeoPoint(null, null);
+		double distance = findClosestGeoIntersectionHelper(ray, maxDistance, hit);
+		
+		if (hit.geometry == null)
+			return null;
+		
+		hit.point = ray.getPoint(distance);
+		return hit;
+	}
+	
+	/**
+	 * Helper method for finding the intersection nearest to the origin of a ray.
+	 * If an intersection closer than maxDistance is found, its geometry is stored in the hit record and its
+	 * distance is returned, otherwise the hit record is left as is and maxDistance is returned.
+	 * The default implementation scans the list of all intersections, subclasses should override it with
+	 * a direct calculation.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update, only its geometry is set
+	 * @return the distance of the best hit so far
+	 */
+	protected double findClosestGeoIntersectionHelper(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		List<GeoPoint> intersections = findGeoIntersectionsHelper(ray, maxDistance);
+		if (intersections == null)
+			return maxDistance;
+		
+		for (GeoPoint gp : intersections)
+		{
+			double distance = ray.getP0().distance(gp.point);
+			if (distance < maxDistance)
+			{
+				maxDistance = distance;
+				hit.geometry = gp.geometry;
+			}
+		}
+		
+		return maxDistance;
+	}
+	
+	/**
+	 * Calculates how much light passes along a ray up to a given distance (e.g. a shadow ray towards a light).
+	 * Every intersection attenuates the light by the transparency (kT) of its geometry, on the fly - the
+	 * blockers are never collected, and the search stops as soon as the light is blocked.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the transparency factor, {@link Double3#ZERO} if the light is blocked
+	 */
+	public final Double3 findTransparency(Ray ray, double maxDistance, double minK)
+	{
+		return findTransparencyHelper(ray, maxDistance, Double3.ONE, minK);
+	}
+	
+	/**
+	 * Checks whether an opaque geometry intersects a ray up to a given distance.
+	 * The search stops at the first opaque intersection found (any-hit).
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @return true if an opaque geometry intersects the ray within maxDistance
+	 */
+	public final boolean isOccluded(Ray ray, double maxDistance)
+	{
+		// transparent geometries never attenuate below 0, so only an opaque one returns the ZERO constant
+		return findTransparencyHelper(ray, maxDistance, Double3.ONE, 0) == Double3.ZERO;
+	}
+	
+	/**
+	 * Helper method for calculating the transparency along a ray.
+	 * Once the light is blocked (an opaque intersection, or an attenuation below minK), the helper returns the
+	 * {@link Double3#ZERO} constant itself, so that the callers may stop searching.
+	 * The default implementation scans the list of all intersections, subclasses should override it.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param ktr         the transparency accumulated so far
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the accumulated transparency
+	 */
+	protected Double3 findTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK)
+	{
+		List<GeoPoint> intersections = findGeoIntersectionsHelper(ray, maxDistance);
+		if (intersections == null)
+			return ktr;
+		
+		for (GeoPoint gp : intersections)
+		{
+			Double3 kT = gp.geometry.getMaterial().kT;
+			if (kT.equals(Double3.ZERO))
+				return Double3.ZERO;
+			
+			ktr = ktr.product(kT);
+			if (ktr.lowerThan(minK))
+				return Double3.ZERO;
+		}
+		
+		return ktr;
+	}
+	
 	/**
 	 * Helper method for finding the geometric intersections between a ray and the geometry.
 	 * Subclasses should override this method to provide the specific implementation.
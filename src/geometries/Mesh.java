@@ -0,0 +1,862 @@
+package geometries;
+
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
+/**
+ * A triangle mesh kept as flat arrays - the coordinates of the vertices in a single float array, and the
+ * vertex indices of the triangles in a single int array - instead of an object per triangle.
+ * A {@link Triangle} holds a list of points, a plane with its own normal and a box, well over 200 bytes spread
+ * over the heap, while a triangle of a mesh costs 12 bytes of indices, its share of the vertices, and about
+ * 32 bytes of its own BVH tree, so meshes of millions of triangles fit in the heap.
+ * All the triangles of a mesh share the emission and the material of the mesh. The mesh keeps a BVH tree over
+ * its triangles (a {@link FlatTree}) in flat arrays as well, and intersects a ray with a
+ * triangle by the Moller-Trumbore algorithm directly over the arrays. Unlike {@link Triangle}, the edges and
+ * the vertices of a triangle are inside it, so that a ray through an edge shared by two triangles cannot pass
+ * between them.
+ * A hit is reported by a {@link Face}, which describes the triangle hit.
+ * The arrays are accessed through buffers, so a mesh may also live outside the heap: {@link #write(Path)} saves
+ * the mesh with its tree into a file once, and {@link #map(Path)} maps the file read-only, so a mesh of any size
+ * is ready at once without being loaded, and processes rendering on the same machine share its pages.
+ *
+ * @author Yair and Noam
+ */
+public class Mesh extends Geometry
+{
+	/**
+	 * The first int of a mesh file
+	 */
+	private static final int FILE_MAGIC = 0x4D455348;
+
+	/**
+	 * The version of the mesh file format
+	 */
+	private static final int FILE_VERSION = 1;
+
+	/**
+	 * The amount of ints in the header of a mesh file - the magic, the version, the amounts of vertex
+	 * coordinates, triangle indices and tree nodes, and the depth of the tree
+	 */
+	private static final int FILE_HEADER = 6;
+
+	/**
+	 * The coordinates of the vertices, 3 values per vertex
+	 */
+	private final FloatBuffer vertices;
+
+	/**
+	 * The vertex indices of the triangles, 3 values per triangle, ordered so that every leaf of the tree covers
+	 * a continuous range of triangles
+	 */
+	private final IntBuffer indices;
+
+	/**
+	 * The boxes of the tree nodes, 6 values per node - minX, minY, minZ, maxX, maxY, maxZ. The vertices are
+	 * floats, so the boxes are exact in floats as well.
+	 */
+	private final FloatBuffer bounds;
+
+	/**
+	 * The nodes of the tree in depth-first order, so the left child of a node directly follows it, 2 values per
+	 * node: the index of the right child for an inner node or of the first triangle for a leaf, and the amount
+	 * of triangles of a leaf - or for an inner node, -1 minus the axis its children are separated along
+	 */
+	private final IntBuffer nodes;
+
+	/**
+	 * The depth of the deepest node, bounds the size of the traversal stack
+	 */
+	private final int maxDepth;
+
+	/**
+	 * Something done with every triangle a ray hits
+	 */
+	private interface TriangleVisitor
+	{
+		/**
+		 * Handles a hit.
+		 *
+		 * @param triangle    the index of the triangle
+		 * @param distance    the distance of the hit from the ray origin
+		 * @param maxDistance the current maximum distance of the search
+		 * @return the maximum distance to continue with, or a negative value to stop the search
+		 */
+		double visit(int triangle, double distance, double maxDistance);
+	}
+
+	/**
+	 * Constructs a mesh and builds its BVH tree.
+	 * The vertex array is kept as is (not copied), the triangles are copied, in the order of the tree.
+	 *
+	 * @param vertices the coordinates of the vertices, 3 values per vertex
+	 * @param indices  the vertex indices of the triangles, 3 values per triangle
+	 * @throws IllegalArgumentException if the arrays are not made of whole vertices and triangles, or a
+	 *                                  triangle refers to a missing vertex
+	 */
+	public Mesh(float[] vertices, int[] indices)
+	{
+		if (vertices.length % 3 != 0)
+			throw new IllegalArgumentException("The vertex array must hold 3 coordinates per vertex");
+		if (indices.length % 3 != 0)
+			throw new IllegalArgumentException("The index array must hold 3 vertices per triangle");
+		for (int index : indices)
+			if (index < 0 || 3 * index >= vertices.length)
+				throw new IllegalArgumentException("A triangle refers to a missing vertex " + index);
+
+		this.vertices = FloatBuffer.wrap(vertices);
+		int count = indices.length / 3;
+
+		double[] boxes = new double[6 * count];
+		for (int i = 0; i < count; i++)
+			triangleBox(indices, i, boxes);
+
+		FlatTree tree = new FlatTree(boxes, count, Runtime.getRuntime().availableProcessors());
+
+		int[] ordered = new int[indices.length];
+		for (int i = 0; i < count; i++)
+			System.arraycopy(indices, 3 * tree.order[i], ordered, 3 * i, 3);
+		this.indices = IntBuffer.wrap(ordered);
+
+		// the vertices are floats, so the boxes of the nodes are exact in floats as well
+		float[] nodeBounds = new float[tree.bounds.length];
+		for (int i = 0; i < nodeBounds.length; i++)
+			nodeBounds[i] = (float) tree.bounds[i];
+		bounds = FloatBuffer.wrap(nodeBounds);
+		nodes = IntBuffer.wrap(tree.nodes);
+		maxDepth = tree.maxDepth;
+	}
+
+	/**
+	 * Constructs a mesh over a ready tree.
+	 *
+	 * @param vertices the coordinates of the vertices
+	 * @param indices  the vertex indices of the triangles, in the order of the tree
+	 * @param bounds   the boxes of the tree nodes
+	 * @param nodes    the tree nodes
+	 * @param maxDepth the depth of the deepest node
+	 */
+	private Mesh(FloatBuffer vertices, IntBuffer indices, FloatBuffer bounds, IntBuffer nodes, int maxDepth)
+	{
+		this.vertices = vertices;
+		this.indices = indices;
+		this.bounds = bounds;
+		this.nodes = nodes;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Saves the mesh with its tree into a file, to be mapped later by {@link #map(Path)} - the preprocessing
+	 * step of a large mesh. The file holds a header of ints, followed by the vertices, the triangles, the boxes
+	 * and the nodes, all in little-endian order. The emission and the material are not saved.
+	 *
+	 * @param file the file to write, replaced if it exists
+	 * @throws IllegalStateException if the file cannot be written
+	 */
+	public void write(Path file)
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+													StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer chunk = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			chunk.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(vertices.capacity()).putInt(indices.capacity())
+					.putInt(nodes.capacity() / 2).putInt(maxDepth);
+
+			for (int i = 0; i < vertices.capacity(); i++)
+				chunk = flushIfFull(channel, chunk).putFloat(vertices.get(i));
+			for (int i = 0; i < indices.capacity(); i++)
+				chunk = flushIfFull(channel, chunk).putInt(indices.get(i));
+			for (int i = 0; i < bounds.capacity(); i++)
+				chunk = flushIfFull(channel, chunk).putFloat(bounds.get(i));
+			for (int i = 0; i < nodes.capacity(); i++)
+				chunk = flushIfFull(channel, chunk).putInt(nodes.get(i));
+
+			chunk.flip();
+			while (chunk.hasRemaining())
+				channel.write(chunk);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("I/O error - cannot write the mesh file " + file, e);
+		}
+	}
+
+	/**
+	 * Writes a chunk of a file once it has no room for another value.
+	 *
+	 * @param channel the file
+	 * @param chunk   the chunk
+	 * @return the chunk, emptied if it was written
+	 * @throws IOException if the chunk cannot be written
+	 */
+	private static ByteBuffer flushIfFull(FileChannel channel, ByteBuffer chunk) throws IOException
+	{
+		if (chunk.remaining() >= Integer.BYTES)
+			return chunk;
+
+		chunk.flip();
+		while (chunk.hasRemaining())
+			channel.write(chunk);
+		return chunk.clear();
+	}
+
+	/**
+	 * Maps a mesh file written by {@link #write(Path)} read-only into memory. Nothing is read up front - the
+	 * pages of the file are brought in by the operating system as rays reach them, and are shared by all the
+	 * processes that map the same file. The triangles are trusted to refer to existing vertices.
+	 * Every part of the file (vertices, triangles, boxes, nodes) is mapped separately, so each may be up to
+	 * 2GB.
+	 *
+	 * @param file the mesh file
+	 * @return the mesh, with the default emission and material
+	 * @throws IllegalArgumentException if the file is not a mesh file
+	 * @throws IllegalStateException    if the file cannot be read
+	 */
+	public static Mesh map(Path file)
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size < FILE_HEADER * Integer.BYTES)
+				throw new IllegalArgumentException("Not a mesh file " + file);
+
+			IntBuffer header = mapSection(channel, 0, FILE_HEADER * Integer.BYTES).asIntBuffer();
+			if (header.get(0) != FILE_MAGIC || header.get(1) != FILE_VERSION)
+				throw new IllegalArgumentException("Not a mesh file " + file);
+
+			long vertexBytes = (long) header.get(2) * Float.BYTES;
+			long indexBytes = (long) header.get(3) * Integer.BYTES;
+			long boundBytes = (long) header.get(4) * 6 * Float.BYTES;
+			long nodeBytes = (long) header.get(4) * 2 * Integer.BYTES;
+			long offset = FILE_HEADER * Integer.BYTES;
+			if (size != offset + vertexBytes + indexBytes + boundBytes + nodeBytes)
+				throw new IllegalArgumentException("Truncated mesh file " + file);
+
+			FloatBuffer vertices = mapSection(channel, offset, vertexBytes).asFloatBuffer();
+			offset += vertexBytes;
+			IntBuffer indices = mapSection(channel, offset, indexBytes).asIntBuffer();
+			offset += indexBytes;
+			FloatBuffer bounds = mapSection(channel, offset, boundBytes).asFloatBuffer();
+			offset += boundBytes;
+			IntBuffer nodes = mapSection(channel, offset, nodeBytes).asIntBuffer();
+			return new Mesh(vertices, indices, bounds, nodes, header.get(5));
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("I/O error - cannot map the mesh file " + file, e);
+		}
+	}
+
+	/**
+	 * Maps a part of a file read-only.
+	 *
+	 * @param channel the file
+	 * @param offset  the offset of the part in bytes
+	 * @param size    the size of the part in bytes
+	 * @return the mapped part, in little-endian order
+	 * @throws IOException if the part cannot be mapped
+	 */
+	private static ByteBuffer mapSection(FileChannel channel, long offset, long size) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Calculates the box of a triangle.
+	 *
+	 * @param indices  the vertex indices of the triangles
+	 * @param triangle the index of the triangle
+	 * @param boxes    the array to write the box to, 6 values per triangle
+	 */
+	private void triangleBox(int[] indices, int triangle, double[] boxes)
+	{
+		int offset = 6 * triangle;
+		for (int k = 0; k < 3; k++)
+		{
+			boxes[offset + k] = Double.POSITIVE_INFINITY;
+			boxes[offset + k + 3] = Double.NEGATIVE_INFINITY;
+		}
+		for (int corner = 0; corner < 3; corner++)
+		{
+			int vertex = 3 * indices[3 * triangle + corner];
+			for (int k = 0; k < 3; k++)
+			{
+				boxes[offset + k] = Math.min(boxes[offset + k], vertices.get(vertex + k));
+				boxes[offset + k + 3] = Math.max(boxes[offset + k + 3], vertices.get(vertex + k));
+			}
+		}
+	}
+
+	/**
+	 * Returns the amount of triangles of the mesh.
+	 *
+	 * @return the amount of triangles
+	 */
+	public int getTriangleCount()
+	{
+		return indices.capacity() / 3;
+	}
+
+	/**
+	 * Returns a vertex of a triangle.
+	 *
+	 * @param triangle the index of the triangle, in the order of the tree
+	 * @param corner   the corner of the triangle (0, 1 or 2)
+	 * @return the vertex
+	 */
+	public Point getVertex(int triangle, int corner)
+	{
+		int vertex = 3 * indices.get(3 * triangle + corner);
+		return new Point(vertices.get(vertex), vertices.get(vertex + 1), vertices.get(vertex + 2));
+	}
+
+	/**
+	 * Creates the bounding box of the mesh - the box of the root of its tree.
+	 */
+	@Override
+	protected void createBox()
+	{
+		box.clear();
+		if (nodes.capacity() == 0)
+			return;
+
+		box.minX = bounds.get(0);
+		box.minY = bounds.get(1);
+		box.minZ = bounds.get(2);
+		box.maxX = bounds.get(3);
+		box.maxY = bounds.get(4);
+		box.maxZ = bounds.get(5);
+	}
+
+	/**
+	 * Returns the normal of the mesh at a point - the normal of the triangle nearest to the point (see
+	 * {@link Face#getNormal}), so a point on the mesh gets the normal of the triangle it lies on. A hit is
+	 * already described by its {@link Face}, which spares the search.
+	 *
+	 * Triangles without an area (whose vertices lie on a line) have no normal, and are never hit either, so
+	 * they are passed over.
+	 *
+	 * @param p the point
+	 * @return the normal of the nearest triangle with an area
+	 * @throws IllegalStateException if the mesh has no triangle with an area
+	 */
+	@Override
+	public Vector getNormal(Point p)
+	{
+		int nearest = nodes.capacity() == 0 ? -1 : nearestTriangle(p.getX(), p.getY(), p.getZ());
+		if (nearest < 0)
+			throw new IllegalStateException("The mesh has no triangle with an area, so it has no normal");
+
+		return triangleNormal(nearest);
+	}
+
+	/**
+	 * Calculates the normal of a triangle with an area - its cross product (see {@link #triangleCross}),
+	 * normalized.
+	 *
+	 * @param triangle the index of the triangle
+	 * @return the normal of the triangle
+	 */
+	private Vector triangleNormal(int triangle)
+	{
+		double[] cross = triangleCross(triangle);
+		return new Vector(cross[0], cross[1], cross[2]).normalize();
+	}
+
+	/**
+	 * Calculates the cross product of two edges of a triangle, which is perpendicular to the triangle and
+	 * follows the winding of its vertices, and is zero for a triangle without an area.
+	 *
+	 * @param triangle the index of the triangle
+	 * @return the x, y and z components of the cross product
+	 */
+	private double[] triangleCross(int triangle)
+	{
+		int a = 3 * indices.get(3 * triangle), b = 3 * indices.get(3 * triangle + 1), c = 3 * indices.get(3 * triangle + 2);
+		double e1x = vertices.get(b) - vertices.get(a), e1y = vertices.get(b + 1) - vertices.get(a + 1);
+		double e1z = vertices.get(b + 2) - vertices.get(a + 2);
+		double e2x = vertices.get(c) - vertices.get(a), e2y = vertices.get(c + 1) - vertices.get(a + 1);
+		double e2z = vertices.get(c + 2) - vertices.get(a + 2);
+		return new double[]{e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x};
+	}
+
+	/**
+	 * Checks whether a triangle has an area, so that it has a normal.
+	 *
+	 * @param triangle the index of the triangle
+	 * @return true if the cross product of its edges is not zero
+	 */
+	private boolean hasArea(int triangle)
+	{
+		double[] cross = triangleCross(triangle);
+		return !isZero(cross[0]) || !isZero(cross[1]) || !isZero(cross[2]);
+	}
+
+	/**
+	 * Finds the triangle with an area nearest to a point by walking the tree, nearer child first. A node whose
+	 * box is farther than the nearest triangle found so far is skipped.
+	 *
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param z the z coordinate of the point
+	 * @return the index of the nearest triangle, in the order of the tree, or -1 if no triangle has an area
+	 */
+	private int nearestTriangle(double x, double y, double z)
+	{
+		double best = Double.POSITIVE_INFINITY;
+		int nearest = -1;
+
+		int[] stack = new int[maxDepth + 1];
+		int top = 0;
+		int node = 0;
+		while (true)
+		{
+			if (nodeDistanceSquared(node, x, y, z) < best)
+			{
+				int count = nodes.get(2 * node + 1);
+				if (count < 0)
+				{
+					int left = node + 1, right = nodes.get(2 * node);
+					if (nodeDistanceSquared(right, x, y, z) < nodeDistanceSquared(left, x, y, z))
+					{
+						stack[top++] = left;
+						node = right;
+					}
+					else
+					{
+						stack[top++] = right;
+						node = left;
+					}
+					continue;
+				}
+
+				int first = nodes.get(2 * node);
+				for (int i = first; i < first + count; i++)
+				{
+					double distance = triangleDistanceSquared(i, x, y, z);
+					if (distance < best && hasArea(i))
+					{
+						best = distance;
+						nearest = i;
+					}
+				}
+			}
+
+			if (top == 0)
+				return nearest;
+			node = stack[--top];
+		}
+	}
+
+	/**
+	 * Calculates the squared distance from a point to a node box, 0 for a point inside it.
+	 *
+	 * @param node the index of the node
+	 * @param x    the x coordinate of the point
+	 * @param y    the y coordinate of the point
+	 * @param z    the z coordinate of the point
+	 * @return the squared distance
+	 */
+	private double nodeDistanceSquared(int node, double x, double y, double z)
+	{
+		int offset = 6 * node;
+		double dx = Math.max(0, Math.max(bounds.get(offset) - x, x - bounds.get(offset + 3)));
+		double dy = Math.max(0, Math.max(bounds.get(offset + 1) - y, y - bounds.get(offset + 4)));
+		double dz = Math.max(0, Math.max(bounds.get(offset + 2) - z, z - bounds.get(offset + 5)));
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Calculates the squared distance from a point to a triangle. The nearest point of the triangle is found in
+	 * barycentric coordinates - a vertex, a point of an edge, or the projection inside the triangle - by the
+	 * Voronoi regions of the triangle (Ericson, Real-Time Collision Detection, 5.1.5).
+	 *
+	 * @param triangle the index of the triangle
+	 * @param x        the x coordinate of the point
+	 * @param y        the y coordinate of the point
+	 * @param z        the z coordinate of the point
+	 * @return the squared distance
+	 */
+	private double triangleDistanceSquared(int triangle, double x, double y, double z)
+	{
+		int a = 3 * indices.get(3 * triangle), b = 3 * indices.get(3 * triangle + 1), c = 3 * indices.get(3 * triangle + 2);
+		double ax = vertices.get(a), ay = vertices.get(a + 1), az = vertices.get(a + 2);
+		double abx = vertices.get(b) - ax, aby = vertices.get(b + 1) - ay, abz = vertices.get(b + 2) - az;
+		double acx = vertices.get(c) - ax, acy = vertices.get(c + 1) - ay, acz = vertices.get(c + 2) - az;
+		double apx = x - ax, apy = y - ay, apz = z - az;
+
+		// the dot products of the edges from a with the point, as seen from a, b and c
+		double d1 = abx * apx + aby * apy + abz * apz, d2 = acx * apx + acy * apy + acz * apz;
+		double abab = abx * abx + aby * aby + abz * abz, abac = abx * acx + aby * acy + abz * acz;
+		double acac = acx * acx + acy * acy + acz * acz;
+		double d3 = d1 - abab, d4 = d2 - abac;
+		double d5 = d1 - abac, d6 = d2 - acac;
+
+		double vc = d1 * d4 - d3 * d2, vb = d5 * d2 - d1 * d6, va = d3 * d6 - d5 * d4;
+		double v, w; // the nearest point is a + v * ab + w * ac
+		if (d1 <= 0 && d2 <= 0)
+		{ // vertex a
+			v = 0;
+			w = 0;
+		}
+		else if (d3 >= 0 && d4 <= d3)
+		{ // vertex b
+			v = 1;
+			w = 0;
+		}
+		else if (vc <= 0 && d1 >= 0 && d3 <= 0)
+		{ // edge ab
+			v = d1 / (d1 - d3);
+			w = 0;
+		}
+		else if (d6 >= 0 && d5 <= d6)
+		{ // vertex c
+			v = 0;
+			w = 1;
+		}
+		else if (vb <= 0 && d2 >= 0 && d6 <= 0)
+		{ // edge ac
+			v = 0;
+			w = d2 / (d2 - d6);
+		}
+		else if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0)
+		{ // edge bc
+			w = (d4 - d3) / (d4 - d3 + d5 - d6);
+			v = 1 - w;
+		}
+		else
+		{ // inside the triangle
+			double denominator = 1 / (va + vb + vc);
+			v = vb * denominator;
+			w = vc * denominator;
+		}
+
+		double dx = apx - v * abx - w * acx, dy = apy - v * aby - w * acy, dz = apz - v * abz - w * acz;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Intersects a ray with a triangle by the Moller-Trumbore algorithm: the hit point is solved for directly in
+	 * the barycentric coordinates of the triangle, without its plane.
+	 *
+	 * @param triangle    the index of the triangle
+	 * @param ox          the x coordinate of the ray origin
+	 * @param oy          the y coordinate of the ray origin
+	 * @param oz          the z coordinate of the ray origin
+	 * @param dx          the x component of the ray direction
+	 * @param dy          the y component of the ray direction
+	 * @param dz          the z component of the ray direction
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the distance of the hit, or positive infinity if the ray misses within maxDistance
+	 */
+	private double intersectTriangle(int triangle, double ox, double oy, double oz, double dx, double dy, double dz,
+									 double maxDistance)
+	{
+		int a = 3 * indices.get(3 * triangle), b = 3 * indices.get(3 * triangle + 1), c = 3 * indices.get(3 * triangle + 2);
+		double ax = vertices.get(a), ay = vertices.get(a + 1), az = vertices.get(a + 2);
+		double e1x = vertices.get(b) - ax, e1y = vertices.get(b + 1) - ay, e1z = vertices.get(b + 2) - az;
+		double e2x = vertices.get(c) - ax, e2y = vertices.get(c + 1) - ay, e2z = vertices.get(c + 2) - az;
+
+		// p = d x e2, the determinant is e1 . p
+		double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+		double det = alignZero(e1x * px + e1y * py + e1z * pz);
+		if (det == 0) // the ray is parallel to the triangle
+			return Double.POSITIVE_INFINITY;
+
+		double inverse = 1 / det;
+		double sx = ox - ax, sy = oy - ay, sz = oz - az;
+		double u = (sx * px + sy * py + sz * pz) * inverse;
+		if (u < 0 || u > 1)
+			return Double.POSITIVE_INFINITY;
+
+		// q = s x e1
+		double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+		double v = (dx * qx + dy * qy + dz * qz) * inverse;
+		if (v < 0 || u + v > 1)
+			return Double.POSITIVE_INFINITY;
+
+		double t = alignZero((e2x * qx + e2y * qy + e2z * qz) * inverse);
+		return t > 0 && alignZero(t - maxDistance) < 0 ? t : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Walks the tree along a ray, nearer child first, and hands every triangle hit within the maximum distance
+	 * over to a visitor. A node the ray enters only beyond the maximum distance (which the visitor may shrink)
+	 * is skipped.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param visitor     the visitor of the hits
+	 */
+	private void traverse(Ray ray, double maxDistance, TriangleVisitor visitor)
+	{
+		if (nodes.capacity() == 0)
+			return;
+
+		double ox = ray.getP0().getX(), oy = ray.getP0().getY(), oz = ray.getP0().getZ();
+		Vector dir = ray.getDir();
+		double dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+		double ix = ray.getInvDirX(), iy = ray.getInvDirY(), iz = ray.getInvDirZ();
+
+		int[] stack = new int[maxDepth + 1];
+		int top = 0;
+		int node = 0;
+		while (true)
+		{
+			if (intersectsNode(node, ox, oy, oz, ix, iy, iz, maxDistance))
+			{
+				int count = nodes.get(2 * node + 1);
+				if (count < 0)
+				{
+					int left = node + 1, right = nodes.get(2 * node);
+					if (FlatBvh.isNegative(-1 - count, dir))
+					{
+						stack[top++] = left;
+						node = right;
+					}
+					else
+					{
+						stack[top++] = right;
+						node = left;
+					}
+					continue;
+				}
+
+				int first = nodes.get(2 * node);
+				for (int i = first; i < first + count; i++)
+				{
+					double t = intersectTriangle(i, ox, oy, oz, dx, dy, dz, maxDistance);
+					if (t != Double.POSITIVE_INFINITY)
+					{
+						maxDistance = visitor.visit(i, t, maxDistance);
+						if (maxDistance < 0)
+							return;
+					}
+				}
+			}
+
+			if (top == 0)
+				return;
+			node = stack[--top];
+		}
+	}
+
+	/**
+	 * Checks whether a ray enters a node box before a given distance.
+	 *
+	 * @param node the index of the node
+	 * @param ox   the x coordinate of the ray origin
+	 * @param oy   the y coordinate of the ray origin
+	 * @param oz   the z coordinate of the ray origin
+	 * @param ix   the inverse of the x component of the ray direction
+	 * @param iy   the inverse of the y component of the ray direction
+	 * @param iz   the inverse of the z component of the ray direction
+	 * @param tMax the distance along the ray beyond which the box is not interesting
+	 * @return true if the ray passes through the box before tMax
+	 */
+	private boolean intersectsNode(int node, double ox, double oy, double oz, double ix, double iy, double iz,
+								   double tMax)
+	{
+		int offset = 6 * node;
+		double tEnter = 0, tExit = tMax;
+
+		double t1 = (bounds.get(offset) - ox) * ix, t2 = (bounds.get(offset + 3) - ox) * ix;
+		// a NaN (origin on the box face of a parallel ray) keeps the previous interval
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > tEnter) tEnter = t1;
+		if (t2 < tExit) tExit = t2;
+
+		t1 = (bounds.get(offset + 1) - oy) * iy;
+		t2 = (bounds.get(offset + 4) - oy) * iy;
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > tEnter) tEnter = t1;
+		if (t2 < tExit) tExit = t2;
+
+		t1 = (bounds.get(offset + 2) - oz) * iz;
+		t2 = (bounds.get(offset + 5) - oz) * iz;
+		if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+		if (t1 > tEnter) tEnter = t1;
+		if (t2 < tExit) tExit = t2;
+
+		return tEnter <= tExit;
+	}
+
+	/**
+	 * Finds the triangle hit nearest to the ray origin.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param distance    an array of 1 to write the distance of the hit to
+	 * @return the index of the triangle, or -1 if the ray misses the mesh within maxDistance
+	 */
+	private int findClosestTriangle(Ray ray, double maxDistance, double[] distance)
+	{
+		int[] best = {-1};
+		distance[0] = maxDistance;
+		traverse(ray, maxDistance, (triangle, t, max) ->
+		{
+			best[0] = triangle;
+			distance[0] = t;
+			return t;
+		});
+		return best[0];
+	}
+
+	/**
+	 * Helper method to find the intersections of a ray with the mesh.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the intersections, each with the face hit, or null if there are none
+	 */
+	@Override
+	protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
+	{
+		List<GeoPoint> intersections = new ArrayList<>();
+		traverse(ray, maxDistance, (triangle, t, max) ->
+		{
+			intersections.add(new GeoPoint(new Face(triangle), ray.getPoint(t)));
+			return max;
+		});
+		return intersections.isEmpty() ? null : intersections;
+	}
+
+	/**
+	 * Finds the distance from the ray origin to the nearest intersection with the mesh.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the distance to the nearest intersection, or positive infinity if there is none within maxDistance
+	 */
+	@Override
+	protected double findIntersectionDistance(Ray ray, double maxDistance)
+	{
+		double[] distance = new double[1];
+		return findClosestTriangle(ray, maxDistance, distance) < 0 ? Double.POSITIVE_INFINITY : distance[0];
+	}
+
+	/**
+	 * Helper method for finding the intersection nearest to the ray origin. The hit record gets the face hit,
+	 * which is the only object allocated.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	@Override
+	protected double findClosestGeoIntersectionHelper(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		double[] distance = new double[1];
+		int triangle = findClosestTriangle(ray, maxDistance, distance);
+		if (triangle < 0)
+			return maxDistance;
+
+		hit.geometry = new Face(triangle);
+		return distance[0];
+	}
+
+	/**
+	 * Counts the intersections of a ray with the mesh. An opaque mesh blocks the light at its first
+	 * intersection, so the search stops there.
+	 *
+	 * @param ray         the ray to intersect with
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the amount of intersections within maxDistance
+	 */
+	@Override
+	protected int countIntersections(Ray ray, double maxDistance)
+	{
+		boolean opaque = getMaterial().kT.equals(Double3.ZERO);
+		int[] count = {0};
+		traverse(ray, maxDistance, (triangle, t, max) ->
+		{
+			count[0]++;
+			return opaque ? -1 : max;
+		});
+		return count[0];
+	}
+
+	/**
+	 * A triangle of the mesh hit by a ray: it has the emission and material of the mesh, and the normal of the
+	 * triangle. It only describes a hit, and is never intersected itself.
+	 */
+	public final class Face extends Geometry
+	{
+		/**
+		 * The index of the triangle
+		 */
+		private final int triangle;
+
+		/**
+		 * Constructs the description of a hit.
+		 *
+		 * @param triangle the index of the triangle hit
+		 */
+		Face(int triangle)
+		{
+			this.triangle = triangle;
+			emission = Mesh.this.getEmission();
+			setMaterial(Mesh.this.getMaterial());
+		}
+
+		/**
+		 * Returns the index of the triangle hit, in the order of the tree of the mesh.
+		 *
+		 * @return the index of the triangle
+		 */
+		public int getIndex()
+		{
+			return triangle;
+		}
+
+		/**
+		 * Returns the normal of the triangle, which is the same at every point of it - the cross product of two
+		 * of its edges, so the normal follows the winding of the vertices.
+		 *
+		 * @param p the point
+		 * @return the normal of the triangle
+		 */
+		@Override
+		public Vector getNormal(Point p)
+		{
+			return triangleNormal(triangle);
+		}
+
+		/**
+		 * A hit is never put in a tree, so it has no box.
+		 */
+		@Override
+		protected void createBox()
+		{
+		}
+
+		/**
+		 * A hit is never intersected.
+		 *
+		 * @param ray         the ray
+		 * @param maxDistance the maximum distance for intersection
+		 * @return null
+		 */
+		@Override
+		protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package geometries;
+
+import primitives.Ray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An octree over the bounded primitives: the box of the scene is split at its center into 8 octants, and
+ * every octant holding more than {@link #MAX_LEAF_SIZE} primitives is split again, so the cells adapt to the
+ * density of the scene - empty regions are covered by a few large cells, and dense clusters by many small ones.
+ * A primitive is referenced by every octant its box overlaps. An octant is not split when that would not
+ * separate its primitives (most of them overlap several children), or at {@link #MAX_DEPTH}.
+ * The nodes are kept in flat arrays: the 8 children of a node are consecutive, and the primitive lists of the
+ * leaves are kept one after the other in a single array.
+ * The traversal is iterative with an explicit stack, visits the octants near to far, and skips any octant
+ * the ray enters only beyond the maximum distance.
+ *
+ * @author Yair and Noam
+ */
+final class Octree extends SpatialIndex
+{
+	/**
+	 * The amount of primitives up to which an octant is not split
+	 */
+	static final int MAX_LEAF_SIZE = 8;
+
+	/**
+	 * The maximal depth of the tree
+	 */
+	static final int MAX_DEPTH = 10;
+
+	/**
+	 * The amount of references to primitives, relative to their amount, beyond which an octant is not split
+	 */
+	static final int MAX_DUPLICATION = 4;
+
+	/**
+	 * The boxes of the nodes, 6 values per node - minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	private double[] bounds = new double[6 * 64];
+
+	/**
+	 * The index of the first child of every node, -1 for a leaf
+	 */
+	private int[] firstChild = new int[64];
+
+	/**
+	 * The offset of the primitive list of every leaf in {@link #items}, and the end of the list
+	 */
+	private int[] itemRange = new int[2 * 64];
+
+	/**
+	 * The primitive indices of all the leaves, list after list
+	 */
+	private int[] items = new int[64];
+
+	/**
+	 * The amount of nodes
+	 */
+	private int nodeCount = 0;
+
+	/**
+	 * The amount of primitive indices in {@link #items}
+	 */
+	private int itemCount = 0;
+
+	/**
+	 * Builds an octree over primitives.
+	 *
+	 * @param bounded   the primitives with a finite box, with up-to-date boxes
+	 * @param unbounded the primitives without a finite box
+	 */
+	Octree(List<Intersectable> bounded, List<Intersectable> unbounded)
+	{
+		super(bounded, unbounded);
+
+		double[] boxes = new double[6 * primitives.length];
+		double[] root = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for (int i = 0; i < primitives.length; i++)
+		{
+			primitives[i].box.copyTo(boxes, 6 * i);
+			for (int k = 0; k < 3; k++)
+			{
+				root[k] = Math.min(root[k], boxes[6 * i + k]);
+				root[k + 3] = Math.max(root[k + 3], boxes[6 * i + k + 3]);
+			}
+		}
+
+		int[] all = new int[primitives.length];
+		for (int i = 0; i < all.length; i++)
+			all[i] = i;
+
+		int node = allocateNodes(1);
+		System.arraycopy(root, 0, bounds, 0, 6);
+		build(node, all, all.length, boxes, 0);
+
+		bounds = Arrays.copyOf(bounds, 6 * nodeCount);
+		firstChild = Arrays.copyOf(firstChild, nodeCount);
+		itemRange = Arrays.copyOf(itemRange, 2 * nodeCount);
+		items = Arrays.copyOf(items, itemCount);
+	}
+
+	/**
+	 * Adds nodes at the end of the node arrays, growing them if needed.
+	 *
+	 * @param count the amount of nodes to add
+	 * @return the index of the first added node
+	 */
+	private int allocateNodes(int count)
+	{
+		if (nodeCount + count > firstChild.length)
+		{
+			int capacity = 2 * (nodeCount + count);
+			bounds = Arrays.copyOf(bounds, 6 * capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			itemRange = Arrays.copyOf(itemRange, 2 * capacity);
+		}
+
+		int first = nodeCount;
+		nodeCount += count;
+		return first;
+	}
+
+	/**
+	 * Builds the sub-tree of a node, whose box is already set.
+	 *
+	 * @param node    the index of the node
+	 * @param indices the primitives overlapping the node (the first count entries)
+	 * @param count   the amount of primitives
+	 * @param boxes   the boxes of all the primitives, 6 values per primitive
+	 * @param depth   the depth of the node
+	 */
+	private void build(int node, int[] indices, int count, double[] boxes, int depth)
+	{
+		if (count > MAX_LEAF_SIZE && depth < MAX_DEPTH)
+		{
+			double[] center = new double[3];
+			for (int k = 0; k < 3; k++)
+				center[k] = (bounds[6 * node + k] + bounds[6 * node + k + 3]) / 2;
+
+			// the primitives of every octant, bit 0 of the octant selects the upper x half, bit 1 y, bit 2 z
+			int[][] children = new int[8][count];
+			int[] childCount = new int[8];
+			int references = 0;
+			for (int j = 0; j < count; j++)
+			{
+				int i = indices[j];
+				for (int octant = 0; octant < 8; octant++)
+				{
+					if (overlapsOctant(boxes, 6 * i, center, octant))
+					{
+						children[octant][childCount[octant]++] = i;
+						references++;
+					}
+				}
+			}
+
+			if (references <= MAX_DUPLICATION * count)
+			{
+				int first = allocateNodes(8);
+				firstChild[node] = first;
+				for (int octant = 0; octant < 8; octant++)
+				{
+					int child = first + octant;
+					for (int k = 0; k < 3; k++)
+					{
+						boolean upper = (octant & (1 << k)) != 0;
+						bounds[6 * child + k] = upper ? center[k] : bounds[6 * node + k];
+						bounds[6 * child + k + 3] = upper ? bounds[6 * node + k + 3] : center[k];
+					}
+				}
+				for (int octant = 0; octant < 8; octant++)
+					build(first + octant, children[octant], childCount[octant], boxes, depth + 1);
+				return;
+			}
+		}
+
+		firstChild[node] = -1;
+		if (itemCount + count > items.length)
+			items = Arrays.copyOf(items, 2 * (itemCount + count));
+		System.arraycopy(indices, 0, items, itemCount, count);
+		itemRange[2 * node] = itemCount;
+		itemRange[2 * node + 1] = itemCount += count;
+	}
+
+	/**
+	 * Checks whether a box overlaps an octant of a node (touching counts as overlapping).
+	 *
+	 * @param boxes  the array holding the box
+	 * @param offset the offset of the box
+	 * @param center the center of the node
+	 * @param octant the octant
+	 * @return true if the box overlaps the octant
+	 */
+	private static boolean overlapsOctant(double[] boxes, int offset, double[] center, int octant)
+	{
+		for (int k = 0; k < 3; k++)
+		{
+			boolean upper = (octant & (1 << k)) != 0;
+			if (upper ? boxes[offset + k + 3] < center[k] : boxes[offset + k] > center[k])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Walks the octants along the ray, near to far: the children of a node are pushed so that those on the
+	 * side of the ray origin along every axis are popped first. An octant is clipped against the maximum
+	 * distance when it is popped, so octants beyond a hit found meanwhile are skipped.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param visitor     the visitor of the primitives
+	 * @param mailbox     the mailbox of the current query
+	 */
+	@Override
+	void traverse(Ray ray, double maxDistance, PrimitiveVisitor visitor, Mailbox mailbox)
+	{
+		double[] origin = {ray.getP0().getX(), ray.getP0().getY(), ray.getP0().getZ()};
+		double[] inverse = {ray.getInvDirX(), ray.getInvDirY(), ray.getInvDirZ()};
+		int mirror = (inverse[0] < 0 ? 1 : 0) | (inverse[1] < 0 ? 2 : 0) | (inverse[2] < 0 ? 4 : 0);
+
+		double[] t = new double[2];
+		int[] stack = new int[7 * MAX_DEPTH + 1];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0)
+		{
+			int node = stack[--top];
+			if (!clip(bounds, 6 * node, origin, inverse, maxDistance, t))
+				continue;
+
+			if (firstChild[node] < 0)
+			{
+				maxDistance = visitCell(items, itemRange[2 * node], itemRange[2 * node + 1], maxDistance, visitor,
+										mailbox);
+				if (maxDistance < 0)
+					return;
+				continue;
+			}
+
+			for (int i = 7; i >= 0; i--)
+				stack[top++] = firstChild[node] + (i ^ mirror);
+		}
+	}
+}
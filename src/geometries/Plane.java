@@ -8,6 +8,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
 
 /**
  * The Plane class represents a plane in 3D space.
@@ -70,6 +71,16 @@ public class Plane extends Geometry
 		this.normal = normal.normalize();
 	}
 	
+	/**
+	 * Returns the point on the plane.
+	 *
+	 * @return the point on the plane.
+	 */
+	public Point getQ0()
+	{
+		return q0;
+	}
+	
 	/**
 	 * Returns the normal vector of the plane.
 	 *
@@ -118,38 +129,54 @@ public class Plane extends Geometry
 	@Override
 	protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
 	{
-		double temp, t;
-		Vector vec;
+		double t = findIntersectionDistance(ray, maxDistance);
 		
-		try
-		{
-			vec = q0.subtract(ray.getP0());
-		}
-		catch (IllegalArgumentException e)
+		return t == Double.POSITIVE_INFINITY ? null : List.of(new GeoPoint(this, ray.getPoint(t)));
+	}
+	
+	/**
+	 * Finds the distance from the ray origin to the intersection with the plane, in the same way as
+	 * {@link #findGeoIntersectionsHelper(Ray, double)} but without allocating.
+	 *
+	 * @param ray         the ray to intersect with the plane
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the distance to the intersection, or positive infinity if there is none within maxDistance
+	 */
+	@Override
+	protected double findIntersectionDistance(Ray ray, double maxDistance)
+	{
+		Point p0 = ray.getP0();
+		double vx = q0.getX() - p0.getX();
+		double vy = q0.getY() - p0.getY();
+		double vz = q0.getZ() - p0.getZ();
+		
+		if (isZero(vx) && isZero(vy) && isZero(vz))
 		{ // start at the point that the plane defined
-			return null;
+			return Double.POSITIVE_INFINITY;
 		}
 		
 		// are they parallel?
-		t = alignZero(normal.dotProduct(ray.getDir()));
-		
-		if (t == 0)
-		{ // they are parallel
-			return null;
+		double nd = alignZero(normal.dotProduct(ray.getDir()));
+		if (nd == 0)
+		{
+			return Double.POSITIVE_INFINITY;
 		}
 		
-		temp = vec.dotProduct(normal);
-		t = alignZero(temp / t);
+		double t = alignZero((vx * normal.getX() + vy * normal.getY() + vz * normal.getZ()) / nd);
 		
-		if (t > 0)
-		{ // direction is opposite
-			if (alignZero(t - maxDistance) < 0)
-			{
-				return List.of(new GeoPoint(this, ray.getPoint(t)));
-			}
-		}
-		
-		return null;
+		return t > 0 && alignZero(t - maxDistance) < 0 ? t : Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Counts the intersections of a ray with the plane, without allocating.
+	 *
+	 * @param ray the ray to intersect with the plane
+	 * @param maxDistance the maximum distance for intersection
+	 * @return 1 if the ray intersects the plane within maxDistance, 0 otherwise
+	 */
+	@Override
+	protected int countIntersections(Ray ray, double maxDistance)
+	{
+		return findIntersectionDistance(ray, maxDistance) == Double.POSITIVE_INFINITY ? 0 : 1;
 	}
 }
-
@@ -126,22 +126,75 @@ public class Polygon extends Geometry
       }
       
       GeoPoint intersect = intersections.get(0); // for not using get function a couple of times
+      
+      if (!contains(intersect.point.getX(), intersect.point.getY()))
+      {
+         return null;
+      }
+      
+      return List.of(new GeoPoint(this, intersect.point));
+   }
+   
+   /**
+    * Finds the distance from the ray origin to the intersection with the polygon, in the same way as
+    * {@link #findGeoIntersectionsHelper(Ray, double)} but without allocating.
+    *
+    * @param ray the ray to intersect with the polygon
+    * @param maxDistance the maximum distance for intersection
+    * @return the distance to the intersection, or positive infinity if there is none within maxDistance
+    */
+   @Override
+   protected double findIntersectionDistance(Ray ray, double maxDistance)
+   {
+      double t = plane.findIntersectionDistance(ray, maxDistance); // first find the suspect point
+      if (t == Double.POSITIVE_INFINITY)
+      {
+         return t;
+      }
+      
+      Point p0 = ray.getP0();
+      Vector dir = ray.getDir();
+      return contains(p0.getX() + dir.getX() * t, p0.getY() + dir.getY() * t) ? t : Double.POSITIVE_INFINITY;
+   }
+   
+   /**
+    * Counts the intersections of a ray with the polygon, without allocating.
+    *
+    * @param ray the ray to intersect with the polygon
+    * @param maxDistance the maximum distance for intersection
+    * @return 1 if the ray intersects the polygon within maxDistance, 0 otherwise
+    */
+   @Override
+   protected int countIntersections(Ray ray, double maxDistance)
+   {
+      return findIntersectionDistance(ray, maxDistance) == Double.POSITIVE_INFINITY ? 0 : 1;
+   }
+   
+   /**
+    * Checks whether a point of the polygon plane is inside the polygon.
+    * The polygon is split into a fan of triangles from its first vertex, a point on a side shared by two
+    * triangles of the fan is inside, a point on a vertex is not.
+    *
+    * @param px the x coordinate of the point
+    * @param py the y coordinate of the point
+    * @return true if the point is inside the polygon
+    */
+   protected boolean contains(double px, double py)
+   {
       int sideCounter = 0, ans;
-      boolean found = false;
       
       for (int i = 1; i < vertices.size() - 1; i++)
       {
-         ans = inTriangle(intersect.point, vertices.get(0), vertices.get(i), vertices.get(i + 1));
+         ans = inTriangle(px, py, vertices.get(0), vertices.get(i), vertices.get(i + 1));
          
          if (ans == 1) // inside the triangle that contained in the polygon
          {
-            found = true;
-            break;
+            return true;
          }
          
          if (ans == 3) // vertex
          {
-            return null;
+            return false;
          }
          
          if (ans == 2) // side of the triangle
@@ -149,18 +202,12 @@ public class Polygon extends Geometry
             sideCounter++;
             if (sideCounter == 2)
             {
-               found = true;
-               break;
+               return true;
             }
          }
       }
       
-      if (!found)
-      {
-         return null;
-      }
-      
-      return List.of(new GeoPoint(this, intersect.point));
+      return false;
    }
    
    /**
@@ -177,9 +224,26 @@ public class Polygon extends Geometry
     3 if intersection with a vertex
     */
    protected int inTriangle(Point p, Point a, Point b, Point c)
+   {
+      return inTriangle(p.getX(), p.getY(), a, b, c);
+   }
+   
+   /**
+    Computes the intersection between a point, given by its coordinates, and a triangle
+    
+    @param px The x coordinate of the point to check intersection with
+    @param py The y coordinate of the point to check intersection with
+    @param a First point of the triangle
+    @param b Second point of the triangle
+    @param c Third point of the triangle
+    
+    @return 0 if no intersection, 1 if intersection inside the triangle, 2 if intersection with an edge,
+    3 if intersection with a vertex
+    */
+   protected int inTriangle(double px, double py, Point a, Point b, Point c)
    {
       double w1, w2, temp; // w1 and w2 is a coefficients of vec1 and vec2
-      double ax = a.getX(), ay = a.getY(), bx = b.getX(), by = b.getY(), cx = c.getX(), cy = c.getY(), px = p.getX(), py = p.getY();
+      double ax = a.getX(), ay = a.getY(), bx = b.getX(), by = b.getY(), cx = c.getX(), cy = c.getY();
       
       /*
        Development of the equation: p = a + w1 * (c - a) + w2 * (b - a)
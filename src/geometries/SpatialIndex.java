@@ -0,0 +1,312 @@
+package geometries;
+
+import geometries.Intersectable.GeoPoint;
+import primitives.Double3;
+import primitives.Ray;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Base of the spatial subdivision indexes (grid, octree), in which a primitive may be referenced by several
+ * cells. The subclasses only walk the cells along a ray, nearer cells first, and hand over the primitives of
+ * every cell - the three ray queries are shared.
+ * A primitive met again in a later cell is skipped by mailboxing: a query keeps a stamp per primitive, and
+ * every query uses a new stamp value, so the stamps never have to be cleared between queries.
+ * The stamps are borrowed from a small pool for the length of a query, rather than kept per thread: a render
+ * on virtual threads runs every tile on a new thread, which would allocate a whole stamp array for it.
+ *
+ * @author Yair and Noam
+ */
+abstract class SpatialIndex implements Accelerator
+{
+	/**
+	 * The bounded primitives, referenced by index from the cells
+	 */
+	final Intersectable[] primitives;
+
+	/**
+	 * The primitives without a finite box, tested by every ray
+	 */
+	final Intersectable[] unbounded;
+
+	/**
+	 * The mailboxes not used by a running query, one per slot (null for an empty slot)
+	 */
+	private final AtomicReferenceArray<Mailbox> mailboxes =
+			new AtomicReferenceArray<>(2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * The stamps of a single query at a time
+	 */
+	static final class Mailbox
+	{
+		/**
+		 * The stamp of the last query that met each primitive
+		 */
+		final int[] stamps;
+
+		/**
+		 * The stamp of the current query
+		 */
+		int stamp = 0;
+
+		/**
+		 * Constructs a mailbox for the given amount of primitives.
+		 *
+		 * @param size the amount of primitives
+		 */
+		Mailbox(int size)
+		{
+			stamps = new int[size];
+		}
+
+		/**
+		 * Starts a new query.
+		 */
+		void next()
+		{
+			if (++stamp == Integer.MAX_VALUE)
+			{
+				java.util.Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+		}
+
+		/**
+		 * Checks whether the current query meets a primitive for the first time, and marks it as met.
+		 *
+		 * @param primitive the index of the primitive
+		 * @return true if the primitive was not met yet by the current query
+		 */
+		boolean firstVisit(int primitive)
+		{
+			if (stamps[primitive] == stamp)
+				return false;
+			stamps[primitive] = stamp;
+			return true;
+		}
+	}
+
+	/**
+	 * Something done with every primitive a query meets
+	 */
+	interface PrimitiveVisitor
+	{
+		/**
+		 * Handles a primitive.
+		 *
+		 * @param primitive   the primitive
+		 * @param maxDistance the current maximum distance of the query
+		 * @return the maximum distance to continue with, or a negative value to stop the query
+		 */
+		double visit(Intersectable primitive, double maxDistance);
+	}
+
+	/**
+	 * Constructs the index base.
+	 *
+	 * @param bounded   the primitives with a finite box
+	 * @param unbounded the primitives without a finite box
+	 */
+	SpatialIndex(List<Intersectable> bounded, List<Intersectable> unbounded)
+	{
+		this.primitives = bounded.toArray(new Intersectable[0]);
+		this.unbounded = unbounded.toArray(new Intersectable[0]);
+	}
+
+	/**
+	 * Walks the cells along a ray up to a given distance, nearer cells first, and visits their primitives
+	 * through {@link #visitCell}. The walk stops once the maximum distance (which the visitor may shrink) ends
+	 * before the next cell, or when the visitor stops the query.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param visitor     the visitor of the primitives
+	 * @param mailbox     the mailbox of the current query
+	 */
+	abstract void traverse(Ray ray, double maxDistance, PrimitiveVisitor visitor, Mailbox mailbox);
+
+	/**
+	 * Visits the primitives of a cell that the query has not met yet.
+	 *
+	 * @param items       the primitive indices of all the cells
+	 * @param from        the first index of the cell in items (inclusive)
+	 * @param to          the last index of the cell in items (exclusive)
+	 * @param maxDistance the current maximum distance of the query
+	 * @param visitor     the visitor of the primitives
+	 * @param mailbox     the mailbox of the current query
+	 * @return the maximum distance to continue with, or a negative value to stop the query
+	 */
+	final double visitCell(int[] items, int from, int to, double maxDistance, PrimitiveVisitor visitor,
+						   Mailbox mailbox)
+	{
+		for (int i = from; i < to && maxDistance >= 0; i++)
+			if (mailbox.firstVisit(items[i]))
+				maxDistance = visitor.visit(primitives[items[i]], maxDistance);
+		return maxDistance;
+	}
+
+	/**
+	 * Runs a query over the cells along a ray.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param visitor     the visitor of the primitives
+	 */
+	private void query(Ray ray, double maxDistance, PrimitiveVisitor visitor)
+	{
+		if (primitives.length == 0)
+			return;
+
+		Mailbox mailbox = borrowMailbox();
+		try
+		{
+			mailbox.next();
+			traverse(ray, maxDistance, visitor, mailbox);
+		}
+		finally
+		{
+			returnMailbox(mailbox);
+		}
+	}
+
+	/**
+	 * Takes a mailbox out of the pool, or creates a new one if all of them are in use.
+	 *
+	 * @return the mailbox, used by the calling query only until it is returned
+	 */
+	private Mailbox borrowMailbox()
+	{
+		for (int i = 0; i < mailboxes.length(); i++)
+		{
+			Mailbox mailbox = mailboxes.get(i);
+			if (mailbox != null && mailboxes.compareAndSet(i, mailbox, null))
+				return mailbox;
+		}
+		return new Mailbox(primitives.length);
+	}
+
+	/**
+	 * Puts a mailbox back in the pool, or drops it if the pool is full.
+	 *
+	 * @param mailbox the mailbox
+	 */
+	private void returnMailbox(Mailbox mailbox)
+	{
+		for (int i = 0; i < mailboxes.length(); i++)
+			if (mailboxes.compareAndSet(i, null, mailbox))
+				return;
+	}
+
+	/**
+	 * Finds the entry and exit distances of a ray through a box.
+	 * The bounds are always finite, so a NaN only comes up for an origin on a face of a parallel slab, and it
+	 * keeps the previous interval - the ray runs along the face.
+	 *
+	 * @param bounds  the array holding the box, as minX, minY, minZ, maxX, maxY, maxZ
+	 * @param offset  the offset of the box
+	 * @param origin  the ray origin, as x, y, z
+	 * @param inverse the inverse of the ray direction, as x, y, z
+	 * @param tMax    the distance beyond which the box is not interesting
+	 * @param result  the array to write the entry and exit distances to
+	 * @return true if the ray passes through the box between its origin and tMax
+	 */
+	static boolean clip(double[] bounds, int offset, double[] origin, double[] inverse, double tMax,
+						double[] result)
+	{
+		double tEnter = 0, tExit = tMax;
+		for (int k = 0; k < 3; k++)
+		{
+			double t1 = (bounds[offset + k] - origin[k]) * inverse[k];
+			double t2 = (bounds[offset + k + 3] - origin[k]) * inverse[k];
+			if (t1 > t2) {double temp = t1; t1 = t2; t2 = temp;}
+			if (t1 > tEnter) tEnter = t1;
+			if (t2 < tExit) tExit = t2;
+		}
+
+		result[0] = tEnter;
+		result[1] = tExit;
+		return tEnter <= tExit;
+	}
+
+	/**
+	 * Finds all the intersections of a ray with the primitives up to a given distance - every primitive met
+	 * along the ray is searched once.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @return the intersections, or null if there are none
+	 */
+	@Override
+	public List<GeoPoint> findGeoIntersections(Ray ray, double maxDistance)
+	{
+		List<GeoPoint> intersections = new LinkedList<>();
+
+		for (Intersectable geo : unbounded)
+		{
+			List<GeoPoint> found = geo.findGeoIntersections(ray, maxDistance);
+			if (found != null)
+				intersections.addAll(found);
+		}
+
+		query(ray, maxDistance, (geo, distance) ->
+		{
+			List<GeoPoint> found = geo.findGeoIntersections(ray, distance);
+			if (found != null)
+				intersections.addAll(found);
+			return distance;
+		});
+
+		return intersections.isEmpty() ? null : intersections;
+	}
+
+	/**
+	 * Finds the intersection nearest to the ray origin. The unbounded primitives are tested first, so that
+	 * their hits already shorten the walk over the cells.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the distance of the best hit so far
+	 * @param hit         the hit record to update
+	 * @return the distance of the best hit
+	 */
+	@Override
+	public double findClosestGeoIntersection(Ray ray, double maxDistance, GeoPoint hit)
+	{
+		for (Intersectable geo : unbounded)
+			maxDistance = geo.findClosestGeoIntersectionHelper(ray, maxDistance, hit);
+
+		double[] best = {maxDistance};
+		query(ray, maxDistance, (geo, distance) -> best[0] = geo.findClosestGeoIntersectionHelper(ray, distance, hit));
+		return best[0];
+	}
+
+	/**
+	 * Calculates the transparency along a ray, and stops at the first primitive that blocks the light.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param ktr         the transparency accumulated so far
+	 * @param minK        the attenuation below which the light counts as blocked
+	 * @return the accumulated transparency, the {@link Double3#ZERO} constant if the light is blocked
+	 */
+	@Override
+	public Double3 findTransparency(Ray ray, double maxDistance, Double3 ktr, double minK)
+	{
+		for (Intersectable geo : unbounded)
+		{
+			ktr = geo.findTransparencyHelper(ray, maxDistance, ktr, minK);
+			if (ktr == Double3.ZERO)
+				return ktr;
+		}
+
+		Double3[] result = {ktr};
+		query(ray, maxDistance, (geo, distance) ->
+		{
+			result[0] = geo.findTransparencyHelper(ray, distance, result[0], minK);
+			return result[0] == Double3.ZERO ? -1 : distance;
+		});
+		return result[0];
+	}
+}
@@ -8,6 +8,7 @@ import java.util.LinkedList;
 import java.util.List;
 import static java.lang.Math.sqrt;
 import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
 
 /**
  * The Sphere class represents a sphere in 3D space.
@@ -42,6 +43,20 @@ public class Sphere extends RadialGeometry
         return center;
     }
 
+    /**
+     * Moves the sphere to a new center.
+     * The bounding box follows only when a tree holding the sphere is refitted (see
+     * {@link Geometries#refitBvhTree()}).
+     *
+     * @param center the new center of the sphere
+     * @return the sphere itself
+     */
+    public Sphere setCenter(Point center)
+    {
+        this.center = center;
+        return this;
+    }
+    
     /**
      * Returns the normal vector to the sphere surface at the specified point.
      *
@@ -81,28 +96,11 @@ public class Sphere extends RadialGeometry
     @Override
     protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
     {
-        Vector u;
-        double tm, th;
-
-        try
+        double tm = centerProjection(ray);
+        double th = halfChord(ray, tm);
+        if (Double.isNaN(th)) // there are no intersections
         {
-            u = center.subtract(ray.getP0()); // if the ray start at the center we go to catch
-
-            tm = alignZero(u.dotProduct(ray.getDir()));
-
-            double d = alignZero(u.lengthSquared() - tm * tm); // we will use sqrt only once in this function
-
-            if (d >= radius * radius) // there are no intersections
-            {
-                return null;
-            }
-
-            th = alignZero(sqrt(radius * radius - d));
-        }
-        catch(IllegalArgumentException e)
-        {
-            tm = 0;
-            th = radius;
+            return null;
         }
 
         double t1 = alignZero(tm + th);
@@ -136,5 +134,113 @@ public class Sphere extends RadialGeometry
         
         return null;
     }
-}
 
+    /**
+     * Finds the distance from the ray origin to the nearest intersection with the sphere, in the same way as
+     * {@link #findGeoIntersectionsHelper(Ray, double)} but without allocating.
+     *
+     * @param ray         the ray to intersect with the sphere
+     * @param maxDistance the maximum distance for intersection
+     * @return the distance to the nearest intersection, or positive infinity if there is none within maxDistance
+     */
+    @Override
+    protected double findIntersectionDistance(Ray ray, double maxDistance)
+    {
+        double tm = centerProjection(ray);
+        double th = halfChord(ray, tm);
+        if (Double.isNaN(th)) // there are no intersections
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // t2 <= t1, so the nearer one is checked first
+        double t2 = alignZero(tm - th);
+        if (t2 > 0 && alignZero(t2 - maxDistance) <= 0)
+        {
+            return t2;
+        }
+
+        double t1 = alignZero(tm + th);
+        if (t1 > 0 && alignZero(t1 - maxDistance) <= 0)
+        {
+            return t1;
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Counts the intersections of a ray with the sphere, in the same way as
+     * {@link #findGeoIntersectionsHelper(Ray, double)} but without allocating.
+     *
+     * @param ray         the ray to intersect with the sphere
+     * @param maxDistance the maximum distance for intersection
+     * @return the amount of intersections within maxDistance (0, 1 or 2)
+     */
+    @Override
+    protected int countIntersections(Ray ray, double maxDistance)
+    {
+        double tm = centerProjection(ray);
+        double th = halfChord(ray, tm);
+        if (Double.isNaN(th)) // there are no intersections
+        {
+            return 0;
+        }
+
+        double t1 = alignZero(tm + th);
+        double t2 = alignZero(tm - th);
+
+        return (t1 > 0 && alignZero(t1 - maxDistance) <= 0 ? 1 : 0)
+                + (t2 > 0 && alignZero(t2 - maxDistance) <= 0 ? 1 : 0);
+    }
+
+    /**
+     * Calculates the distance along a ray to the point nearest to the sphere center (tm).
+     *
+     * @param ray the ray
+     * @return the distance, 0 if the ray starts at the center
+     */
+    private double centerProjection(Ray ray)
+    {
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ux = center.getX() - p0.getX();
+        double uy = center.getY() - p0.getY();
+        double uz = center.getZ() - p0.getZ();
+
+        if (isZero(ux) && isZero(uy) && isZero(uz)) // the ray starts at the center
+        {
+            return 0;
+        }
+
+        return alignZero(ux * dir.getX() + uy * dir.getY() + uz * dir.getZ());
+    }
+
+    /**
+     * Calculates half of the chord the line of a ray cuts in the sphere (th).
+     *
+     * @param ray the ray
+     * @param tm  the distance along the ray to the point nearest to the center
+     * @return half of the chord, or NaN if the line does not cut the sphere
+     */
+    private double halfChord(Ray ray, double tm)
+    {
+        Point p0 = ray.getP0();
+        double ux = center.getX() - p0.getX();
+        double uy = center.getY() - p0.getY();
+        double uz = center.getZ() - p0.getZ();
+
+        if (isZero(ux) && isZero(uy) && isZero(uz)) // the ray starts at the center
+        {
+            return radius;
+        }
+
+        double d = alignZero(ux * ux + uy * uy + uz * uz - tm * tm); // we will use sqrt only once in this function
+        if (d >= radius * radius)
+        {
+            return Double.NaN;
+        }
+
+        return alignZero(sqrt(radius * radius - d));
+    }
+}
@@ -1,9 +1,6 @@
 package geometries;
 
 import primitives.Point;
-import primitives.Ray;
-
-import java.util.List;
 
 /**
  * The Triangle class represents a triangle polygon in 3D space.
@@ -25,33 +22,15 @@ public class Triangle extends Polygon
     }
     
     /**
-     * Helper method to find the geometric intersections of a ray with the triangle.
+     * Checks whether a point of the triangle plane is inside the triangle, the edges are not inside.
      *
-     * @param ray the ray to intersect with the triangle
-     * @param maxDistance the maximum distance for intersection
-     * @return a list of GeoPoint objects representing the intersections, or null if no intersection was found
+     * @param px the x coordinate of the point
+     * @param py the y coordinate of the point
+     * @return true if the point is inside the triangle
      */
     @Override
-    protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
+    protected boolean contains(double px, double py)
     {
-        List<GeoPoint> intersections = plane.findGeoIntersectionsHelper(ray, maxDistance); // first find the suspect point
-        
-        // if it intersects the plane
-        if (intersections == null)
-        {
-            return null;
-        }
-        
-        GeoPoint intersect = intersections.get(0);
-        
-        int ans = super.inTriangle(intersect.point, vertices.get(0), vertices.get(1), vertices.get(2));
-        
-        if (ans != 1)
-        {
-            return null;
-        }
-
-        return List.of(new GeoPoint(this, intersect.point));
+        return super.inTriangle(px, py, vertices.get(0), vertices.get(1), vertices.get(2)) == 1;
     }
 }
-
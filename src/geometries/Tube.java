@@ -6,6 +6,8 @@ import primitives.Vector;
 
 import java.util.List;
 
+import static primitives.Util.isZero;
+
 /**
  * The Tube class represents a tube in 3D space.
  *
@@ -55,16 +57,8 @@ public class Tube extends RadialGeometry
 		Vector v = p.subtract(p0);
 		double t = v.dotProduct(v0);
 		
-		// on the round surface
-		Point o = axisRay.getP0();
-		
-		try
-		{
-			v0 = v0.scale(t);
-			o = o.add(v0);
-		}
-		catch (IllegalArgumentException e) // in case of t == 0
-		{ }
+		// on the round surface, the projection of p on the axis is its origin when t == 0
+		Point o = isZero(t) ? p0 : p0.add(v0.scale(t));
 		
 		Vector normal = p.subtract(o);
 		
@@ -0,0 +1,248 @@
+package geometries;
+
+import primitives.Ray;
+
+import java.util.List;
+
+/**
+ * A uniform grid over the bounded primitives: the box of the scene is split into equal cells, and every cell
+ * lists the primitives whose box overlaps it. A ray walks the cells it passes through in order, by a 3D-DDA
+ * (digital differential analyzer), and stops at the first cell that ends beyond the best hit.
+ * The resolution is chosen so that there are about {@link #CELLS_PER_PRIMITIVE} cells per primitive, with
+ * cube-like cells; the grid is built in O(n) and suits scenes of many small primitives spread evenly, where it
+ * does not pay to descend a tree. Large primitives are referenced by every cell they overlap.
+ * The cell lists are kept in a compressed form - the lists of all the cells one after the other in a single
+ * array, and the offset of every list in another.
+ *
+ * @author Yair and Noam
+ */
+final class UniformGrid extends SpatialIndex
+{
+	/**
+	 * The amount of cells per primitive the resolution aims at
+	 */
+	static final double CELLS_PER_PRIMITIVE = 2;
+
+	/**
+	 * The maximal amount of cells along an axis
+	 */
+	static final int MAX_RESOLUTION = 128;
+
+	/**
+	 * The box of the grid, as minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	private final double[] bounds = new double[6];
+
+	/**
+	 * The amount of cells along every axis
+	 */
+	private final int[] resolution = new int[3];
+
+	/**
+	 * The size of a cell along every axis
+	 */
+	private final double[] cellSize = new double[3];
+
+	/**
+	 * The offset of the list of every cell in {@link #items}, and the end of the last list
+	 */
+	private final int[] cellStart;
+
+	/**
+	 * The primitive indices of all the cells, list after list
+	 */
+	private final int[] items;
+
+	/**
+	 * Builds a grid over primitives.
+	 *
+	 * @param bounded   the primitives with a finite box, with up-to-date boxes
+	 * @param unbounded the primitives without a finite box
+	 */
+	UniformGrid(List<Intersectable> bounded, List<Intersectable> unbounded)
+	{
+		super(bounded, unbounded);
+
+		bounds[0] = bounds[1] = bounds[2] = Double.POSITIVE_INFINITY;
+		bounds[3] = bounds[4] = bounds[5] = Double.NEGATIVE_INFINITY;
+		double[] box = new double[6];
+		for (Intersectable geo : primitives)
+		{
+			geo.box.copyTo(box, 0);
+			for (int k = 0; k < 3; k++)
+			{
+				bounds[k] = Math.min(bounds[k], box[k]);
+				bounds[k + 3] = Math.max(bounds[k + 3], box[k + 3]);
+			}
+		}
+
+		chooseResolution();
+		int cells = resolution[0] * resolution[1] * resolution[2];
+
+		// the first pass counts the primitives of every cell, the second one fills the lists
+		cellStart = new int[cells + 1];
+		int[] range = new int[6];
+		for (Intersectable geo : primitives)
+		{
+			cellRange(geo, box, range);
+			for (int z = range[2]; z <= range[5]; z++)
+				for (int y = range[1]; y <= range[4]; y++)
+					for (int x = range[0]; x <= range[3]; x++)
+						cellStart[cellIndex(x, y, z) + 1]++;
+		}
+		for (int cell = 0; cell < cells; cell++)
+			cellStart[cell + 1] += cellStart[cell];
+
+		items = new int[cellStart[cells]];
+		int[] fill = new int[cells];
+		for (int i = 0; i < primitives.length; i++)
+		{
+			cellRange(primitives[i], box, range);
+			for (int z = range[2]; z <= range[5]; z++)
+				for (int y = range[1]; y <= range[4]; y++)
+					for (int x = range[0]; x <= range[3]; x++)
+					{
+						int cell = cellIndex(x, y, z);
+						items[cellStart[cell] + fill[cell]++] = i;
+					}
+		}
+	}
+
+	/**
+	 * Chooses the amount of cells along every axis, so that the cells are about cubes and there are about
+	 * {@link #CELLS_PER_PRIMITIVE} cells per primitive. A flat axis (e.g. of a scene on a single plane) gets a
+	 * single cell, and the cube side is chosen by the other axes.
+	 */
+	private void chooseResolution()
+	{
+		double product = 1;
+		int dimensions = 0;
+		for (int k = 0; k < 3; k++)
+		{
+			double extent = bounds[k + 3] - bounds[k];
+			if (extent > 0)
+			{
+				product *= extent;
+				dimensions++;
+			}
+		}
+
+		double side = dimensions == 0 ? 1
+				: Math.pow(product / (CELLS_PER_PRIMITIVE * Math.max(primitives.length, 1)), 1.0 / dimensions);
+
+		for (int k = 0; k < 3; k++)
+		{
+			double extent = bounds[k + 3] - bounds[k];
+			resolution[k] = extent > 0 ? (int) Math.max(1, Math.min(MAX_RESOLUTION, Math.ceil(extent / side))) : 1;
+			cellSize[k] = extent > 0 ? extent / resolution[k] : 1;
+		}
+	}
+
+	/**
+	 * Calculates the index of the cell containing a coordinate along an axis, clamped into the grid.
+	 *
+	 * @param axis  the axis
+	 * @param value the coordinate
+	 * @return the cell index along the axis
+	 */
+	private int cellOf(int axis, double value)
+	{
+		int cell = (int) ((value - bounds[axis]) / cellSize[axis]);
+		return Math.max(0, Math.min(resolution[axis] - 1, cell));
+	}
+
+	/**
+	 * Calculates the index of a cell in the cell lists.
+	 *
+	 * @param x the cell index along the x axis
+	 * @param y the cell index along the y axis
+	 * @param z the cell index along the z axis
+	 * @return the index of the cell
+	 */
+	private int cellIndex(int x, int y, int z)
+	{
+		return x + resolution[0] * (y + resolution[1] * z);
+	}
+
+	/**
+	 * Finds the cells the box of a primitive overlaps.
+	 *
+	 * @param geo   the primitive
+	 * @param box   an array of 6 to copy the box to
+	 * @param range the array to write the first and last cell indices to, as minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	private void cellRange(Intersectable geo, double[] box, int[] range)
+	{
+		geo.box.copyTo(box, 0);
+		for (int k = 0; k < 3; k++)
+		{
+			range[k] = cellOf(k, box[k]);
+			range[k + 3] = cellOf(k, box[k + 3]);
+		}
+	}
+
+	/**
+	 * Walks the cells along the ray by a 3D-DDA: the distance at which the ray crosses the next cell boundary
+	 * is kept for every axis, and the ray steps across the nearest one.
+	 * The walk stops at the end of the grid, or once the maximum distance ends inside the current cell - any
+	 * primitive met later could only be hit beyond it.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @param visitor     the visitor of the primitives
+	 * @param mailbox     the mailbox of the current query
+	 */
+	@Override
+	void traverse(Ray ray, double maxDistance, PrimitiveVisitor visitor, Mailbox mailbox)
+	{
+		double[] origin = {ray.getP0().getX(), ray.getP0().getY(), ray.getP0().getZ()};
+		double[] direction = {ray.getDir().getX(), ray.getDir().getY(), ray.getDir().getZ()};
+		double[] inverse = {ray.getInvDirX(), ray.getInvDirY(), ray.getInvDirZ()};
+		double[] t = new double[2];
+		if (!clip(bounds, 0, origin, inverse, maxDistance, t))
+			return;
+
+		double tExit = t[1];
+		int[] cell = new int[3];
+		int[] step = new int[3];
+		double[] tNext = new double[3];
+		double[] tDelta = new double[3];
+		for (int k = 0; k < 3; k++)
+		{
+			cell[k] = cellOf(k, origin[k] + direction[k] * t[0]);
+			if (Double.isInfinite(inverse[k]))
+			{
+				step[k] = 0;
+				tNext[k] = tDelta[k] = Double.POSITIVE_INFINITY;
+			}
+			else if (inverse[k] > 0)
+			{
+				step[k] = 1;
+				tNext[k] = (bounds[k] + (cell[k] + 1) * cellSize[k] - origin[k]) * inverse[k];
+				tDelta[k] = cellSize[k] * inverse[k];
+			}
+			else
+			{
+				step[k] = -1;
+				tNext[k] = (bounds[k] + cell[k] * cellSize[k] - origin[k]) * inverse[k];
+				tDelta[k] = -cellSize[k] * inverse[k];
+			}
+		}
+
+		while (true)
+		{
+			int c = cellIndex(cell[0], cell[1], cell[2]);
+			maxDistance = visitCell(items, cellStart[c], cellStart[c + 1], maxDistance, visitor, mailbox);
+
+			int axis = tNext[0] < tNext[1] ? (tNext[0] < tNext[2] ? 0 : 2) : (tNext[1] < tNext[2] ? 1 : 2);
+			double tCellExit = tNext[axis];
+			if (maxDistance < 0 || maxDistance <= tCellExit || tCellExit >= tExit)
+				return;
+
+			cell[axis] += step[axis];
+			if (cell[axis] < 0 || cell[axis] >= resolution[axis])
+				return;
+			tNext[axis] += tDelta[axis];
+		}
+	}
+}
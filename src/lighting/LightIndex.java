@@ -0,0 +1,101 @@
+package lighting;
+
+import geometries.BoxHierarchy;
+import primitives.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A spatial index of the lights of a scene, which finds the lights that reach a point. Every point light has
+ * a sphere of influence (see {@link LightSource#getInfluenceRadius}), and the boxes of the spheres are kept in
+ * a {@link BoxHierarchy}, so a point only meets the lights whose boxes contain it. The lights that reach
+ * everywhere - directional lights, and lights that are not attenuated by distance - are found for every point.
+ *
+ * @author Yair and Noam
+ */
+public class LightIndex
+{
+	/**
+	 * The lights with a finite radius of influence, in the order of their boxes in the hierarchy
+	 */
+	private final PointLight[] bounded;
+
+	/**
+	 * The squared radius of influence of every bounded light
+	 */
+	private final double[] radiiSquared;
+
+	/**
+	 * The lights that reach everywhere
+	 */
+	private final LightSource[] unbounded;
+
+	/**
+	 * The hierarchy over the boxes of the spheres of influence
+	 */
+	private final BoxHierarchy hierarchy;
+
+	/**
+	 * Builds the index over the given lights.
+	 *
+	 * @param lights the lights
+	 * @param cutoff the luminance below which light is negligible
+	 */
+	public LightIndex(List<LightSource> lights, double cutoff)
+	{
+		List<LightSource> everywhere = new ArrayList<>();
+		List<PointLight> found = new ArrayList<>();
+		List<Double> radii = new ArrayList<>();
+		for (LightSource light : lights)
+		{
+			double radius = light.getInfluenceRadius(cutoff);
+			if (radius == Double.POSITIVE_INFINITY || !(light instanceof PointLight point))
+			{
+				everywhere.add(light);
+			}
+			else
+			{
+				found.add(point);
+				radii.add(radius);
+			}
+		}
+
+		unbounded = everywhere.toArray(new LightSource[0]);
+		bounded = found.toArray(new PointLight[0]);
+		radiiSquared = new double[bounded.length];
+		double[] boxes = new double[6 * bounded.length];
+		for (int i = 0; i < bounded.length; i++)
+		{
+			double radius = radii.get(i);
+			Point position = bounded[i].getPosition();
+			radiiSquared[i] = radius * radius;
+			boxes[6 * i] = position.getX() - radius;
+			boxes[6 * i + 1] = position.getY() - radius;
+			boxes[6 * i + 2] = position.getZ() - radius;
+			boxes[6 * i + 3] = position.getX() + radius;
+			boxes[6 * i + 4] = position.getY() + radius;
+			boxes[6 * i + 5] = position.getZ() + radius;
+		}
+		hierarchy = new BoxHierarchy(boxes);
+	}
+
+	/**
+	 * Visits the lights that reach a point: the lights that reach everywhere, and the lights whose sphere of
+	 * influence contains the point. Nothing is collected on the way, so a shaded point costs no list.
+	 *
+	 * @param point  the point
+	 * @param action the action done with every light found, in no particular order
+	 */
+	public void forEachLight(Point point, Consumer<LightSource> action)
+	{
+		for (LightSource light : unbounded)
+			action.accept(light);
+		hierarchy.forEachContaining(point, i ->
+		{
+			if (bounded[i].getPosition().distanceSquared(point) <= radiiSquared[i])
+				action.accept(bounded[i]);
+		});
+	}
+}
@@ -36,6 +36,18 @@ public interface LightSource
      */
     double getDistance(Point point);
     
+    /**
+     * Returns the distance beyond which the light is negligible - the luminance it gives a point there is
+     * below a cutoff. A light that is not attenuated by distance reaches everywhere.
+     *
+     * @param cutoff the luminance below which light is negligible
+     * @return the radius of influence of the light, positive infinity by default
+     */
+    default double getInfluenceRadius(double cutoff)
+    {
+        return Double.POSITIVE_INFINITY;
+    }
+    
     /**
      * Generates a list of points forming a beam pattern centered at the given point.
      *
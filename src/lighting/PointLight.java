@@ -2,13 +2,15 @@ package lighting;
 
 import primitives.Color;
 import primitives.Point;
+import primitives.Sampler;
 import primitives.Vector;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
 
 /**
  * The PointLight class represents a point light source, which emits light uniformly in all
@@ -21,8 +23,6 @@ public class PointLight extends Light implements LightSource
     private double kL = 0;
     private double kQ = 0;
     
-    private static Random random = new Random();
-    
     /**
      * Constructs a PointLight object with the specified intensity and position.
      *
@@ -89,23 +89,62 @@ public class PointLight extends Light implements LightSource
         return intensity.scale(1 / temp);
     }
     
+    /**
+     * Returns the position of the point light.
+     *
+     * @return the position
+     */
+    public Point getPosition()
+    {
+        return position;
+    }
+    
+    /**
+     * Returns the distance beyond which the luminance of the point light is below a cutoff: the distance d
+     * where kC + kL*d + kQ*d^2 reaches luminance / cutoff. The cone of a spotlight only dims it, so the
+     * same radius bounds it.
+     *
+     * @param cutoff the luminance below which light is negligible
+     * @return the radius of influence, positive infinity if the light is not attenuated by distance or the
+     * cutoff is not positive
+     */
+    @Override
+    public double getInfluenceRadius(double cutoff)
+    {
+        if (cutoff <= 0 || (kL <= 0 && kQ <= 0))
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        
+        double attenuation = intensity.luminance() / cutoff - kC;
+        if (attenuation <= 0) // negligible even at the light position
+        {
+            return 0;
+        }
+        
+        return kQ > 0 ?
+               (Math.sqrt(kL * kL + 4 * kQ * attenuation) - kL) / (2 * kQ) :
+               attenuation / kL;
+    }
+    
     /**
      * Returns the direction from the point light to a given point.
      *
      * @param p the point at which the direction is evaluated
-     * @return the direction from the point light to the given point
+     * @return the direction from the point light to the given point, or null if the point is the light position
      */
     @Override
     public Vector getL(Point p)
     {
-        try
-        {
-            return p.subtract(position).normalize();
-        }
-        catch (IllegalArgumentException e)
+        double x = p.getX() - position.getX();
+        double y = p.getY() - position.getY();
+        double z = p.getZ() - position.getZ();
+        if (isZero(x) && isZero(y) && isZero(z)) // the point is the light position itself
         {
             return null;
         }
+        
+        return new Vector(x, y, z).normalize();
     }
     
     /**
@@ -121,38 +160,64 @@ public class PointLight extends Light implements LightSource
     }
     
     /**
-     * Generates a list of points forming a beam around a given point.
+     * Generates a list of points forming a beam around a given point - samples of the disk of the given
+     * radius around it.
+     * The samples are stratified: the square [-1,1]x[-1,1] is split into a grid of cells, a point is jittered
+     * inside every cell, and the square is mapped onto the disk by the concentric mapping of Shirley and Chiu,
+     * which keeps the cells of equal area and compact. So the samples cover the disk evenly, with no clumps
+     * toward its center, and the noise of the penumbra shrinks faster than with independent samples.
+     * The grid is square, so the amount of points is the largest square within numOfPoints.
+     * The jitter is drawn from the sampling stream of the calling thread (see {@link Sampler}).
      *
      * @param p0 The center point of the beam.
      * @param horizontal The horizontal direction vector of the beam.
      * @param vertical The vertical direction vector of the beam.
      * @param radius The maximum radius of the beam.
-     * @param numOfPoints The number of points to generate.
+     * @param numOfPoints The maximum number of points to generate.
      * @return A list of points forming the beam.
      */
     @Override
     public List<Point> generateBeamPoints(Point p0, Vector horizontal, Vector vertical, double radius, int numOfPoints)
     {
-        List<Point> beamPoints = new LinkedList<>();
-        double angleDelta = 360.0 / numOfPoints;
+        int grid = Math.max(1, (int) Math.sqrt(numOfPoints));
+        List<Point> beamPoints = new ArrayList<>(grid * grid);
+        SplittableRandom random = Sampler.current();
 
-        for (int i = 0; i < numOfPoints; i++)
+        for (int row = 0; row < grid; row++)
         {
-            // Calculate the angle in radians
-            double angle = Math.toRadians(angleDelta * i);
-            double cosAngle = Math.cos(angle);
-            double sinAngle = Math.sin(angle);
-            double newRadius = radius * random.nextDouble();
-            double radiusCos = newRadius * cosAngle;
-            double radiusSin = newRadius * sinAngle;
+            for (int col = 0; col < grid; col++)
+            {
+                // a jittered point of the cell, in [-1,1]x[-1,1]
+                double a = 2 * (col + random.nextDouble()) / grid - 1;
+                double b = 2 * (row + random.nextDouble()) / grid - 1;
+
+                // the concentric mapping: the square of half-side max(|a|,|b|) goes to the circle of that radius
+                double r, angle;
+                if (Math.abs(a) > Math.abs(b))
+                {
+                    r = a;
+                    angle = Math.PI / 4 * (b / a);
+                }
+                else if (b != 0)
+                {
+                    r = b;
+                    angle = Math.PI / 2 - Math.PI / 4 * (a / b);
+                }
+                else
+                {
+                    r = 0;
+                    angle = 0;
+                }
+                double radiusCos = radius * r * Math.cos(angle);
+                double radiusSin = radius * r * Math.sin(angle);
 
-            // Calculate the position of the point on the circle
-            double x = p0.getX() + radiusCos * horizontal.getX() + radiusSin * vertical.getX();
-            double y = p0.getY() + radiusCos * horizontal.getY() + radiusSin * vertical.getY();
-            double z = p0.getZ() + radiusCos * horizontal.getZ() + radiusSin * vertical.getZ();
+                // Calculate the position of the point on the disk
+                double x = p0.getX() + radiusCos * horizontal.getX() + radiusSin * vertical.getX();
+                double y = p0.getY() + radiusCos * horizontal.getY() + radiusSin * vertical.getY();
+                double z = p0.getZ() + radiusCos * horizontal.getZ() + radiusSin * vertical.getZ();
 
-            // Create the point and add it to the list
-            beamPoints.add(new Point(x, y, z));
+                beamPoints.add(new Point(x, y, z));
+            }
         }
 
         return beamPoints;
@@ -36,6 +36,10 @@ public class SpotLight extends PointLight
     {
         Color temp = super.getIntensity(p);
         Vector vec = super.getL(p);
+        if (vec == null) // at the position of the spotlight, there is no direction to weigh by
+        {
+            return temp;
+        }
         double t = vec.dotProduct(direction.normalize());
 
         return temp.scale(0 < t ? t : 0);
@@ -71,61 +71,144 @@ public class Box
 	 * @param ray the ray
 	 * @return true or false
 	 */
-	public Boolean checkIntersectionWithBox(Ray ray)
+	public boolean checkIntersectionWithBox(Ray ray)
 	{
-		Vector rayVector = ray.getDir();
-		Point rayPoint = ray.getP0();
-		
-		double pCX = rayPoint.getX();
-		double pCY = rayPoint.getY();
-		double pCZ = rayPoint.getZ();
-		
-		double pVX = rayVector.getX();
-		double pVY = rayVector.getY();
-		double pVZ = rayVector.getZ();
+		return checkIntersectionWithBox(ray, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Check if the ray intersects with the box before a given distance.
+	 * The ray enters the box at the largest of the slab entry distances and leaves it at the smallest of the slab
+	 * exit distances, so the box is missed if it is left before the ray starts (behind the ray) or entered only
+	 * after maxDistance.
+	 * A ray parallel to a slab never crosses its bounds - it is inside the slab along its whole length or not at
+	 * all, so this case is decided by the origin alone instead of by dividing by zero. Thanks to that, infinite
+	 * bounds never meet a zero direction, and no NaN can come up.
+	 *
+	 * @param ray         the ray
+	 * @param maxDistance the maximum distance for intersection
+	 * @return true if the ray passes through the box between its head and maxDistance
+	 */
+	public boolean checkIntersectionWithBox(Ray ray, double maxDistance)
+	{
+		if (minX > maxX || minY > maxY || minZ > maxZ) // an empty box
+			return false;
 		
-		double tXmin = (minX - pCX) / pVX;
-		double tXmax = (maxX - pCX) / pVX;
+		Point rayPoint = ray.getP0();
+		double tEnter = 0;
+		double tExit = maxDistance;
 		
-		if (tXmin > tXmax)
+		double pC = rayPoint.getX();
+		double inv = ray.getInvDirX();
+		if (Double.isInfinite(inv))
 		{
-			double temp = tXmin;
-			tXmin = tXmax;
-			tXmax = temp;
+			if (pC < minX || pC > maxX)
+				return false;
 		}
-		
-		double tYmin = (minY - pCY) / pVY;
-		double tYmax = (maxY - pCY) / pVY;
-		if (tYmin > tYmax)
+		else
 		{
-			double temp = tYmin;
-			tYmin = tYmax;
-			tYmax = temp;
+			double t1 = (minX - pC) * inv;
+			double t2 = (maxX - pC) * inv;
+			tEnter = Math.max(tEnter, Math.min(t1, t2));
+			tExit = Math.min(tExit, Math.max(t1, t2));
 		}
 		
-		if ((tXmin > tYmax) || (tYmin > tXmax))
-			return false;
-		
-		if (tYmin > tXmin)
-			tXmin = tYmin;
+		pC = rayPoint.getY();
+		inv = ray.getInvDirY();
+		if (Double.isInfinite(inv))
+		{
+			if (pC < minY || pC > maxY)
+				return false;
+		}
+		else
+		{
+			double t1 = (minY - pC) * inv;
+			double t2 = (maxY - pC) * inv;
+			tEnter = Math.max(tEnter, Math.min(t1, t2));
+			tExit = Math.min(tExit, Math.max(t1, t2));
+		}
 		
-		if (tYmax < tXmax)
-			tXmax = tYmax;
+		pC = rayPoint.getZ();
+		inv = ray.getInvDirZ();
+		if (Double.isInfinite(inv))
+		{
+			if (pC < minZ || pC > maxZ)
+				return false;
+		}
+		else
+		{
+			double t1 = (minZ - pC) * inv;
+			double t2 = (maxZ - pC) * inv;
+			tEnter = Math.max(tEnter, Math.min(t1, t2));
+			tExit = Math.min(tExit, Math.max(t1, t2));
+		}
 		
+		return tEnter <= tExit;
+	}
+	
+	/**
+	 * Empties the box, so that it contains nothing.
+	 */
+	public void clear()
+	{
+		minX = minY = minZ = Double.POSITIVE_INFINITY;
+		maxX = maxY = maxZ = Double.NEGATIVE_INFINITY;
+	}
+	
+	/**
+	 * Grows the box so that it contains another box.
+	 *
+	 * @param other the box to contain
+	 */
+	public void include(Box other)
+	{
+		minX = Math.min(minX, other.minX);
+		minY = Math.min(minY, other.minY);
+		minZ = Math.min(minZ, other.minZ);
 		
-		double tZmin = (minZ - pCZ) / pVZ;
-		double tZmax = (maxZ - pCZ) / pVZ;
+		maxX = Math.max(maxX, other.maxX);
+		maxY = Math.max(maxY, other.maxY);
+		maxZ = Math.max(maxZ, other.maxZ);
+	}
+	
+	/**
+	 * Calculates the surface area of the box, an empty box has no area.
+	 *
+	 * @return the surface area
+	 */
+	public double surfaceArea()
+	{
+		double dx = maxX - minX;
+		double dy = maxY - minY;
+		double dz = maxZ - minZ;
 		
-		if (tZmin > tZmax)
-		{
-			double temp = tZmin;
-			tZmin = tZmax;
-			tZmax = temp;
-		}
+		if (dx < 0 || dy < 0 || dz < 0)
+			return 0;
 		
-		return ((tXmin <= tZmax) && (tZmin <= tXmax));
+		return 2 * (dx * dy + dy * dz + dz * dx);
+	}
+	
+	/**
+	 * Copies the bounds of the box into an array, in the order minX, minY, minZ, maxX, maxY, maxZ.
+	 *
+	 * @param array  the destination array
+	 * @param offset the index of minX in the array
+	 */
+	public void copyTo(double[] array, int offset)
+	{
+		array[offset] = minX;
+		array[offset + 1] = minY;
+		array[offset + 2] = minZ;
+		array[offset + 3] = maxX;
+		array[offset + 4] = maxY;
+		array[offset + 5] = maxZ;
 	}
 	
+	/**
+	 * Checks if any of the bounds of the box is infinite.
+	 *
+	 * @return true if the box is infinite in any direction
+	 */
 	public boolean checkInfinite()
 	{
 		return  Double.isInfinite(minX) ||
@@ -14,7 +14,7 @@ public class Color
 	 * The internal fields maintain RGB components as double numbers from 0 to
 	 * whatever...
 	 */
-	private final Double3 rgb;
+	final Double3 rgb;
 	
 	/**
 	 * Black color = (0,0,0)
@@ -149,6 +149,31 @@ public class Color
 		return new Color(rgb.d1 / k.d1, rgb.d2 / k.d2, rgb.d3 / k.d3);
 	}
 	
+	/**
+	 * Calculates the luminance of the color - its brightness as perceived by the eye (Rec. 709 weights).
+	 *
+	 * @return the luminance, on the scale of the components
+	 */
+	public double luminance()
+	{
+		return 0.2126 * rgb.d1 + 0.7152 * rgb.d2 + 0.0722 * rgb.d3;
+	}
+	
+	/**
+	 * Checks whether this color looks similar to another one - no component differs by more than a threshold.
+	 * The components are compared as displayed, so any two components of 255 or more are equal.
+	 *
+	 * @param other     the other color
+	 * @param threshold the maximal difference of a component, on the 0-255 scale
+	 * @return true if the colors are similar
+	 */
+	public boolean isSimilar(Color other, double threshold)
+	{
+		return Math.abs(Math.min(rgb.d1, 255) - Math.min(other.rgb.d1, 255)) <= threshold
+				&& Math.abs(Math.min(rgb.d2, 255) - Math.min(other.rgb.d2, 255)) <= threshold
+				&& Math.abs(Math.min(rgb.d3, 255) - Math.min(other.rgb.d3, 255)) <= threshold;
+	}
+	
 	@Override
 	public String toString() {return "rgb:" + rgb;}
 }
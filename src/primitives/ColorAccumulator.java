@@ -0,0 +1,120 @@
+package primitives;
+
+/**
+ * A mutable sum of colors, for the hot loops of the ray tracer: every {@link Color} operation creates a new
+ * color (and a new triad under it), while a sum collected here costs no allocation until it is turned into
+ * a color by {@link #toColor()}.
+ * An accumulator is meant to live inside a single calculation, and is not thread-safe.
+ *
+ * @author Yair and Noam
+ */
+public final class ColorAccumulator
+{
+	/**
+	 * The red component of the sum
+	 */
+	private double r;
+
+	/**
+	 * The green component of the sum
+	 */
+	private double g;
+
+	/**
+	 * The blue component of the sum
+	 */
+	private double b;
+
+	/**
+	 * Constructs an accumulator that starts from a color.
+	 *
+	 * @param color the initial color
+	 */
+	public ColorAccumulator(Color color)
+	{
+		r = color.rgb.d1;
+		g = color.rgb.d2;
+		b = color.rgb.d3;
+	}
+
+	/**
+	 * Adds a color to the sum.
+	 *
+	 * @param color the color to add
+	 * @return the accumulator itself
+	 */
+	public ColorAccumulator add(Color color)
+	{
+		r += color.rgb.d1;
+		g += color.rgb.d2;
+		b += color.rgb.d3;
+		return this;
+	}
+
+	/**
+	 * Adds a color scaled by a factor per component to the sum.
+	 *
+	 * @param color the color to add
+	 * @param k     the factor of every component
+	 * @return the accumulator itself
+	 */
+	public ColorAccumulator add(Color color, Double3 k)
+	{
+		r += color.rgb.d1 * k.d1;
+		g += color.rgb.d2 * k.d2;
+		b += color.rgb.d3 * k.d3;
+		return this;
+	}
+
+	/**
+	 * Adds light reflected by a material to the sum: the light intensity, attenuated by the transparency on its
+	 * way, times the diffuse and specular factors of the material - per component,
+	 * {@code intensity * ktr * (kD * diffuse + kS * specular)}.
+	 *
+	 * @param intensity the intensity of the light
+	 * @param ktr       the transparency along the way of the light
+	 * @param kD        the diffuse factor of the material
+	 * @param diffuse   the diffuse reflection, |n*l|
+	 * @param kS        the specular factor of the material
+	 * @param specular  the specular reflection, (-v*r)^shininess
+	 * @return the accumulator itself
+	 */
+	public ColorAccumulator addReflected(Color intensity, Double3 ktr, Double3 kD, double diffuse, Double3 kS,
+										 double specular)
+	{
+		r += intensity.rgb.d1 * ktr.d1 * (kD.d1 * diffuse + kS.d1 * specular);
+		g += intensity.rgb.d2 * ktr.d2 * (kD.d2 * diffuse + kS.d2 * specular);
+		b += intensity.rgb.d3 * ktr.d3 * (kD.d3 * diffuse + kS.d3 * specular);
+		return this;
+	}
+
+	/**
+	 * Calculates the largest component of the light {@link #addReflected} would add with no transparency
+	 * loss - a bound of the reflected light before any shadow ray is traced.
+	 *
+	 * @param intensity the intensity of the light
+	 * @param k         the factor of the light in the sum
+	 * @param kD        the diffuse factor of the material
+	 * @param diffuse   the diffuse reflection, |n*l|
+	 * @param kS        the specular factor of the material
+	 * @param specular  the specular reflection, (-v*r)^shininess
+	 * @return the largest component of {@code intensity * k * (kD * diffuse + kS * specular)}
+	 */
+	public static double maxReflected(Color intensity, Double3 k, Double3 kD, double diffuse, Double3 kS,
+									  double specular)
+	{
+		return Math.max(intensity.rgb.d1 * k.d1 * (kD.d1 * diffuse + kS.d1 * specular),
+						Math.max(intensity.rgb.d2 * k.d2 * (kD.d2 * diffuse + kS.d2 * specular),
+								 intensity.rgb.d3 * k.d3 * (kD.d3 * diffuse + kS.d3 * specular)));
+	}
+
+	/**
+	 * Creates the color of the sum.
+	 *
+	 * @return the color
+	 */
+	public Color toColor()
+	{
+		return new Color(r, g, b);
+	}
+}
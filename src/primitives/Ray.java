@@ -28,18 +28,28 @@ public class Ray
 	 */
 	private final Vector dir;
 	
+	/**
+	 * The inverses of the direction components, precomputed for the slab tests of bounding boxes.
+	 * A component is infinite when the direction is parallel to the matching axis plane.
+	 */
+	private final double invDirX, invDirY, invDirZ;
+	
 	/**
 	 * Constructs a new Ray object with the given starting point and direction.
+	 * Points and vectors are immutable, so the ray shares the given point, and the given direction too when it
+	 * is already normalized.
 	 *
 	 * @param p0  the starting point of the ray.
 	 * @param dir the direction of the ray.
 	 */
 	public Ray(Point p0, Vector dir)
 	{
-		this.p0 = new Point(p0.xyz);
+		this.p0 = p0;
+		this.dir = unit(dir);
 		
-		Vector temp = new Vector(dir.xyz);
-		this.dir = temp.normalize();
+		invDirX = 1d / this.dir.getX();
+		invDirY = 1d / this.dir.getY();
+		invDirZ = 1d / this.dir.getZ();
 	}
 	
 	/**
@@ -52,14 +62,42 @@ public class Ray
 	 */
 	public Ray(Point head, Vector dir, Vector n)
 	{
-		double nl = alignZero(n.dotProduct(dir));
-		this.p0 = isZero(nl) ?
-				  head :
-				  head.add(n.scale(nl < 0 ?
-								   -DELTA :
-								   DELTA));
+		this.p0 = offsetHead(head, n, alignZero(n.dotProduct(dir)));
+		this.dir = unit(dir);
+		
+		invDirX = 1d / this.dir.getX();
+		invDirY = 1d / this.dir.getY();
+		invDirZ = 1d / this.dir.getZ();
+	}
+	
+	/**
+	 * Calculates the starting point of a ray leaving a surface - the head point moved by a small delta along the
+	 * normal, to the side the ray goes to, so that the ray does not intersect the surface it leaves.
+	 *
+	 * @param head the point on the surface
+	 * @param n    the surface normal
+	 * @param nDir the dot product of the normal and the direction of the ray - only its sign matters
+	 * @return the starting point of the ray, the head itself if the ray is parallel to the surface
+	 */
+	public static Point offsetHead(Point head, Vector n, double nDir)
+	{
+		if (isZero(nDir))
+			return head;
 		
-		this.dir = dir.normalize();
+		double delta = nDir < 0 ? -DELTA : DELTA;
+		return new Point(head.xyz.d1 + n.xyz.d1 * delta, head.xyz.d2 + n.xyz.d2 * delta,
+						 head.xyz.d3 + n.xyz.d3 * delta);
+	}
+	
+	/**
+	 * Normalizes a direction, unless it is already normalized.
+	 *
+	 * @param dir the direction
+	 * @return the given direction if its length is 1, otherwise its normalized copy
+	 */
+	private static Vector unit(Vector dir)
+	{
+		return isZero(dir.lengthSquared() - 1) ? dir : dir.normalize();
 	}
 	
 	/**
@@ -82,6 +120,36 @@ public class Ray
 		return dir;
 	}
 	
+	/**
+	 * Returns the inverse of the x component of the direction.
+	 *
+	 * @return 1 / dir.x, infinite if the ray is parallel to the yz plane
+	 */
+	public double getInvDirX()
+	{
+		return invDirX;
+	}
+	
+	/**
+	 * Returns the inverse of the y component of the direction.
+	 *
+	 * @return 1 / dir.y, infinite if the ray is parallel to the xz plane
+	 */
+	public double getInvDirY()
+	{
+		return invDirY;
+	}
+	
+	/**
+	 * Returns the inverse of the z component of the direction.
+	 *
+	 * @return 1 / dir.z, infinite if the ray is parallel to the xy plane
+	 */
+	public double getInvDirZ()
+	{
+		return invDirZ;
+	}
+	
 	/**
 	 * Returns the point on the ray at a given distance from its origin.
 	 *
@@ -90,8 +158,7 @@ public class Ray
 	 */
 	public Point getPoint(double t)
 	{
-		Vector temp = dir.scale(t);
-		return p0.add(temp);
+		return new Point(p0.xyz.d1 + dir.xyz.d1 * t, p0.xyz.d2 + dir.xyz.d2 * t, p0.xyz.d3 + dir.xyz.d3 * t);
 	}
 	
 	/**
@@ -0,0 +1,50 @@
+package primitives;
+
+import java.util.SplittableRandom;
+
+/**
+ * The random numbers of the sampling (soft shadows, jitter), from a stream of every thread: the threads
+ * never contend on a shared seed, as they do on {@link java.util.Random} or {@link Math#random()}.
+ * The stream of a thread is reseeded from the viewport coordinates of every sample the camera traces (see
+ * {@link #seed(double, double)}), so the numbers drawn for a sample do not depend on the thread that traces
+ * it, or on what the thread traced before - a render is the same whatever the amount of threads.
+ *
+ * @author Yair and Noam
+ */
+public final class Sampler
+{
+	/**
+	 * The stream of every thread, seeded by 0 until the thread seeds it
+	 */
+	private static final ThreadLocal<SplittableRandom> streams = ThreadLocal.withInitial(() -> new SplittableRandom(0));
+
+	/**
+	 * Don't let anyone instantiate this class.
+	 */
+	private Sampler()
+	{
+	}
+
+	/**
+	 * Restarts the stream of the calling thread with a seed derived from a point of the viewport.
+	 *
+	 * @param x the column coordinate of the point, in pixels
+	 * @param y the row coordinate of the point, in pixels
+	 */
+	public static void seed(double x, double y)
+	{
+		// the golden ratio multiplier spreads the bits of x, so that (x, y) and (y, x) do not collide
+		streams.set(new SplittableRandom(Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L
+												 + Double.doubleToLongBits(y)));
+	}
+
+	/**
+	 * Returns the stream of the calling thread. It may be kept for a while, but not passed to other threads.
+	 *
+	 * @return the stream
+	 */
+	public static SplittableRandom current()
+	{
+		return streams.get();
+	}
+}
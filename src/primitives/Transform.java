@@ -0,0 +1,278 @@
+package primitives;
+
+import java.util.Arrays;
+
+/**
+ * An affine transformation of 3D space - a linear part (rotation, scaling) followed by a translation.
+ * The transformation is kept as a 3x4 matrix together with its inverse, and is immutable: every combination
+ * of transformations creates a new one. The inverse is composed alongside the matrix, so it never has to be
+ * calculated by inverting a matrix.
+ *
+ * @author Yair and Noam
+ */
+public class Transform
+{
+	/**
+	 * The identity transformation
+	 */
+	public static final Transform IDENTITY = new Transform(new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0},
+														   new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0});
+
+	/**
+	 * The matrix, row by row - every row holds 3 linear coefficients and a translation
+	 */
+	private final double[] m;
+
+	/**
+	 * The matrix of the inverse transformation, in the same layout
+	 */
+	private final double[] inv;
+
+	/**
+	 * Constructs a transformation from its matrix and the matrix of its inverse.
+	 *
+	 * @param m   the matrix
+	 * @param inv the matrix of the inverse
+	 */
+	private Transform(double[] m, double[] inv)
+	{
+		this.m = m;
+		this.inv = inv;
+	}
+
+	/**
+	 * Creates a translation by a vector.
+	 *
+	 * @param v the translation vector
+	 * @return the translation
+	 */
+	public static Transform translation(Vector v)
+	{
+		double x = v.getX(), y = v.getY(), z = v.getZ();
+		return new Transform(new double[]{1, 0, 0, x, 0, 1, 0, y, 0, 0, 1, z},
+							 new double[]{1, 0, 0, -x, 0, 1, 0, -y, 0, 0, 1, -z});
+	}
+
+	/**
+	 * Creates a scaling along the axes, around the origin.
+	 *
+	 * @param sx the scale along the x axis
+	 * @param sy the scale along the y axis
+	 * @param sz the scale along the z axis
+	 * @return the scaling
+	 * @throws IllegalArgumentException if any of the scales is zero
+	 */
+	public static Transform scaling(double sx, double sy, double sz)
+	{
+		if (Util.isZero(sx) || Util.isZero(sy) || Util.isZero(sz))
+			throw new IllegalArgumentException("Scaling by zero cannot be inverted");
+
+		return new Transform(new double[]{sx, 0, 0, 0, 0, sy, 0, 0, 0, 0, sz, 0},
+							 new double[]{1 / sx, 0, 0, 0, 0, 1 / sy, 0, 0, 0, 0, 1 / sz, 0});
+	}
+
+	/**
+	 * Creates a uniform scaling around the origin.
+	 *
+	 * @param s the scale
+	 * @return the scaling
+	 * @throws IllegalArgumentException if the scale is zero
+	 */
+	public static Transform scaling(double s)
+	{
+		return scaling(s, s, s);
+	}
+
+	/**
+	 * Creates a rotation around an axis through the origin (counterclockwise when looking against the axis).
+	 *
+	 * @param axis    the axis of the rotation
+	 * @param degrees the angle of the rotation, in degrees
+	 * @return the rotation
+	 */
+	public static Transform rotation(Vector axis, double degrees)
+	{
+		Vector u = axis.normalize();
+		double x = u.getX(), y = u.getY(), z = u.getZ();
+		double angle = Math.toRadians(degrees);
+		double cos = Math.cos(angle), sin = Math.sin(angle), c = 1 - cos;
+
+		double[] r = {
+				cos + x * x * c, x * y * c - z * sin, x * z * c + y * sin, 0,
+				y * x * c + z * sin, cos + y * y * c, y * z * c - x * sin, 0,
+				z * x * c - y * sin, z * y * c + x * sin, cos + z * z * c, 0};
+
+		// a rotation is inverted by its transpose
+		double[] t = {r[0], r[4], r[8], 0, r[1], r[5], r[9], 0, r[2], r[6], r[10], 0};
+		return new Transform(r, t);
+	}
+
+	/**
+	 * Combines this transformation with another one, applied after it.
+	 *
+	 * @param next the transformation to apply after this one
+	 * @return the combined transformation
+	 */
+	public Transform then(Transform next)
+	{
+		return new Transform(multiply(next.m, m), multiply(inv, next.inv));
+	}
+
+	/**
+	 * Returns the inverse transformation.
+	 *
+	 * @return the inverse
+	 */
+	public Transform inverse()
+	{
+		return new Transform(inv, m);
+	}
+
+	/**
+	 * Multiplies two affine 3x4 matrices (with an implicit last row of 0, 0, 0, 1).
+	 *
+	 * @param a the left matrix
+	 * @param b the right matrix, applied first
+	 * @return the product a * b
+	 */
+	private static double[] multiply(double[] a, double[] b)
+	{
+		double[] result = new double[12];
+		for (int row = 0; row < 3; row++)
+		{
+			for (int col = 0; col < 4; col++)
+			{
+				double sum = col == 3 ? a[4 * row + 3] : 0;
+				for (int k = 0; k < 3; k++)
+					sum += a[4 * row + k] * b[4 * k + col];
+				result[4 * row + col] = sum;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Applies a matrix to a point.
+	 *
+	 * @param a the matrix
+	 * @param p the point
+	 * @return the transformed point
+	 */
+	private static Point applyToPoint(double[] a, Point p)
+	{
+		double x = p.getX(), y = p.getY(), z = p.getZ();
+		return new Point(a[0] * x + a[1] * y + a[2] * z + a[3],
+						 a[4] * x + a[5] * y + a[6] * z + a[7],
+						 a[8] * x + a[9] * y + a[10] * z + a[11]);
+	}
+
+	/**
+	 * Applies the linear part of a matrix to a vector.
+	 *
+	 * @param a the matrix
+	 * @param v the vector
+	 * @return the transformed vector
+	 */
+	private static Vector applyToVector(double[] a, Vector v)
+	{
+		double x = v.getX(), y = v.getY(), z = v.getZ();
+		return new Vector(a[0] * x + a[1] * y + a[2] * z,
+						  a[4] * x + a[5] * y + a[6] * z,
+						  a[8] * x + a[9] * y + a[10] * z);
+	}
+
+	/**
+	 * Transforms a point.
+	 *
+	 * @param p the point
+	 * @return the transformed point
+	 */
+	public Point transform(Point p)
+	{
+		return applyToPoint(m, p);
+	}
+
+	/**
+	 * Transforms a direction vector - only the linear part applies, and the length may change.
+	 *
+	 * @param v the vector
+	 * @return the transformed vector
+	 */
+	public Vector transform(Vector v)
+	{
+		return applyToVector(m, v);
+	}
+
+	/**
+	 * Transforms a point by the inverse transformation.
+	 *
+	 * @param p the point
+	 * @return the point before the transformation
+	 */
+	public Point inverseTransform(Point p)
+	{
+		return applyToPoint(inv, p);
+	}
+
+	/**
+	 * Transforms a direction vector by the inverse transformation.
+	 *
+	 * @param v the vector
+	 * @return the vector before the transformation
+	 */
+	public Vector inverseTransform(Vector v)
+	{
+		return applyToVector(inv, v);
+	}
+
+	/**
+	 * Transforms a surface normal. A normal stays perpendicular to the surface only under the transpose of the
+	 * inverse transformation, which differs from the transformation itself under a non-uniform scaling.
+	 *
+	 * @param n the normal
+	 * @return the transformed normal, normalized
+	 */
+	public Vector transformNormal(Vector n)
+	{
+		double x = n.getX(), y = n.getY(), z = n.getZ();
+		return new Vector(inv[0] * x + inv[4] * y + inv[8] * z,
+						  inv[1] * x + inv[5] * y + inv[9] * z,
+						  inv[2] * x + inv[6] * y + inv[10] * z).normalize();
+	}
+
+	/**
+	 * Determines whether the specified object is an equal transformation.
+	 *
+	 * @param o the object to compare.
+	 * @return true if the object is a transformation with the same matrix
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) {return true;}
+		if (!(o instanceof Transform other)) {return false;}
+		return Arrays.equals(m, other.m);
+	}
+
+	/**
+	 * Returns a hash code for this transformation.
+	 *
+	 * @return a hash code value for this transformation.
+	 */
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(m);
+	}
+
+	/**
+	 * Returns a string representation of this transformation.
+	 *
+	 * @return a string representation of the matrix, row by row.
+	 */
+	@Override
+	public String toString()
+	{
+		return "Transform: " + Arrays.toString(m);
+	}
+}
@@ -59,14 +59,15 @@ public abstract class Util {
 	}
 
 	/**
-	 * Provide a real random number in range between min and max
+	 * Provide a real random number in range between min and max, from the sampling stream of the calling
+	 * thread (see {@link Sampler})
 	 * 
 	 * @param min value (included)
 	 * @param max value (excluded)
 	 * @return the random value
 	 */
 	public static double random(double min, double max) {
-		return Math.random() * (max - min) + min;
+		return Sampler.current().nextDouble() * (max - min) + min;
 	}
 
 }
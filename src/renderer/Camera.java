@@ -2,8 +2,12 @@ package renderer;
 
 import primitives.*;
 
+import java.util.List;
 import java.util.MissingResourceException;
-import java.util.stream.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import static primitives.Util.isZero;
 
@@ -17,6 +21,39 @@ import static primitives.Util.isZero;
  */
 public class Camera
 {
+	/**
+	 * The side, in pixels, of the blocks sampled by a single ray in the first pass of a progressive rendering
+	 */
+	private static final int PREVIEW_BLOCK = 8;
+	
+	/**
+	 * The least amount of samples of a pixel before its variance is trusted in a progressive rendering
+	 */
+	private static final int MIN_PROGRESSIVE_SAMPLES = 4;
+	
+	/**
+	 * The side, in pixels, of the blocks whose primary rays are traced together as a single bundle
+	 */
+	private static final int PACKET_SIZE = 8;
+	
+	/**
+	 * The ways the rendering work is executed by several threads
+	 */
+	public enum RenderMode
+	{
+		/**
+		 * The tiles are split between the workers of a fork/join pool, which steal work from each other
+		 */
+		FORK_JOIN,
+		
+		/**
+		 * Every tile is traced by a virtual thread of its own, with at most as many tiles traced at once as
+		 * there are threads, and the traced tiles are written by a separate writer thread (see
+		 * {@link TilePipeline})
+		 */
+		VIRTUAL_THREADS
+	}
+	
 	/**
 	 * the location of the camera in 3D space, represented as a Point object.
 	 */
@@ -67,6 +104,32 @@ public class Camera
 	 * Number of threads
 	 */
 	private int threadsCount = 1;
+	
+	/**
+	 * The side of a render tile, in pixels
+	 */
+	private int tileSize = 16;
+	
+	/**
+	 * The way the rendering work is executed by several threads
+	 */
+	private RenderMode renderMode = RenderMode.FORK_JOIN;
+	
+	/**
+	 * The receiver of the rendered tiles, null if there is none
+	 */
+	private TileListener tileListener = null;
+	
+	/**
+	 * The maximal depth of adaptive supersampling, 0 for a single ray through every pixel
+	 */
+	private int supersamplingDepth = 0;
+	
+	/**
+	 * The maximal difference of a color component between samples that are not refined
+	 */
+	private double colorThreshold = 8;
+	
 	/**
 	 *
 	 */
@@ -74,9 +137,9 @@ public class Camera
 
 	/**
 	 * The pixel manager responsible for managing pixels or pixel-related operations.
-	 * This private variable is used within the class scope.
+	 * This private variable is used within the class scope, and polled by other threads for the progress.
 	 */
-	private PixelManager pixelManager;
+	private volatile PixelManager pixelManager;
 	
 	/**
 	 * Constructs a new camera with the given position, target vector and up vector.
@@ -207,8 +270,9 @@ public class Camera
 
 	/**
 	 * Sets the print interval for debug information or log messages.
+	 * While a multithreaded rendering runs, its progress is printed every k seconds.
 	 *
-	 * @param k The new value for the print interval.
+	 * @param k The new value for the print interval, in seconds - 0 for no printing.
 	 * @return The modified Camera object.
 	 */
 	public Camera setDebugPrint(double k)
@@ -219,17 +283,110 @@ public class Camera
 
 	/**
 	 * Sets the number of threads to be used by the camera.
+	 * The image is rendered by a dedicated pool of exactly that many threads.
 	 *
 	 * @param n The new value for the number of threads.
 	 * @return The modified Camera object.
+	 * @throws IllegalArgumentException if the number of threads is not positive
 	 */
 	public Camera setMultithreading(int n)
 	{
+		if (n < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be positive (setMultithreading)");
+		}
+		
 		this.threadsCount = n;
 		return this;
 	}
+	
+	/**
+	 * Sets the size of the tiles the image is rendered in. A tile is the unit of work of a thread:
+	 * smaller tiles balance the work between the threads better, larger ones cost less scheduling.
+	 *
+	 * @param tileSize the side of a tile, in pixels
+	 * @return The modified Camera object.
+	 * @throws IllegalArgumentException if the tile size is not positive
+	 */
+	public Camera setTileSize(int tileSize)
+	{
+		if (tileSize < 1)
+		{
+			throw new IllegalArgumentException("Tile size must be positive (setTileSize)");
+		}
+		
+		this.tileSize = tileSize;
+		return this;
+	}
 
 
+	/**
+	 * Sets the way the rendering work is executed when rendering with several threads.
+	 *
+	 * @param renderMode the render mode
+	 * @return The modified Camera object.
+	 */
+	public Camera setRenderMode(RenderMode renderMode)
+	{
+		this.renderMode = renderMode;
+		return this;
+	}
+	
+	/**
+	 * Sets a receiver of the tiles of the image as soon as they are rendered.
+	 * With {@link RenderMode#VIRTUAL_THREADS}, the tiles are passed on by a separate writer thread, so a slow
+	 * receiver does not stall the tracing; otherwise the receiver is called by the render threads.
+	 *
+	 * @param tileListener the receiver, null for none
+	 * @return The modified Camera object.
+	 */
+	public Camera setTileListener(TileListener tileListener)
+	{
+		this.tileListener = tileListener;
+		return this;
+	}
+	
+	/**
+	 * Turns on adaptive supersampling (anti-aliasing). Every pixel is sampled at its 4 corners and its center,
+	 * and a square whose samples differ (see {@link #setColorThreshold(double)}) is split into 4 quarters,
+	 * which are sampled the same way, up to the given depth - so only the pixels on edges get more rays.
+	 * The corner samples are shared between adjacent pixels, and the samples on the sides of a square are
+	 * shared between its quarters. A depth of 2 refines an edge like a uniform 4x4 sampling.
+	 *
+	 * @param maxDepth the maximal amount of times a pixel is split, 0 for a single ray through every pixel
+	 * @return The modified Camera object.
+	 * @throws IllegalArgumentException if the depth is negative
+	 */
+	public Camera setAdaptiveSupersampling(int maxDepth)
+	{
+		if (maxDepth < 0)
+		{
+			throw new IllegalArgumentException("Supersampling depth cannot be negative (setAdaptiveSupersampling)");
+		}
+		
+		this.supersamplingDepth = maxDepth;
+		return this;
+	}
+	
+	/**
+	 * Sets the color difference beyond which adaptive supersampling refines a square.
+	 *
+	 * @param threshold the maximal difference of a color component between samples that are not refined, on the
+	 *                  0-255 scale
+	 * @return The modified Camera object.
+	 * @throws IllegalArgumentException if the threshold is negative
+	 */
+	public Camera setColorThreshold(double threshold)
+	{
+		if (threshold < 0)
+		{
+			throw new IllegalArgumentException("Color threshold cannot be negative (setColorThreshold)");
+		}
+		
+		this.colorThreshold = threshold;
+		return this;
+	}
+	
 	/**
 	 * Constructs a ray that passes through the pixel at (j,i) in the viewport.
 	 *
@@ -242,9 +399,22 @@ public class Camera
 	 */
 	public Ray constructRay(int nX, int nY, int j, int i)
 	{
-		// view plane center
-		Point Pc = p0.add(vTo.scale(distance));
-
+		return constructRay(nX, nY, (double) j, (double) i);
+	}
+	
+	/**
+	 * Constructs a ray that passes through any point of the viewport, given in pixel units: (j,i) is the center
+	 * of the pixel at column j and row i, and its corners are half a pixel away.
+	 *
+	 * @param nX the number of pixels in the viewport's width
+	 * @param nY the number of pixels in the viewport's height
+	 * @param j the column coordinate of the point
+	 * @param i the row coordinate of the point
+	 *
+	 * @return the ray that passes through the specified point
+	 */
+	private Ray constructRay(int nX, int nY, double j, double i)
+	{
 		// Ratios of the pixel
 		double Ry = height / nY;
 		double Rx = width / nX;
@@ -253,24 +423,40 @@ public class Camera
 		double Xj = (j - (nX - 1) / 2d) * Rx;
 		double Yi = ((nY - 1) / 2d - i) * Ry;
 		
-		// Pij calculation
-		Point Pij = Pc;
+		// Pij calculation by components, in the same order of operations as by points and vectors, so the
+		// primary ray costs a single vector
+		double x = p0.getX() + vTo.getX() * distance;
+		double y = p0.getY() + vTo.getY() * distance;
+		double z = p0.getZ() + vTo.getZ() * distance;
 		if (!isZero(Xj))
 		{
-			Pij = Pij.add(vRight.scale(Xj));
+			x += vRight.getX() * Xj;
+			y += vRight.getY() * Xj;
+			z += vRight.getZ() * Xj;
 		}
 		if (!isZero(Yi))
 		{
-			Pij = Pij.add(vUp.scale(Yi));
+			x += vUp.getX() * Yi;
+			y += vUp.getY() * Yi;
+			z += vUp.getZ() * Yi;
 		}
 
-		Vector Vij = Pij.subtract(p0);
+		// Vij = Pij - p0, normalized
+		x -= p0.getX();
+		y -= p0.getY();
+		z -= p0.getZ();
+		double scale = 1d / Math.sqrt(x * x + y * y + z * z);
 
-		return new Ray(p0, Vij);
+		return new Ray(p0, new Vector(x * scale, y * scale, z * scale));
 	}
 
 	/**
 	 * Renders the image using the configured image writer and ray tracer base.
+	 * The image is split into square tiles, ordered along a Morton curve (see {@link PixelManager#createTiles}).
+	 * With several threads, the tiles are split recursively between the workers of a dedicated fork/join pool,
+	 * and a worker that runs out of tiles steals from the others, so all the threads stay busy even when the
+	 * expensive regions of the image are clustered. Alternatively, the tiles are rendered by virtual threads
+	 * (see {@link #setRenderMode(RenderMode)}).
 	 * Throws an exception if the image writer or ray tracer base is not initialized.
 	 *
 	 * @throws UnsupportedOperationException if the image writer or ray tracer base is not initialized.
@@ -290,17 +476,17 @@ public class Camera
 		int Nx = imageWriter.getNx();
 		int Ny = imageWriter.getNy();
 
+		List<PixelManager.Tile> tiles = PixelManager.createTiles(Nx, Ny, tileSize);
+
 		// Checking if we try to use threads.
 		if (threadsCount == 1)
 		{
-			//rendering image without using of threads (by-default)
-			for (int row = 0; row < Ny; row++)
+			//rendering image without using of threads (by-default), the progress is tracked but not printed
+			pixelManager = new PixelManager(Ny, Nx, 0);
+			for (PixelManager.Tile tile : tiles)
 			{
-				for (int col = 0; col < Nx; col++)
-				{
-					Color color = castRay(Nx, Ny, row, col);
-					imageWriter.writePixel(row, col, color);
-				}
+				renderTile(Nx, Ny, tile);
+				pixelManager.tileDone(tile);
 			}
 		}
 		else
@@ -308,48 +494,522 @@ public class Camera
 			//rendering image with using of threads
 			pixelManager = new PixelManager(Ny, Nx, printInterval);
 
-			IntStream.range(0, Ny).parallel()
-					.forEach(i -> IntStream.range(0, Nx).parallel()
-					.forEach(j -> castRayParallel(Nx, Ny, j, i)));
+			try
+			{
+				if (renderMode == RenderMode.VIRTUAL_THREADS)
+				{
+					new TilePipeline(threadsCount, tile -> traceTile(Nx, Ny, tile), this::writeTile)
+							.run(tiles, pixelManager);
+				}
+				else
+				{
+					ForkJoinPool pool = new ForkJoinPool(threadsCount);
+					try
+					{
+						pool.invoke(new TileTask(tiles, 0, tiles.size(), tile ->
+						{
+							renderTile(Nx, Ny, tile);
+							pixelManager.tileDone(tile);
+						}));
+					}
+					finally
+					{
+						pool.shutdown();
+					}
+				}
+			}
+			finally
+			{
+				pixelManager.finish();
+			}
 		}
 
 		return this;
 	}
 	
 	/**
-	 * Casts a ray into the scene at the specified row and column in the image and returns the resulting
-	 * color of the intersection point.
-	 * @param nX the number of pixels in the x-axis of the image
-	 * @param nY the number of pixels in the y-axis of the image
-	 * @param row the row of the pixel in the image
-	 * @param col the column of the pixel in the image
-	 * @return the color of the intersection point of the casted ray in the scene
+	 * Returns the progress of the current (or last) rendering. It may be polled by any thread while
+	 * {@link #renderImage()} runs, e.g. by a monitoring dashboard.
+	 *
+	 * @return the progress, or null if no rendering has started yet
 	 */
-	private Color castRay(int nX, int nY, int row, int col)
+	public RenderProgress getProgress()
 	{
-		Ray ray = constructRay(nX, nY, row, col);
-		Color color = rayTracerBase.traceRay(ray);
-		return color;
+		PixelManager manager = pixelManager;
+		return manager == null ? null : manager.getProgress();
 	}
-
+	
 	/**
-	 * Casts a ray into the scene at the specified row and column in the image and returns the resulting
-	 * color of the intersection point.
-	 * Do the same as the other function but here this used in the threads.
+	 * Renders the image progressively, in passes that each leave a complete (if rough) image in the image
+	 * writer, so a first preview is ready after a small part of the work.
+	 * The first pass traces a single ray per 8x8 block of pixels and fills the block with its color, and every
+	 * following pass halves the blocks, until every pixel has a ray through its center. From then on, every
+	 * pass adds a sample at a new position inside each pixel (a Halton sequence, so the samples spread evenly)
+	 * - to the pixels that did not converge yet: a pixel converges once it has at least
+	 * {@value #MIN_PROGRESSIVE_SAMPLES} samples and the variance of its mean luminance falls below the target.
+	 * The rendering stops when all the pixels converged, or have the maximal amount of samples.
+	 * Adaptive supersampling and the tile listener do not apply to a progressive rendering.
+	 *
+	 * @param maxSamples     the maximal amount of samples of a pixel
+	 * @param targetVariance the variance of the mean luminance of a pixel (on the 0-255 scale) below which it
+	 *                       converged
+	 * @param flushPasses    whether to write the image out (see {@link ImageWriter#writeToImage()}) after every
+	 *                       pass
+	 * @return this camera instance for chaining
+	 * @throws MissingResourceException if the image writer or ray tracer base is not initialized.
+	 * @throws IllegalArgumentException if the maximal amount of samples is not positive or the target is negative
+	 */
+	public Camera renderProgressive(int maxSamples, double targetVariance, boolean flushPasses)
+	{
+		try
+		{
+			testValidity();
+		}
+		catch (UnsupportedOperationException e)
+		{
+			throw new MissingResourceException(e.getMessage(), Camera.class.getName(), "");
+		}
+		
+		if (maxSamples < 1 || targetVariance < 0)
+		{
+			throw new IllegalArgumentException("Samples must be positive and variance non-negative (renderProgressive)");
+		}
+		
+		int Nx = imageWriter.getNx();
+		int Ny = imageWriter.getNy();
+		List<PixelManager.Tile> tiles = PixelManager.createTiles(Nx, Ny, tileSize);
+		
+		// the sums of the samples of every pixel, for the mean color and the variance of the luminance
+		Color[] sums = new Color[Nx * Ny];
+		double[] luminance = new double[Nx * Ny];
+		double[] luminanceSquares = new double[Nx * Ny];
+		int[] counts = new int[Nx * Ny];
+		
+		ForkJoinPool pool = threadsCount == 1 ? null : new ForkJoinPool(threadsCount);
+		try
+		{
+			// preview passes - a ray per block, the blocks halving until they are single pixels
+			for (int block = PREVIEW_BLOCK; block >= 1; block /= 2)
+			{
+				int side = block;
+				forEachTile(pool, tiles, tile -> forEachPixel(tile, (col, row) ->
+				{
+					int p = row * Nx + col;
+					if (col % side == 0 && row % side == 0 && counts[p] == 0)
+					{
+						addSample(p, traceSample(Nx, Ny, col, row), sums, luminance, luminanceSquares, counts);
+					}
+				}));
+				forEachTile(pool, tiles, tile -> forEachPixel(tile, (col, row) ->
+				{
+					int p = row * Nx + col;
+					int q = counts[p] > 0 ? p : (row - row % side) * Nx + col - col % side;
+					imageWriter.writePixel(col, row, sums[q].reduce(counts[q]));
+				}));
+				if (flushPasses)
+				{
+					imageWriter.writeToImage();
+				}
+			}
+			
+			// refinement passes - a sample more for every pixel that did not converge
+			for (int sample = 1; sample < maxSamples; sample++)
+			{
+				int index = sample;
+				LongAdder refined = new LongAdder();
+				forEachTile(pool, tiles, tile -> forEachPixel(tile, (col, row) ->
+				{
+					int p = row * Nx + col;
+					if (!converged(counts[p], luminance[p], luminanceSquares[p], targetVariance))
+					{
+						Color color = traceSample(Nx, Ny, col + halton(index, 2) - 0.5, row + halton(index, 3) - 0.5);
+						addSample(p, color, sums, luminance, luminanceSquares, counts);
+						imageWriter.writePixel(col, row, sums[p].reduce(counts[p]));
+						refined.increment();
+					}
+				}));
+				
+				if (refined.sum() == 0)
+				{
+					break;
+				}
+				if (flushPasses)
+				{
+					imageWriter.writeToImage();
+				}
+			}
+		}
+		finally
+		{
+			if (pool != null)
+			{
+				pool.shutdown();
+			}
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Does some work for every tile, on the fork/join pool if there is one.
+	 *
+	 * @param pool   the pool, null to work on the calling thread
+	 * @param tiles  the tiles
+	 * @param action the work done for every tile
+	 */
+	private static void forEachTile(ForkJoinPool pool, List<PixelManager.Tile> tiles,
+									Consumer<PixelManager.Tile> action)
+	{
+		if (pool == null)
+		{
+			tiles.forEach(action);
+		}
+		else
+		{
+			pool.invoke(new TileTask(tiles, 0, tiles.size(), action));
+		}
+	}
+	
+	/**
+	 * Some work done for a pixel
+	 */
+	@FunctionalInterface
+	private interface PixelAction
+	{
+		/**
+		 * Does the work for a pixel.
+		 *
+		 * @param col the column of the pixel
+		 * @param row the row of the pixel
+		 */
+		void accept(int col, int row);
+	}
+	
+	/**
+	 * Does some work for every pixel of a tile, row by row.
+	 *
+	 * @param tile   the tile
+	 * @param action the work done for every pixel, given its column and row
+	 */
+	private static void forEachPixel(PixelManager.Tile tile, PixelAction action)
+	{
+		for (int row = tile.y0(); row < tile.y1(); row++)
+		{
+			for (int col = tile.x0(); col < tile.x1(); col++)
+			{
+				action.accept(col, row);
+			}
+		}
+	}
+	
+	/**
+	 * Adds a sample to the sums of a pixel.
+	 *
+	 * @param p                the index of the pixel
+	 * @param color            the color of the sample
+	 * @param sums             the sums of the sample colors of the pixels
+	 * @param luminance        the sums of the sample luminances of the pixels
+	 * @param luminanceSquares the sums of the squared sample luminances of the pixels
+	 * @param counts           the amounts of samples of the pixels
+	 */
+	private static void addSample(int p, Color color, Color[] sums, double[] luminance, double[] luminanceSquares,
+								  int[] counts)
+	{
+		double l = color.luminance();
+		sums[p] = sums[p] == null ? color : sums[p].add(color);
+		luminance[p] += l;
+		luminanceSquares[p] += l * l;
+		counts[p]++;
+	}
+	
+	/**
+	 * Checks whether a pixel converged - it has enough samples, and the variance of its mean luminance is
+	 * below the target.
+	 *
+	 * @param count            the amount of samples of the pixel
+	 * @param luminance        the sum of the sample luminances
+	 * @param luminanceSquares the sum of the squared sample luminances
+	 * @param targetVariance   the variance of the mean below which the pixel converged
+	 * @return true if the pixel converged
+	 */
+	private static boolean converged(int count, double luminance, double luminanceSquares, double targetVariance)
+	{
+		if (count < MIN_PROGRESSIVE_SAMPLES)
+		{
+			return false;
+		}
+		
+		double variance = Math.max(0, luminanceSquares - luminance * luminance / count) / (count - 1);
+		return variance / count <= targetVariance;
+	}
+	
+	/**
+	 * Calculates an element of the Halton sequence - the radical inverse of the index in the base - which
+	 * spreads consecutive elements evenly over [0, 1).
+	 *
+	 * @param index the index of the element
+	 * @param base  the base, a prime
+	 * @return the element
+	 */
+	private static double halton(int index, int base)
+	{
+		double result = 0;
+		double fraction = 1;
+		for (int i = index; i > 0; i /= base)
+		{
+			fraction /= base;
+			result += fraction * (i % base);
+		}
+		return result;
+	}
+	
+	/**
+	 * Renders a single tile and writes it.
+	 *
+	 * @param nX   the number of pixels in the x-axis of the image
+	 * @param nY   the number of pixels in the y-axis of the image
+	 * @param tile the tile
+	 */
+	private void renderTile(int nX, int nY, PixelManager.Tile tile)
+	{
+		writeTile(tile, traceTile(nX, nY, tile));
+	}
+	
+	/**
+	 * Traces the pixels of a single tile. The primary rays of every block of up to
+	 * {@value #PACKET_SIZE}x{@value #PACKET_SIZE} pixels are traced together as a bundle
+	 * (see {@link RayTracerBase#traceRays}), as they are coherent. The sampling stream is seeded by the
+	 * corner of every block (see {@link Sampler}).
+	 *
+	 * @param nX   the number of pixels in the x-axis of the image
+	 * @param nY   the number of pixels in the y-axis of the image
+	 * @param tile the tile
+	 * @return the colors of the tile pixels, row by row
+	 */
+	private Color[] traceTile(int nX, int nY, PixelManager.Tile tile)
+	{
+		if (supersamplingDepth > 0)
+		{
+			return traceTileAdaptive(nX, nY, tile);
+		}
+		
+		int width = tile.x1() - tile.x0();
+		Color[] colors = new Color[tile.size()];
+		for (int y0 = tile.y0(); y0 < tile.y1(); y0 += PACKET_SIZE)
+		{
+			for (int x0 = tile.x0(); x0 < tile.x1(); x0 += PACKET_SIZE)
+			{
+				int x1 = Math.min(x0 + PACKET_SIZE, tile.x1());
+				int y1 = Math.min(y0 + PACKET_SIZE, tile.y1());
+				
+				Ray[] rays = new Ray[(x1 - x0) * (y1 - y0)];
+				int i = 0;
+				for (int row = y0; row < y1; row++)
+				{
+					for (int col = x0; col < x1; col++)
+					{
+						rays[i++] = constructRay(nX, nY, col, row);
+					}
+				}
+				
+				Sampler.seed(x0, y0);
+				Color[] packet = rayTracerBase.traceRays(rays);
+				i = 0;
+				for (int row = y0; row < y1; row++)
+				{
+					for (int col = x0; col < x1; col++)
+					{
+						colors[(row - tile.y0()) * width + col - tile.x0()] = packet[i++];
+					}
+				}
+			}
+		}
+		return colors;
+	}
+	
+	/**
+	 * Traces the pixels of a single tile by adaptive supersampling. The pixel corners of the whole tile are
+	 * traced first, so every corner is traced once for all the pixels that share it.
+	 *
+	 * @param nX   the number of pixels in the x-axis of the image
+	 * @param nY   the number of pixels in the y-axis of the image
+	 * @param tile the tile
+	 * @return the colors of the tile pixels, row by row
+	 */
+	private Color[] traceTileAdaptive(int nX, int nY, PixelManager.Tile tile)
+	{
+		int width = tile.x1() - tile.x0();
+		int height = tile.y1() - tile.y0();
+		
+		Color[] corners = new Color[(width + 1) * (height + 1)];
+		for (int row = 0; row <= height; row++)
+		{
+			for (int col = 0; col <= width; col++)
+			{
+				corners[row * (width + 1) + col] = traceSample(nX, nY, tile.x0() + col - 0.5, tile.y0() + row - 0.5);
+			}
+		}
+		
+		Color[] colors = new Color[tile.size()];
+		for (int row = 0; row < height; row++)
+		{
+			for (int col = 0; col < width; col++)
+			{
+				int corner = row * (width + 1) + col;
+				colors[row * width + col] = traceSquare(nX, nY, tile.x0() + col, tile.y0() + row, 0.5,
+														corners[corner], corners[corner + 1],
+														corners[corner + width + 1], corners[corner + width + 2],
+														supersamplingDepth);
+			}
+		}
+		return colors;
+	}
+	
+	/**
+	 * Calculates the average color of a square of the viewport from its corner samples: the center is sampled,
+	 * and if all 5 samples are similar their average is the color of the square, otherwise the square is split
+	 * into 4 quarters.
+	 *
+	 * @param nX          the number of pixels in the x-axis of the image
+	 * @param nY          the number of pixels in the y-axis of the image
+	 * @param x           the column coordinate of the center of the square
+	 * @param y           the row coordinate of the center of the square
+	 * @param half        half of the side of the square, in pixels
+	 * @param topLeft     the color at the top left corner
+	 * @param topRight    the color at the top right corner
+	 * @param bottomLeft  the color at the bottom left corner
+	 * @param bottomRight the color at the bottom right corner
+	 * @param depth       the amount of times the square may still be split
+	 * @return the color of the square
+	 */
+	private Color traceSquare(int nX, int nY, double x, double y, double half, Color topLeft, Color topRight,
+							  Color bottomLeft, Color bottomRight, int depth)
+	{
+		Color center = traceSample(nX, nY, x, y);
+		if (depth == 0 || (center.isSimilar(topLeft, colorThreshold) && center.isSimilar(topRight, colorThreshold)
+				&& center.isSimilar(bottomLeft, colorThreshold) && center.isSimilar(bottomRight, colorThreshold)))
+		{
+			return center.add(topLeft, topRight, bottomLeft, bottomRight).reduce(5);
+		}
+		
+		// the middles of the sides are shared by the two quarters along each side
+		Color top = traceSample(nX, nY, x, y - half);
+		Color bottom = traceSample(nX, nY, x, y + half);
+		Color left = traceSample(nX, nY, x - half, y);
+		Color right = traceSample(nX, nY, x + half, y);
+		
+		double quarter = half / 2;
+		return traceSquare(nX, nY, x - quarter, y - quarter, quarter, topLeft, top, left, center, depth - 1)
+				.add(traceSquare(nX, nY, x + quarter, y - quarter, quarter, top, topRight, center, right, depth - 1),
+					 traceSquare(nX, nY, x - quarter, y + quarter, quarter, left, center, bottomLeft, bottom, depth - 1),
+					 traceSquare(nX, nY, x + quarter, y + quarter, quarter, center, right, bottom, bottomRight,
+								 depth - 1))
+				.reduce(4);
+	}
+	
+	/**
+	 * Traces a ray through a point of the viewport, with the sampling stream seeded by the point (see
+	 * {@link Sampler}).
 	 *
 	 * @param nX the number of pixels in the x-axis of the image
 	 * @param nY the number of pixels in the y-axis of the image
-	 * @param row the row of the pixel in the image
-	 * @param col the column of the pixel in the image
-	 * @return the color of the intersection point of the casted ray in the scene
+	 * @param x  the column coordinate of the point
+	 * @param y  the row coordinate of the point
+	 * @return the color seen through the point
 	 */
-	private void castRayParallel(int nX, int nY, int col, int row)
+	private Color traceSample(int nX, int nY, double x, double y)
 	{
-		imageWriter.writePixel(col, row, rayTracerBase.traceRay(constructRay(nX, nY, col, row)));
-		pixelManager.pixelDone();
+		Sampler.seed(x, y);
+		return rayTracerBase.traceRay(constructRay(nX, nY, x, y));
 	}
-
-
+	
+	/**
+	 * Writes the traced pixels of a tile into the image, and passes the tile on to the tile listener.
+	 *
+	 * @param tile   the tile
+	 * @param colors the colors of the tile pixels, row by row
+	 */
+	private void writeTile(PixelManager.Tile tile, Color[] colors)
+	{
+		int i = 0;
+		for (int row = tile.y0(); row < tile.y1(); row++)
+		{
+			for (int col = tile.x0(); col < tile.x1(); col++)
+			{
+				imageWriter.writePixel(col, row, colors[i++]);
+			}
+		}
+		
+		if (tileListener != null)
+		{
+			tileListener.tileRendered(tile.x0(), tile.y0(), tile.x1() - tile.x0(), tile.y1() - tile.y0(), colors);
+		}
+	}
+	
+	/**
+	 * A range of tiles handled by the fork/join pool: a range of more than a single tile is split in two
+	 * halves, one of which may be stolen by an idle worker.
+	 */
+	private static class TileTask extends RecursiveAction
+	{
+		/**
+		 * The serialization version, required of a fork/join task
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * All the tiles of the image
+		 */
+		private final List<PixelManager.Tile> tiles;
+		
+		/**
+		 * The first tile of the range (inclusive)
+		 */
+		private final int from;
+		
+		/**
+		 * The last tile of the range (exclusive)
+		 */
+		private final int to;
+		
+		/**
+		 * The work done for every tile
+		 */
+		private final Consumer<PixelManager.Tile> action;
+		
+		/**
+		 * Constructs a task over a range of tiles.
+		 *
+		 * @param tiles  all the tiles of the image
+		 * @param from   the first tile of the range (inclusive)
+		 * @param to     the last tile of the range (exclusive)
+		 * @param action the work done for every tile
+		 */
+		TileTask(List<PixelManager.Tile> tiles, int from, int to, Consumer<PixelManager.Tile> action)
+		{
+			this.tiles = tiles;
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+		
+		/**
+		 * Handles the range - a single tile directly, a longer range by splitting it.
+		 */
+		@Override
+		protected void compute()
+		{
+			if (to - from == 1)
+			{
+				action.accept(tiles.get(from));
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new TileTask(tiles, from, middle, action), new TileTask(tiles, middle, to, action));
+		}
+	}
+	
 	/**
 	 * Prints a grid on the image with a specified interval and color.
 	 * Throws an exception if rendering the image is not supported or if the required resources are missing.
@@ -1,94 +1,132 @@
 package renderer;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
 /** PixelManager is a helper class. It is used for multi-threading in the
  * renderer and
  * for follow up its progress.<br/>
- * A Camera uses one pixel manager object and several Pixel objects - one in
- * each thread.
+ * A Camera uses one pixel manager object: it splits the image into tiles, and
+ * every render thread reports each tile it finishes.<br/>
+ * The progress is counted without locks - by a striped counter that the render
+ * threads add whole tiles to - and printed by a separate low-frequency reporter
+ * thread, so the render threads never wait for each other or for the console.
  * @author Dan Zilberstein */
 class PixelManager {
-    /** Immutable class for object containing allocated pixel (with its row and
-     * column numbers) */
-    record Pixel(int col, int row) {
+    /** Immutable class for a rectangular tile of pixels - columns x0..x1 and rows
+     * y0..y1, the upper bounds exclusive */
+    record Tile(int x0, int y0, int x1, int y1) {
+        /** Amount of pixels in the tile
+         * @return the amount of pixels */
+        int size() {
+            return (x1 - x0) * (y1 - y0);
+        }
     }
 
-    /** Maximum rows of pixels */
-    private int                 maxRows       = 0;
-    /** Maximum columns of pixels */
-    private int                 maxCols       = 0;
     /** Total amount of pixels in the generated image */
-    private long                totalPixels   = 0l;
+    private final long          totalPixels;
 
-    /** Currently processed row of pixels */
-    private volatile int        cRow          = 0;
-    /** Currently processed column of pixels */
-    private volatile int        cCol          = -1;
     /** Amount of pixels that have been processed */
-    private volatile long       pixels        = 0l;
-    /** Last printed progress update percentage */
-    private volatile int        lastPrinted   = 0;
+    private final LongAdder     pixels        = new LongAdder();
+    /** Start time of the rendering, as returned by {@link System#nanoTime()} */
+    private final long          startTime     = System.nanoTime();
 
-    /** Flag of debug printing of progress percentage */
-    private boolean             print         = false;
-    /** Progress percentage printing interval */
-    private long                printInterval = 100l;
+    /** Reporter thread printing the progress, null if printing is not required */
+    private Thread              reporter      = null;
     /** Printing format */
-    private static final String PRINT_FORMAT  = "%5.1f%%\r";
-    /** Mutual exclusion object for synchronizing next pixel allocation between
-     * threads */
-    private Object              mutexNext     = new Object();
-    /** Mutual exclusion object for printing progress percentage in console window
-     * by different threads */
-    private Object              mutexPixels   = new Object();
+    private static final String PRINT_FORMAT  = "%5.1f%%  %10.0f px/s  ETA %6.1fs\r";
 
-    /** Initialize pixel manager data for multi-threading
+    /** Initialize pixel manager data for multi-threading, and start the reporter
+     * thread if printing is required
      * @param maxRows  the amount of pixel rows
      * @param maxCols  the amount of pixel columns
      * @param interval print time interval in seconds, 0 if printing is not
      *                 required */
     PixelManager(int maxRows, int maxCols, double interval) {
-        this.maxRows  = maxRows;
-        this.maxCols  = maxCols;
-        totalPixels   = (long) maxRows * maxCols;
-        printInterval = (int) (interval * 10);
-        if (print = printInterval != 0) System.out.printf(PRINT_FORMAT, 0d);
+        totalPixels = (long) maxRows * maxCols;
+        if (interval <= 0) return;
+
+        long sleep = Math.max(1, (long) (interval * 1000));
+        reporter = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    print();
+                    Thread.sleep(sleep);
+                }
+            } catch (InterruptedException ignored) {
+                // the rendering is finished
+            }
+        }, "PixelManager reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /** Splits an image into square tiles (smaller along the right and bottom edges),
+     * ordered along a Morton (Z-order) curve: consecutive tiles are neighbours, so
+     * the tiles rendered at the same time by different threads, and the tiles a
+     * thread renders one after the other, touch nearby parts of the scene.
+     * @param  nX       the amount of pixel columns
+     * @param  nY       the amount of pixel rows
+     * @param  tileSize the side of a tile in pixels
+     * @return          the tiles in Morton order */
+    static List<Tile> createTiles(int nX, int nY, int tileSize) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int y = 0; y < nY; y += tileSize)
+            for (int x = 0; x < nX; x += tileSize)
+                tiles.add(new Tile(x, y, Math.min(x + tileSize, nX), Math.min(y + tileSize, nY)));
+        tiles.sort(Comparator.comparingLong(t -> mortonCode(t.x0() / tileSize, t.y0() / tileSize)));
+        return tiles;
     }
 
-    /** Function for thread-safe manipulating of main follow up Pixel object - this
-     * function is critical section for all the threads, and the pixel manager data
-     * is the shared data of this critical section.<br/>
-     * The function provides next available pixel number each call.
-     * @return true if next pixel is allocated, false if there are no more pixels */
-    Pixel nextPixel() {
-        synchronized (mutexNext) {
-            if (cRow == maxRows) return null;
+    /** Calculates the position of a tile along the Morton curve by interleaving the
+     * bits of its column and row numbers
+     * @param  x the tile column number
+     * @param  y the tile row number
+     * @return   the Morton code */
+    private static long mortonCode(int x, int y) {
+        long code = 0;
+        for (int bit = 0; bit < 31; ++bit)
+            code |= ((long) (x >> bit & 1) << 2 * bit) | ((long) (y >> bit & 1) << 2 * bit + 1);
+        return code;
+    }
 
-            ++cCol;
-            if (cCol < maxCols)
-                return new Pixel(cRow, cCol);
+    /** Finish tile processing by updating the progress
+     * @param tile the tile */
+    void tileDone(Tile tile) {
+        pixels.add(tile.size());
+    }
 
-            cCol = 0;
-            ++cRow;
-            if (cRow < maxRows)
-                return new Pixel(cRow, cCol);
+    /** Finish the rendering: stop the reporter thread and print the final
+     * progress */
+    void finish() {
+        if (reporter == null) return;
+        reporter.interrupt();
+        try {
+            reporter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return null;
+        print();
     }
 
-    /** Finish pixel processing by updating and printing of progress percentage */
-    void pixelDone() {
-        boolean flag       = false;
-        int     percentage = 0;
-        synchronized (mutexPixels) {
-            ++pixels;
-            if (print) {
-                percentage = (int) (1000l * pixels / totalPixels);
-                if (percentage - lastPrinted >= printInterval) {
-                    lastPrinted = percentage;
-                    flag        = true;
-                }
-            }
-            if (flag) System.out.printf(PRINT_FORMAT, percentage / 10d);
-        }
+    /** Print the progress in the console window */
+    private void print() {
+        RenderProgress progress = getProgress();
+        System.out.printf(PRINT_FORMAT, 100 * progress.fraction(), progress.pixelsPerSecond(),
+                          progress.etaSeconds());
+    }
+
+    /** Take a snapshot of the progress - it may be polled by any thread during
+     * the rendering
+     * @return the progress */
+    RenderProgress getProgress() {
+        long   done    = pixels.sum();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        double rate    = seconds > 0 ? done / seconds : 0;
+        double eta     = done >= totalPixels ? 0
+                : rate > 0 ? (totalPixels - done) / rate : Double.POSITIVE_INFINITY;
+        return new RenderProgress(done, totalPixels, rate, eta);
     }
 }
\ No newline at end of file
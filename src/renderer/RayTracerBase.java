@@ -32,4 +32,20 @@ public abstract class RayTracerBase
      * @return The color at the intersection point.
      */
     public abstract Color traceRay(Ray ray);
+
+    /**
+     * Traces a bundle of rays, e.g. the primary rays of a block of neighbouring pixels.
+     * A tracer that can trace coherent rays together overrides it, the default implementation traces
+     * them one by one.
+     *
+     * @param rays The rays to be traced.
+     * @return The color seen along every ray, in the order of the rays.
+     */
+    public Color[] traceRays(Ray[] rays)
+    {
+        Color[] colors = new Color[rays.length];
+        for (int i = 0; i < rays.length; i++)
+            colors[i] = traceRay(rays[i]);
+        return colors;
+    }
 }
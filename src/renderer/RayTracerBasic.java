@@ -1,12 +1,15 @@
 package renderer;
 
+import geometries.Accelerator;
 import geometries.Intersectable.GeoPoint;
+import lighting.LightIndex;
 import lighting.LightSource;
 import primitives.*;
 import scene.Scene;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import static primitives.Util.alignZero;
 import static primitives.Util.isZero;
@@ -32,9 +35,39 @@ public class RayTracerBasic extends RayTracerBase
 	 */
 	private static final Double3 INITIAL_K = Double3.ONE;
 	
+	/**
+	 * The ratio between the distance of a light and the radius of its disk in soft shadows
+	 */
+	private static final double LIGHT_DISK_RATIO = 35;
+	
+	/**
+	 * The amount of samples on the rim of a light disk, tested before the beam of an adaptive soft shadow
+	 */
+	private static final int RIM_SAMPLES = 8;
+	
 	private boolean softShadow = false;
 	
-	private boolean BVH = true;
+	/**
+	 * The most shadow rays traced toward a light for a soft shadow
+	 */
+	private int shadowSamples = 64;
+	
+	/**
+	 * Whether soft shadows trace only the shadow rays of the penumbra (see {@link #setAdaptiveShadow})
+	 */
+	private boolean adaptiveShadow = false;
+	
+	/**
+	 * The index of the lights by their influence, null to visit every light at every point
+	 */
+	private LightIndex lightIndex = null;
+	
+	/**
+	 * The most lights shaded at a point, drawn by their contribution, 0 to shade all of them
+	 */
+	private int lightSamples = 0;
+	
+	private Accelerator.Type accelerator = Accelerator.Type.BVH;
 	
 	public RayTracerBasic setSoftShadow(boolean b)
 	{
@@ -42,11 +75,95 @@ public class RayTracerBasic extends RayTracerBase
 		return this;
 	}
 	
+	/**
+	 * Sets the budget of shadow rays per light for soft shadows. The samples are stratified over the disk of
+	 * the light (see {@link LightSource#generateBeamPoints}), so the amount of rays is the largest square within
+	 * the budget, whatever the distance of the light. A budget of 1 traces the hard shadow.
+	 *
+	 * @param samples the most shadow rays per light and shaded point
+	 * @return the RayTracerBasic object itself
+	 * @throws IllegalArgumentException if the budget is not positive
+	 */
+	public RayTracerBasic setShadowSamples(int samples)
+	{
+		if (samples < 1)
+			throw new IllegalArgumentException("The shadow samples budget must be positive");
+		shadowSamples = samples;
+		return this;
+	}
+	
+	/**
+	 * Turns adaptive sampling of soft shadows on or off. Adaptively, the center of the light disk and eight
+	 * samples around its rim are traced first; when they agree - all lit, all blocked, or equally attenuated -
+	 * the point is out of the penumbra, and is shaded as by a hard shadow with their transparency. Otherwise
+	 * the samples of the disk are taken as a square grid, whose corners are traced; when they agree, the whole
+	 * grid is taken to agree with them, otherwise the grid is split into four and every quarter is handled the
+	 * same way, down to blocks of 2x2 samples, which are traced in full. So points away from the penumbra cost
+	 * nine shadow rays per light, and the full budget is spent only where the shadow edge crosses the disk.
+	 * A blocker small enough to fall between the samples tested is missed, which is the price of the saving.
+	 *
+	 * @param b true for adaptive sampling, false to trace every sample
+	 * @return the RayTracerBasic object itself
+	 */
+	public RayTracerBasic setAdaptiveShadow(boolean b)
+	{
+		adaptiveShadow = b;
+		return this;
+	}
+	
+	/**
+	 * Sets the luminance below which light is negligible, and indexes the lights of the scene by the distance
+	 * their attenuation makes them negligible at (see {@link LightIndex}): a shaded point visits, and traces
+	 * shadow rays to, only the lights that reach it. The lights must be added to the scene before.
+	 *
+	 * @param cutoff the negligible luminance, 0 to visit every light at every point
+	 * @return the RayTracerBasic object itself
+	 * @throws IllegalArgumentException if the cutoff is negative
+	 */
+	public RayTracerBasic setLightCutoff(double cutoff)
+	{
+		if (cutoff < 0)
+			throw new IllegalArgumentException("The light cutoff must not be negative");
+		lightIndex = cutoff == 0 ? null : new LightIndex(scene.lights, cutoff);
+		return this;
+	}
+	
+	/**
+	 * Sets the budget of lights shaded at a point. When more lights reach a point, the budget is spent on
+	 * lights drawn at random by their estimated contribution (importance sampling), which trades noise for a
+	 * bounded amount of shadow rays.
+	 *
+	 * @param samples the most lights shaded at a point, 0 to shade all of them
+	 * @return the RayTracerBasic object itself
+	 * @throws IllegalArgumentException if the budget is negative
+	 */
+	public RayTracerBasic setLightSamples(int samples)
+	{
+		if (samples < 0)
+			throw new IllegalArgumentException("The light samples budget must not be negative");
+		lightSamples = samples;
+		return this;
+	}
+	
 	public RayTracerBasic setBvh(boolean b) {
-		this.BVH = b;
+		return setAccelerator(b ? Accelerator.Type.BVH : Accelerator.Type.NONE);
+	}
+	
+	/**
+	 * Selects the spatial index the rays are traced through, and builds it over the scene geometries unless
+	 * it is already built.
+	 * With {@link Accelerator.Type#NONE}, all the intersections of every ray are collected and the nearest is
+	 * picked.
+	 *
+	 * @param type the kind of the spatial index
+	 * @return the RayTracerBasic object itself
+	 */
+	public RayTracerBasic setAccelerator(Accelerator.Type type)
+	{
+		accelerator = type;
 		
-		if (BVH)
-			scene.geometries.buildBvhTree();
+		if (type != Accelerator.Type.NONE && scene.geometries.getAcceleratorType() != type)
+			scene.geometries.buildAccelerator(type);
 		
 		return this;
 	}
@@ -75,6 +192,27 @@ public class RayTracerBasic extends RayTracerBase
 		return closestPoint == null ? scene.background : calcColor(closestPoint, ray);
 	}
 	
+	/**
+	 * Traces a bundle of rays. With a spatial index, the nearest hits of all the rays are found by a single
+	 * walk over the index (see {@link geometries.Geometries#findClosestGeoIntersections}), and then every hit is
+	 * shaded on its own.
+	 *
+	 * @param rays The rays to be traced.
+	 * @return The color seen along every ray, in the order of the rays.
+	 */
+	@Override
+	public Color[] traceRays(Ray[] rays)
+	{
+		if (accelerator == Accelerator.Type.NONE)
+			return super.traceRays(rays);
+		
+		GeoPoint[] hits = scene.geometries.findClosestGeoIntersections(rays);
+		Color[] colors = new Color[rays.length];
+		for (int i = 0; i < rays.length; i++)
+			colors[i] = hits[i] == null ? scene.background : calcColor(hits[i], rays[i]);
+		return colors;
+	}
+	
 	/**
 	 * Calculates the color at the intersection point {@code gp} along the ray {@code ray}.
 	 * This method uses recursive ray tracing with reflection and transmission.
@@ -85,77 +223,90 @@ public class RayTracerBasic extends RayTracerBase
 	 */
 	private Color calcColor(GeoPoint gp, Ray ray)
 	{
-		return calcColor(gp, ray, MAX_CALC_COLOR_LEVEL, INITIAL_K)
-				.add(scene.ambientLight.getIntensity());
+		ColorAccumulator color = new ColorAccumulator(scene.ambientLight.getIntensity());
+		calcColor(color, gp, ray, gp.geometry.getNormal(gp.point), MAX_CALC_COLOR_LEVEL, INITIAL_K, Double3.ONE);
+		return color.toColor();
 	}
 	
 	/**
-	 * Calculates the color at the intersection point {@code gp} along the ray {@code ray}.
+	 * Adds the color at the intersection point {@code gp} along the ray {@code ray} to a sum.
 	 * This method incorporates local effects and global effects such as reflection and transmission.
+	 * The colors of all the recursion levels are summed into a single accumulator, every one scaled by the
+	 * reflection and transmission coefficients along its way, so the shading of a ray allocates no
+	 * intermediate colors.
 	 *
+	 * @param color The sum to add the color to
 	 * @param gp    The intersection point
 	 * @param ray   The ray
+	 * @param n     The surface normal at the intersection point
 	 * @param level The current recursion level
 	 * @param k     The accumulated attenuation factor
-	 * @return The color at the intersection point
+	 * @param scale The factor of the color in the sum
 	 */
-	private Color calcColor(GeoPoint gp, Ray ray, int level, Double3 k)
+	private void calcColor(ColorAccumulator color, GeoPoint gp, Ray ray, Vector n, int level, Double3 k,
+						   Double3 scale)
 	{
-		Color color = calcLocalEffects(gp, ray, k);
-		return level == 1 ?
-			   color :
-			   color.add(calcGlobalEffects(gp, ray, level, k));
+		calcLocalEffects(color, gp, ray, n, k, scale);
+		if (level != 1)
+			calcGlobalEffects(color, gp, ray, n, level, k, scale);
 	}
 	
 	/**
-	 * Calculates the global effects (reflection and transmission) at the intersection point {@code gp}
-	 * along the ray {@code ray} for a given recursion {@code level} and attenuation factor {@code k}.
+	 * Adds the global effects (reflection and transmission) at the intersection point {@code gp}
+	 * along the ray {@code ray} for a given recursion {@code level} and attenuation factor {@code k} to a sum.
 	 *
+	 * @param color The sum to add the color to
 	 * @param gp    The intersection point
 	 * @param ray   The ray
+	 * @param n     The surface normal at the intersection point
 	 * @param level The current recursion level
 	 * @param k     The accumulated attenuation factor
-	 * @return The color contribution from global effects
+	 * @param scale The factor of the color in the sum
 	 */
-	private Color calcGlobalEffects(GeoPoint gp, Ray ray, int level, Double3 k)
+	private void calcGlobalEffects(ColorAccumulator color, GeoPoint gp, Ray ray, Vector n, int level, Double3 k,
+								   Double3 scale)
 	{
 		Vector v = ray.getDir();
-		Vector n = gp.geometry.getNormal(gp.point);
 		Material material = gp.geometry.getMaterial();
-		return calcGlobalEffect(constructReflectedRay(gp, v, n), level, k, material.kR)
-				.add(calcGlobalEffect(constructRefractedRay(gp, v, n), level, k, material.kT));
+		calcGlobalEffect(color, constructReflectedRay(gp, v, n), level, k, material.kR, scale);
+		calcGlobalEffect(color, constructRefractedRay(gp, v, n), level, k, material.kT, scale);
 	}
 	
 	/**
-	 * Calculates the color contribution from a specific global effect (reflection or transmission)
+	 * Adds the color contribution from a specific global effect (reflection or transmission)
 	 * along the ray {@code ray} for a given recursion {@code level}, attenuation factor {@code k},
-	 * and reflection/transmission coefficient {@code kx}.
+	 * and reflection/transmission coefficient {@code kx} to a sum.
 	 *
+	 * @param color The sum to add the color to
 	 * @param ray   The ray
 	 * @param level The current recursion level
 	 * @param k     The accumulated attenuation factor
 	 * @param kx    The reflection/transmission coefficient
-	 * @return The color contribution from the global effect
+	 * @param scale The factor of the color of the current level in the sum
 	 */
-	private Color calcGlobalEffect(Ray ray, int level, Double3 k, Double3 kx)
+	private void calcGlobalEffect(ColorAccumulator color, Ray ray, int level, Double3 k, Double3 kx, Double3 scale)
 	{
 		Double3 kkx = k.product(kx);
 		if (kkx.lowerThan(MIN_CALC_COLOR_K))
-			return Color.BLACK;
+			return;
 		
+		Double3 scaleKx = scale.product(kx);
 		GeoPoint gp = findClosestIntersection(ray);
 		if (gp == null)
-			return scene.background.scale(kx);
+		{
+			color.add(scene.background, scaleKx);
+			return;
+		}
 		
-		return isZero(gp.geometry.getNormal(gp.point)
-							  .dotProduct(ray.getDir())) ?
-			   Color.BLACK :
-			   calcColor(gp, ray, level - 1, kkx).scale(kx);
+		Vector n = gp.geometry.getNormal(gp.point);
+		if (!isZero(n.dotProduct(ray.getDir())))
+			calcColor(color, gp, ray, n, level - 1, kkx, scaleKx);
 	}
 	
 	/**
 	 * Constructs a reflected ray at the given intersection point {@code gp} with the given
 	 * incident ray direction {@code v} and surface normal {@code n}.
+	 * The reflected direction, v - 2(v*n)n, is a unit vector already, and is calculated by components.
 	 *
 	 * @param gp The intersection point
 	 * @param v  The incident ray direction
@@ -164,11 +315,11 @@ public class RayTracerBasic extends RayTracerBase
 	 */
 	private Ray constructReflectedRay(GeoPoint gp, Vector v, Vector n)
 	{
-		double vn = alignZero(v.dotProduct(n));
+		double vn2 = 2 * alignZero(v.dotProduct(n));
 		
-		Vector temp = v.subtract(n.scale(2 * vn));
+		Vector r = new Vector(v.getX() - n.getX() * vn2, v.getY() - n.getY() * vn2, v.getZ() - n.getZ() * vn2);
 		
-		return new Ray(gp.point, temp, n);
+		return new Ray(gp.point, r, n);
 	}
 	
 	/**
@@ -187,18 +338,18 @@ public class RayTracerBasic extends RayTracerBase
 	
 	/**
 	 * Finds the closest intersection point between the given ray and the geometries in the scene.
+	 * With a spatial index, only the nearest hit is searched for (see {@link geometries.Intersectable#findClosestGeoIntersection}),
+	 * otherwise all the intersections are collected and the nearest is picked.
 	 *
 	 * @param ray The ray to intersect with the geometries
 	 * @return The closest intersection point, or null if no intersection is found
 	 */
 	private GeoPoint findClosestIntersection(Ray ray)
 	{
-		List<GeoPoint> intersections;
+		if (accelerator != Accelerator.Type.NONE)
+			return scene.geometries.findClosestGeoIntersection(ray);
 		
-		if (BVH)
-			intersections = scene.geometries.findGeoIntersectionsBVH(ray);
-		else
-			intersections = scene.geometries.findGeoIntersections(ray);
+		List<GeoPoint> intersections = scene.geometries.findGeoIntersections(ray);
 		
 		if (intersections == null)
 		{
@@ -209,119 +360,198 @@ public class RayTracerBasic extends RayTracerBase
 	}
 	
 	/**
-	 * Calculates the local effects (diffuse and specular) at a given intersection point.
+	 * Adds the local effects (emission, diffuse and specular) at a given intersection point to a sum.
+	 * The reflection of every light is calculated by scalars and added straight to the sum.
+	 * With a light index (see {@link #setLightCutoff}) only the lights that reach the point are visited, and
+	 * when more of them reach it than the light samples budget (see {@link #setLightSamples}), the budget is
+	 * spent on lights drawn by their estimated contribution - the luminance they give the point, unshadowed -
+	 * and every light drawn is weighted by the inverse of its chance, so the sum is right on average.
 	 *
-	 * @param gp  The intersection point
-	 * @param ray The ray that intersected the geometry
-	 * @param k   The attenuation factor
-	 * @return The color representing the local effects at the intersection point
+	 * @param color The sum to add the color to
+	 * @param gp    The intersection point
+	 * @param ray   The ray that intersected the geometry
+	 * @param n     The surface normal at the intersection point
+	 * @param k     The attenuation factor
+	 * @param scale The factor of the color in the sum
 	 */
-	private Color calcLocalEffects(GeoPoint gp, Ray ray, Double3 k)
+	private void calcLocalEffects(ColorAccumulator color, GeoPoint gp, Ray ray, Vector n, Double3 k, Double3 scale)
 	{
-		Color color = gp.geometry.getEmission();
+		color.add(gp.geometry.getEmission(), scale);
 		
 		Vector v = ray.getDir();
-		Vector n = gp.geometry.getNormal(gp.point);
 		double nv = alignZero(n.dotProduct(v));
 		
 		if (nv == 0)
-			return color;
+			return;
+		
+		List<LightSource> lights = scene.lights;
+		if (lightIndex != null)
+		{
+			// the lights found are shaded as they are visited, and collected only for sampling
+			if (lightSamples == 0)
+			{
+				lightIndex.forEachLight(gp.point,
+										lightSource -> calcLightEffect(color, gp, lightSource, v, n, nv, k, scale));
+				return;
+			}
+			lights = new ArrayList<>();
+			lightIndex.forEachLight(gp.point, lights::add);
+		}
+		
+		if (lightSamples == 0 || lights.size() <= lightSamples)
+		{
+			for (LightSource lightSource : lights)
+				calcLightEffect(color, gp, lightSource, v, n, nv, k, scale);
+			return;
+		}
+		
+		// the cumulative estimates of the lights, for drawing them by a binary search
+		LightSource[] candidates = lights.toArray(new LightSource[0]);
+		double[] cumulative = new double[candidates.length];
+		double total = 0;
+		for (int i = 0; i < candidates.length; i++)
+		{
+			total += candidates[i].getIntensity(gp.point).luminance();
+			cumulative[i] = total;
+		}
+		if (total <= 0)
+			return;
+		
+		SplittableRandom random = Sampler.current();
+		for (int sample = 0; sample < lightSamples; sample++)
+		{
+			// the first light whose cumulative estimate is above the draw - never a light estimated at 0
+			double draw = random.nextDouble() * total;
+			int low = 0, high = candidates.length - 1;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (cumulative[middle] > draw)
+					high = middle;
+				else
+					low = middle + 1;
+			}
+			
+			double chance = (cumulative[low] - (low == 0 ? 0 : cumulative[low - 1])) / total;
+			calcLightEffect(color, gp, candidates[low], v, n, nv, k, scale.scale(1 / (lightSamples * chance)));
+		}
+	}
+	
+	/**
+	 * Adds the diffuse and specular reflection of a single light at a given intersection point to a sum.
+	 *
+	 * @param color       The sum to add the color to
+	 * @param gp          The intersection point
+	 * @param lightSource The light
+	 * @param v           The view direction (direction of the ray)
+	 * @param n           The surface normal at the intersection point
+	 * @param nv          The dot product between the normal and the view direction, not 0
+	 * @param k           The attenuation factor
+	 * @param scale       The factor of the color in the sum
+	 */
+	private void calcLightEffect(ColorAccumulator color, GeoPoint gp, LightSource lightSource, Vector v, Vector n,
+								 double nv, Double3 k, Double3 scale)
+	{
+		Vector l = lightSource.getL(gp.point);
+		if (l == null) // the point is the light position, which lights it from no direction
+			return;
+		
+		// a hard shadow of a light behind the surface, as seen from the view side, needs nothing more
+		double nl = alignZero(n.dotProduct(l));
+		boolean facing = nl * nv > 0;
+		if (!facing && !softShadow)
+			return;
 		
 		Material material = gp.geometry.getMaterial();
 		
-		for (LightSource lightSource : scene.lights)
+		// the light at the point, shared by all its samples
+		Color iL = lightSource.getIntensity(gp.point);
+		
+		// the unshadowed reflection bounds the shaded one, so a shadow ray is worth tracing only if it is visible
+		double diffuse = Math.abs(nl);
+		double specular = facing ? calcSpecular(material, nl, nv, l.dotProduct(v)) : 0;
+		boolean visible = facing
+				&& ColorAccumulator.maxReflected(iL, scale, material.kD, diffuse, material.kS, specular)
+				>= MIN_CALC_COLOR_K;
+		if (!visible && !softShadow)
+			return;
+		
+		// every shadow ray leaves the surface on the side of the viewer (n*l has the sign of n*v), from one head
+		Point head = Ray.offsetHead(gp.point, n, -nv);
+		double distance = lightSource.getDistance(head);
+		
+		// adaptively, a soft shadow whose rim agrees all around is shaded as a hard one
+		Double3 rim = softShadow && adaptiveShadow && visible ? rimVisibility(gp, head, l, n, nv, distance) : null;
+		
+		if (softShadow && rim == null)
 		{
-			Vector l = lightSource.getL(gp.point);
+			var beam = createBeam(gp, lightSource, l, n, distance);
+			double share = 1d / beam.size();
+			
+			ShadowBeam shadow = new ShadowBeam(head, distance, beam, n, nv);
+			int grid = (int) Math.sqrt(beam.size());
+			if (adaptiveShadow && grid * grid == beam.size())
+				shadow.sampleRegion(grid, 0, grid, 0, grid);
 			
-			if (softShadow)
+			for (int i = 0; i < beam.size(); i++)
 			{
-				Color colorBeam = Color.BLACK;
+				Vector vec = beam.get(i);
+				double nvec = alignZero(n.dotProduct(vec));
 				
-				var beam = createBeam(gp, lightSource, l, n);
-				
-				for (Vector vec : beam)
-				{
-					double nvec = alignZero(n.dotProduct(vec));
+				if (nvec * nv > 0)
+				{ // sign(nl) == sign(nv)
+					double specularVec = calcSpecular(material, nvec, nv, vec.dotProduct(v));
+					if (ColorAccumulator.maxReflected(iL, scale, material.kD, Math.abs(nvec), material.kS, specularVec)
+							< MIN_CALC_COLOR_K)
+						continue;
 					
-					if (nvec * nv > 0)
-					{ // sign(nl) == sign(nv)
-//				if (unshaded(gp, lightSource, l, n))
-						Double3 ktr = transparency(gp, lightSource, vec, n);
-						if (ktr.product(k)
-								.graterThan(MIN_CALC_COLOR_K))
-						{
-							Color iL = lightSource.getIntensity(gp.point)
-									.scale(ktr);
-							colorBeam = colorBeam.add(
-									iL.scale(calcDiffusive(material, nvec)),
-									iL.scale(calcSpecular(material, n, vec, nvec, v)));
-						}
-					}
-				}
-				
-				color = color.add(colorBeam.reduce(beam.size()));
-			}
-			else
-			{
-				double nl = alignZero(n.dotProduct(l));
-				
-				if (nl * nv > 0)
-				{
-					Double3 ktr = transparency(gp, lightSource, l, n);
+					Double3 ktr = shadow.visibility(i);
 					if (ktr.product(k)
 							.graterThan(MIN_CALC_COLOR_K))
 					{
-						Color iL = lightSource.getIntensity(gp.point)
-								.scale(ktr);
-						color = color.add(
-								iL.scale(calcDiffusive(material, nl)),
-								iL.scale(calcSpecular(material, n, l, nl, v)));
+						color.addReflected(iL, ktr.product(scale), material.kD, share * Math.abs(nvec), material.kS,
+										   share * specularVec);
 					}
 				}
 			}
 		}
-		
-		return color;
+		else
+		{
+			Double3 ktr = rim != null ? rim : transparency(head, l, distance);
+			if (ktr.product(k)
+					.graterThan(MIN_CALC_COLOR_K))
+			{
+				color.addReflected(iL, ktr.product(scale), material.kD, diffuse, material.kS, specular);
+			}
+		}
 	}
+
 	
 	/**
-	 * Calculates the specular reflection at a given intersection point.
+	 * Calculates the specular reflection factor at a given intersection point, (-v*r)^shininess, where
+	 * r = l - 2(n*l)n is the reflection of the light direction. The product v*r is expanded into the dot
+	 * products at hand, v*l - 2(n*l)(n*v), so no reflected vector is created.
 	 *
 	 * @param material The material of the intersected geometry
-	 * @param n        The surface normal at the intersection point
-	 * @param l        The direction from the intersection point to the light source
 	 * @param nl       The dot product between the surface normal and the light direction
-	 * @param v        The view direction (direction of the ray)
-	 * @return The specular reflection color
+	 * @param nv       The dot product between the surface normal and the view direction
+	 * @param lv       The dot product between the light direction and the view direction
+	 * @return The specular reflection factor, 0 when viewed from the direction opposite to r
 	 */
-	private Double3 calcSpecular(Material material, Vector n, Vector l, double nl, Vector v)
+	private static double calcSpecular(Material material, double nl, double nv, double lv)
 	{
-		Vector r = l.add(n.scale(-2 * nl));
-		double minusVR = -alignZero(r.dotProduct(v));
+		double minusVR = -alignZero(lv - 2 * nl * nv);
 		if (minusVR <= 0)
 		{
-			return Double3.ZERO; // view from direction opposite to r vector
+			return 0; // view from direction opposite to r vector
 		}
 		
-		return material.kS.scale(Math.pow(minusVR, material.nShininess));
-	}
-	
-	/**
-	 * Calculates the diffuse reflection at a given intersection point.
-	 *
-	 * @param material The material of the intersected geometry
-	 * @param nl       The dot product between the surface normal and the light direction
-	 * @return The diffuse reflection color
-	 */
-	private Double3 calcDiffusive(Material material, double nl)
-	{
-		return material.kD.scale(nl >= 0 ?
-								 nl :
-								 (-1) * nl);
+		return Math.pow(minusVR, material.nShininess);
 	}
 	
 	/**
 	 * Checks if a point on a surface is unshaded by shadow rays.
+	 * The shadow ray stops at the first opaque blocker.
 	 *
 	 * @param gp    The intersection point on the surface
 	 * @param light The light source
@@ -336,93 +566,57 @@ public class RayTracerBasic extends RayTracerBase
 		Ray lightRay = new Ray(gp.point, lightDirection, n);
 		
 		double distance = light.getDistance(lightRay.getP0());
-		List<GeoPoint> intersections = scene.geometries.findGeoIntersections(lightRay, distance);
-		
-		if (intersections == null)
-			return true;
-		
-		for (GeoPoint intersection : intersections)
-		{
-			if (Double3.ZERO.equals(intersection.geometry.getMaterial().kT))
-				return false;
-		}
 		
-		return true;
+		return !scene.geometries.isOccluded(lightRay, distance);
 	}
 	
 	/**
 	 * Calculates the transparency factor for a point on a surface.
+	 * The transparency of the blockers is accumulated along the shadow ray, which stops once the light is blocked.
 	 *
-	 * @param gp    The intersection point on the surface
-	 * @param light The light source
-	 * @param l     The direction from the intersection point to the light source
-	 * @param n     The surface normal at the intersection point
+	 * @param head     The head of the shadow ray - the intersection point, moved off the surface
+	 * @param l        The direction from the light source to the intersection point
+	 * @param distance The distance from the head of the shadow ray to the light source
 	 * @return 		The transparency factor as a Double3 vector
 	 */
-	private Double3 transparency(GeoPoint gp, LightSource light, Vector l, Vector n)
+	private Double3 transparency(Point head, Vector l, double distance)
 	{
 		Vector lightDirection = l.scale(-1); // shadow ray
 		
-		Ray lightRay = new Ray(gp.point, lightDirection, n);
-		
-		double distance = light.getDistance(lightRay.getP0());
-		List<GeoPoint> intersections = scene.geometries.findGeoIntersections(lightRay, distance);
-		
-		if (intersections == null)
-			return Double3.ONE;
+		Ray lightRay = new Ray(head, lightDirection);
 		
-		Double3 ktr = Double3.ONE;
-		
-		for (GeoPoint intersection : intersections)
-		{
-			ktr = ktr.product(intersection.geometry.getMaterial().kT);
-			if (ktr.lowerThan(MIN_CALC_COLOR_K))
-				return Double3.ZERO;
-		}
-		
-		return ktr;
+		return scene.geometries.findTransparency(lightRay, distance, MIN_CALC_COLOR_K);
 	}
 	
 	/**
 	 * Creates a beam of vectors representing rays of light emitted from a light source towards a given point.
+	 * The rays come from stratified samples of a disk around the light, facing the point, whose radius is a
+	 * fixed share of the distance; their amount is bounded by the shadow samples budget.
 	 *
 	 * @param gp The geometric point on the surface of an object.
 	 * @param light The light source emitting the beam.
 	 * @param l The direction vector from the light source towards the surface point.
 	 * @param n The surface normal vector at the given point.
+	 * @param distance The distance from the head of the shadow rays to the light source.
 	 * @return A list of vectors representing the beam of rays.
 	 */
-	private List<Vector> createBeam(GeoPoint gp, LightSource light, Vector l, Vector n)
+	private List<Vector> createBeam(GeoPoint gp, LightSource light, Vector l, Vector n, double distance)
 	{
-		double distance = light.getDistance(gp.point);
-
-		// directional light
-		if (distance == Double.POSITIVE_INFINITY)
+		// directional light, or a hard shadow
+		if (distance == Double.POSITIVE_INFINITY || shadowSamples == 1)
 			return List.of(l);
 
-		Vector horizontal;
-
-		if (alignZero(l.getX()) == 0 && alignZero(l.getY()) == 0)
-		{
-			horizontal = new Vector(1, 0, 0);
-		}
-		else
-		{
-			horizontal = new Vector(-1 * l.getY(), l.getX(), 0).normalize();
-		}
+		Vector horizontal = diskHorizontal(l);
 
 		Vector vertical = l.crossProduct(horizontal).normalize();
 
-		double radius = distance / 35;
-
-		int numOfPoints = (int)radius * 20;
+		double radius = distance / LIGHT_DISK_RATIO;
 
 		Point point = gp.point.add(l.scale(-distance));
 
-		List<Point> beamSource = light.generateBeamPoints(point, horizontal, vertical, radius, numOfPoints);
+		List<Point> beamSource = light.generateBeamPoints(point, horizontal, vertical, radius, shadowSamples);
 
-		LinkedList<Vector> beamVectors = new LinkedList<>();
-		beamVectors.add(l);
+		List<Vector> beamVectors = new ArrayList<>(beamSource.size());
 
 		for (Point p : beamSource)
 		{
@@ -431,4 +625,174 @@ public class RayTracerBasic extends RayTracerBase
 
 		return beamVectors;
 	}
+	
+	/**
+	 * Returns a unit vector orthogonal to the direction of a light, spanning the light disk with
+	 * l x horizontal.
+	 *
+	 * @param l The direction of the light
+	 * @return The horizontal axis of the light disk
+	 */
+	private static Vector diskHorizontal(Vector l)
+	{
+		if (alignZero(l.getX()) == 0 && alignZero(l.getY()) == 0)
+		{
+			return new Vector(1, 0, 0);
+		}
+		
+		return new Vector(-1 * l.getY(), l.getX(), 0).normalize();
+	}
+	
+	/**
+	 * Traces the center of the light disk of a soft shadow, and {@link #RIM_SAMPLES} samples evenly spread
+	 * around its rim (see {@link #createBeam}).
+	 *
+	 * @param gp       The shaded point
+	 * @param head     The head of the shadow rays - the point, moved off the surface
+	 * @param l        The direction from the light source to the point
+	 * @param n        The surface normal at the point
+	 * @param nv       The dot product between the normal and the view direction
+	 * @param distance The distance from the head of the shadow rays to the light source
+	 * @return The transparency toward the disk if all the samples agree on it, null if they do not, or if the
+	 * light has no disk to sample
+	 */
+	private Double3 rimVisibility(GeoPoint gp, Point head, Vector l, Vector n, double nv, double distance)
+	{
+		if (distance == Double.POSITIVE_INFINITY || shadowSamples == 1)
+			return null;
+		
+		Vector horizontal = diskHorizontal(l);
+		Vector vertical = l.crossProduct(horizontal).normalize();
+		double radius = distance / LIGHT_DISK_RATIO;
+		Point point = gp.point.add(l.scale(-distance));
+		
+		Double3 rim = alignZero(n.dotProduct(l)) * nv > 0 ? transparency(head, l, distance) : Double3.ZERO;
+		for (int i = 0; i < RIM_SAMPLES; i++)
+		{
+			// by components, as the cosine or sine of the angle may vanish
+			double angle = 2 * Math.PI * i / RIM_SAMPLES;
+			double radiusCos = radius * Math.cos(angle), radiusSin = radius * Math.sin(angle);
+			Point sample = new Point(point.getX() + radiusCos * horizontal.getX() + radiusSin * vertical.getX(),
+									 point.getY() + radiusCos * horizontal.getY() + radiusSin * vertical.getY(),
+									 point.getZ() + radiusCos * horizontal.getZ() + radiusSin * vertical.getZ());
+			
+			Vector vec = gp.point.subtract(sample).normalize();
+			Double3 ktr = alignZero(n.dotProduct(vec)) * nv > 0 ?
+						  transparency(head, vec, distance) :
+						  Double3.ZERO;
+			if (!rim.equals(ktr))
+				return null;
+		}
+		return rim;
+	}
+	
+	/**
+	 * The visibility of the samples of a light disk from a shaded point, found lazily: every sample is traced
+	 * at most once, and the samples of a region that {@link #sampleRegion} found to agree are not traced at all.
+	 */
+	private final class ShadowBeam
+	{
+		/**
+		 * The head of the shadow rays - the shaded point, moved off the surface
+		 */
+		private final Point head;
+		
+		/**
+		 * The distance from the head of the shadow rays to the light source
+		 */
+		private final double distance;
+		
+		/**
+		 * The directions from the samples of the light disk to the point, row by row of the sample grid
+		 */
+		private final List<Vector> beam;
+		
+		/**
+		 * The surface normal at the point
+		 */
+		private final Vector n;
+		
+		/**
+		 * The dot product between the normal and the view direction
+		 */
+		private final double nv;
+		
+		/**
+		 * The transparency toward every sample, null until it is found
+		 */
+		private final Double3[] visibility;
+		
+		/**
+		 * Constructs the beam of a point with no sample traced yet.
+		 *
+		 * @param head     The head of the shadow rays - the shaded point, moved off the surface
+		 * @param distance The distance from the head of the shadow rays to the light source
+		 * @param beam     The directions from the samples of the light disk to the point
+		 * @param n        The surface normal at the point
+		 * @param nv       The dot product between the normal and the view direction
+		 */
+		ShadowBeam(Point head, double distance, List<Vector> beam, Vector n, double nv)
+		{
+			this.head = head;
+			this.distance = distance;
+			this.beam = beam;
+			this.n = n;
+			this.nv = nv;
+			this.visibility = new Double3[beam.size()];
+		}
+		
+		/**
+		 * Returns the transparency toward a sample, and traces its shadow ray unless it is known already.
+		 * A sample behind the surface, as seen from the view side, is blocked by the surface itself.
+		 *
+		 * @param i The index of the sample
+		 * @return The transparency factor toward the sample
+		 */
+		Double3 visibility(int i)
+		{
+			if (visibility[i] == null)
+			{
+				Vector vec = beam.get(i);
+				visibility[i] = alignZero(n.dotProduct(vec)) * nv > 0 ?
+								transparency(head, vec, distance) :
+								Double3.ZERO;
+			}
+			return visibility[i];
+		}
+		
+		/**
+		 * Finds the visibility of a block of the sample grid adaptively (see {@link #setAdaptiveShadow}): the
+		 * samples of a block whose corners agree take their visibility without being traced, and a block whose
+		 * corners disagree is split into four. Blocks of up to 2x2 samples are left to be traced one by one.
+		 *
+		 * @param grid The amount of samples along each side of the grid
+		 * @param row0 The first row of the block (inclusive)
+		 * @param row1 The last row of the block (exclusive)
+		 * @param col0 The first column of the block (inclusive)
+		 * @param col1 The last column of the block (exclusive)
+		 */
+		void sampleRegion(int grid, int row0, int row1, int col0, int col1)
+		{
+			if (row1 <= row0 || col1 <= col0 || row1 - row0 <= 2 && col1 - col0 <= 2)
+				return;
+			
+			Double3 corner = visibility(row0 * grid + col0);
+			if (corner.equals(visibility(row0 * grid + col1 - 1))
+					&& corner.equals(visibility((row1 - 1) * grid + col0))
+					&& corner.equals(visibility((row1 - 1) * grid + col1 - 1)))
+			{
+				for (int row = row0; row < row1; row++)
+					for (int col = col0; col < col1; col++)
+						if (visibility[row * grid + col] == null)
+							visibility[row * grid + col] = corner;
+				return;
+			}
+			
+			int rowMid = (row0 + row1) / 2, colMid = (col0 + col1) / 2;
+			sampleRegion(grid, row0, rowMid, col0, colMid);
+			sampleRegion(grid, row0, rowMid, colMid, col1);
+			sampleRegion(grid, rowMid, row1, col0, colMid);
+			sampleRegion(grid, rowMid, row1, colMid, col1);
+		}
+	}
 }
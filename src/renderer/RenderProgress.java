@@ -0,0 +1,37 @@
+package renderer;
+
+/**
+ * A snapshot of the progress of a rendering, which can be polled while the image is being rendered
+ * (see {@link Camera#getProgress()}).
+ *
+ * @param pixelsDone      the amount of pixels rendered so far
+ * @param totalPixels     the amount of pixels in the image
+ * @param pixelsPerSecond the average rendering rate since the rendering started
+ * @param etaSeconds      the estimated time left at the average rate, in seconds - infinite before the first
+ *                        pixels are rendered
+ * @author Yair and Noam
+ */
+public record RenderProgress(long pixelsDone, long totalPixels, double pixelsPerSecond, double etaSeconds)
+{
+	/**
+	 * Returns the rendered part of the image.
+	 *
+	 * @return the fraction of the pixels rendered, between 0 and 1
+	 */
+	public double fraction()
+	{
+		return totalPixels == 0 ? 1 : (double) pixelsDone / totalPixels;
+	}
+	
+	/**
+	 * Returns a one-line human readable report.
+	 *
+	 * @return the report
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("%.1f%% (%d/%d pixels), %.0f pixels/s, ETA %.1f s",
+							 100 * fraction(), pixelsDone, totalPixels, pixelsPerSecond, etaSeconds);
+	}
+}
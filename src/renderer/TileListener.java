@@ -0,0 +1,24 @@
+package renderer;
+
+import primitives.Color;
+
+/**
+ * A receiver of the tiles of an image as soon as they are rendered, e.g. for streaming a large image to
+ * storage while the rest of it is still being rendered (see {@link Camera#setTileListener(TileListener)}).
+ *
+ * @author Yair and Noam
+ */
+@FunctionalInterface
+public interface TileListener
+{
+	/**
+	 * Receives a rendered tile, after its pixels were written into the image writer.
+	 *
+	 * @param x0     the first column of the tile
+	 * @param y0     the first row of the tile
+	 * @param width  the amount of columns of the tile
+	 * @param height the amount of rows of the tile
+	 * @param colors the colors of the tile pixels, row by row
+	 */
+	void tileRendered(int x0, int y0, int width, int height, Color[] colors);
+}
@@ -0,0 +1,180 @@
+package renderer;
+
+import primitives.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A two-stage render pipeline for {@link Camera.RenderMode#VIRTUAL_THREADS}: every tile is traced by a
+ * virtual thread of its own, and the traced tiles flow through a queue into a single writer thread, which
+ * writes them into the image and passes them on to the tile listener.
+ * The tracing is CPU-bound, so a semaphore lets only as many tiles be traced at once as there are render
+ * threads, while any amount of tiles may wait for it at the cost of a virtual thread each. A tracing thread
+ * never waits for the writer - the queue is unbounded - so a slow disk behind the listener never stalls the
+ * tracing.
+ * Virtual threads are available from Java 21; on older runtimes the tiles are traced by a fixed pool of
+ * platform threads.
+ *
+ * @author Yair and Noam
+ */
+class TilePipeline
+{
+	/**
+	 * A traced tile on its way to the writer
+	 *
+	 * @param tile   the tile
+	 * @param colors the colors of the tile pixels, row by row
+	 */
+	private record TracedTile(PixelManager.Tile tile, Color[] colors)
+	{
+	}
+	
+	/**
+	 * The mark of the end of the tiles in the writer queue
+	 */
+	private static final TracedTile END = new TracedTile(null, null);
+	
+	/**
+	 * The maximal amount of tiles traced at once
+	 */
+	private final int threadsCount;
+	
+	/**
+	 * Traces the pixels of a tile
+	 */
+	private final Function<PixelManager.Tile, Color[]> tracer;
+	
+	/**
+	 * Writes a traced tile, called by the writer thread only
+	 */
+	private final BiConsumer<PixelManager.Tile, Color[]> writer;
+	
+	/**
+	 * Constructs a pipeline.
+	 *
+	 * @param threadsCount the maximal amount of tiles traced at once
+	 * @param tracer       traces the pixels of a tile
+	 * @param writer       writes a traced tile, called by the writer thread only
+	 */
+	TilePipeline(int threadsCount, Function<PixelManager.Tile, Color[]> tracer,
+				 BiConsumer<PixelManager.Tile, Color[]> writer)
+	{
+		this.threadsCount = threadsCount;
+		this.tracer = tracer;
+		this.writer = writer;
+	}
+	
+	/**
+	 * Creates an executor running every task on a new virtual thread, or a fixed pool of platform threads if
+	 * the runtime has no virtual threads.
+	 *
+	 * @param fallbackThreads the size of the fallback pool
+	 * @return the executor
+	 */
+	static ExecutorService newVirtualThreadExecutor(int fallbackThreads)
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(fallbackThreads);
+		}
+	}
+	
+	/**
+	 * Renders tiles through the pipeline, and returns once all of them are written.
+	 *
+	 * @param tiles        the tiles
+	 * @param pixelManager the progress tracker, notified as the tiles are traced
+	 * @throws RuntimeException if tracing or writing a tile failed
+	 */
+	void run(List<PixelManager.Tile> tiles, PixelManager pixelManager)
+	{
+		BlockingQueue<TracedTile> queue = new LinkedBlockingQueue<>();
+		Throwable[] writerFailure = new Throwable[1];
+		Thread writerThread = new Thread(() ->
+		{
+			try
+			{
+				for (TracedTile traced = queue.take(); traced != END; traced = queue.take())
+					writer.accept(traced.tile(), traced.colors());
+			}
+			catch (Throwable t)
+			{
+				writerFailure[0] = t;
+			}
+		}, "TilePipeline writer");
+		writerThread.start();
+		
+		Semaphore tracing = new Semaphore(threadsCount);
+		ExecutorService executor = newVirtualThreadExecutor(threadsCount);
+		List<Future<?>> futures = new ArrayList<>(tiles.size());
+		try
+		{
+			for (PixelManager.Tile tile : tiles)
+			{
+				futures.add(executor.submit(() ->
+				{
+					tracing.acquireUninterruptibly();
+					Color[] colors;
+					try
+					{
+						colors = tracer.apply(tile);
+					}
+					finally
+					{
+						tracing.release();
+					}
+					pixelManager.tileDone(tile);
+					queue.add(new TracedTile(tile, colors));
+				}));
+			}
+			
+			for (Future<?> future : futures)
+				future.get();
+		}
+		catch (ExecutionException e)
+		{
+			futures.forEach(future -> future.cancel(true));
+			throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Rendering was interrupted", e);
+		}
+		finally
+		{
+			executor.shutdown();
+			queue.add(END);
+			try
+			{
+				writerThread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (writerFailure[0] instanceof RuntimeException failure)
+			throw failure;
+		if (writerFailure[0] instanceof Error error)
+			throw error;
+		if (writerFailure[0] != null)
+			throw new RuntimeException(writerFailure[0]);
+	}
+}
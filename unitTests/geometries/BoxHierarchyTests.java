@@ -0,0 +1,66 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.Point;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing BoxHierarchy
+ *
+ * @author Yair and Noam
+ */
+class BoxHierarchyTests
+{
+	/**
+	 * Finds the items whose boxes contain a point.
+	 *
+	 * @param hierarchy the hierarchy
+	 * @param point     the point
+	 * @return the indices of the items found, sorted
+	 */
+	private static Set<Integer> find(BoxHierarchy hierarchy, Point point)
+	{
+		Set<Integer> found = new TreeSet<>();
+		hierarchy.forEachContaining(point, i -> assertTrue(found.add(i), "an item found twice"));
+		return found;
+	}
+
+	/**
+	 * Test method for {@link BoxHierarchy#forEachContaining(Point, java.util.function.IntConsumer)}.
+	 */
+	@Test
+	void testForEachContaining()
+	{
+		// a row of 100 unit cubes, each overlapping the next one by half
+		double[] boxes = new double[6 * 100];
+		for (int i = 0; i < 100; i++)
+		{
+			boxes[6 * i] = i / 2d;
+			boxes[6 * i + 3] = i / 2d + 1;
+			boxes[6 * i + 4] = 1;
+			boxes[6 * i + 5] = 1;
+		}
+		BoxHierarchy hierarchy = new BoxHierarchy(boxes);
+
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: a point in two overlapping boxes
+		assertEquals(Set.of(20, 21), find(hierarchy, new Point(10.7, 0.5, 0.5)), "wrong boxes found");
+
+		// TC02: a point out of all the boxes
+		assertEquals(Set.of(), find(hierarchy, new Point(10.7, 2, 0.5)), "a box found beside the point");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a point on the faces of three boxes
+		assertEquals(Set.of(19, 20, 21), find(hierarchy, new Point(10.5, 0.5, 1)), "wrong boxes found on faces");
+
+		// TC12: no boxes at all
+		assertEquals(Set.of(), find(new BoxHierarchy(new double[0]), new Point(0, 0, 0)), "a box found in nothing");
+
+		// TC13: an array of partial boxes
+		assertThrows(IllegalArgumentException.class, () -> new BoxHierarchy(new double[7]), "a partial box");
+	}
+}
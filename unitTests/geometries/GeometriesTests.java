@@ -1,14 +1,18 @@
 package geometries;
 
 import org.junit.jupiter.api.Test;
+import primitives.Double3;
+import primitives.Material;
 import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.util.LinkedList;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import geometries.Intersectable.GeoPoint;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * This class is a JUnit test class for the {@link Geometries#findIntersections(Ray)} method.
@@ -58,4 +62,471 @@ class GeometriesTests
 		assertEquals(5, result13.size(), "all of them intersect");
 		
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Creates a grid of small spheres and triangles, with a floor plane below them.
+	 *
+	 * @param size the amount of objects along each axis of the grid
+	 * @return the geometries
+	 */
+	static Geometries createGrid(int size)
+	{
+		Geometries g = new Geometries();
+		List<Intersectable> list = new LinkedList<>();
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++)
+			{
+				double x = i * 10, y = j * 10;
+				list.add((i + j) % 2 == 0 ?
+						 new Sphere(3, new Point(x, y, 0)) :
+						 new Triangle(new Point(x - 3, y - 3, 1), new Point(x + 3, y - 3, -1), new Point(x, y + 3, 0)));
+			}
+		list.add(new Plane(new Point(0, 0, -10), new Vector(0, 0, 1)));
+		g.add(list.toArray(new Intersectable[0]));
+		return g;
+	}
+	
+	/**
+	 * Test method for {@link Geometries#buildBvhTree()}.
+	 */
+	@Test
+	void testBuildBvhTree()
+	{
+		Geometries flat = createGrid(20);
+		Geometries bvh = createGrid(20);
+		BvhStatistics statistics = bvh.buildBvhTree();
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the tree holds every bounded primitive, and is much shallower than the amount of primitives
+		assertEquals(400, statistics.primitiveCount(), "wrong amount of primitives in the tree");
+		assertTrue(statistics.maxDepth() < 20, "tree is too deep");
+		assertTrue(statistics.sahCost() < 400, "tree costs as much as a flat list");
+		
+		// TC02: the tree finds the same intersections as the flat list
+		for (int i = 0; i < 50; i++)
+		{
+			Ray ray = new Ray(new Point(-20 + i, -20 + 2 * i, 50), new Vector(2 + i % 3, 1 + i % 5, -8));
+			List<Point> expected = flat.findIntersections(ray);
+			List<GeoPoint> actual = bvh.findGeoIntersectionsBVH(ray);
+			assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+						 "BVH intersections differ from the flat list " + i);
+		}
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: a tree over a single primitive
+		assertEquals(1, new Geometries(new Sphere(1, new Point(0, 0, 0))).buildBvhTree().primitiveCount(),
+					 "wrong amount of primitives in a single primitive tree");
+		
+		// TC12: the greedy builder holds the same primitives
+		assertEquals(400, createGrid(20).buildBvhTreeGreedy().primitiveCount(),
+					 "wrong amount of primitives in the greedy tree");
+	}
+	
+	/**
+	 * Test method for {@link Geometries#setBvhParallelism(int)}.
+	 */
+	@Test
+	void testBuildBvhTreeParallel()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: a tree big enough for parallel binning is the same tree as the sequential one
+		BvhStatistics sequential = createGrid(270).setBvhParallelism(1).buildBvhTree();
+		Geometries geometries = createGrid(270).setBvhParallelism(4);
+		BvhStatistics parallel = geometries.buildBvhTree();
+		assertEquals(sequential.primitiveCount(), parallel.primitiveCount(), "wrong amount of primitives");
+		assertEquals(sequential.nodeCount(), parallel.nodeCount(), "wrong amount of nodes");
+		assertEquals(sequential.sahCost(), parallel.sahCost(), 1e-9, "the parallel tree differs");
+		assertSameIntersections(createGrid(270), geometries, "parallel tree intersections differ from the flat list");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: no threads
+		assertThrows(IllegalArgumentException.class, () -> new Geometries().setBvhParallelism(0),
+					 "a parallelism of 0 threads");
+	}
+	
+	/**
+	 * Test method for {@link Intersectable#findGeoIntersectionsBVH(Ray, double)}.
+	 */
+	@Test
+	void testFindGeoIntersectionsBVHMaxDistance()
+	{
+		Geometries flat = createGrid(20);
+		Geometries bvh = createGrid(20);
+		bvh.buildBvhTree();
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the tree finds the same intersections as the flat list up to the distance, with and without the
+		// flat form of the tree
+		for (int i = 0; i < 50; i++)
+		{
+			Ray ray = new Ray(new Point(-20 + i, -20 + 2 * i, 50), new Vector(2 + i % 3, 1 + i % 5, -8));
+			double distance = 40 + i % 20;
+			List<GeoPoint> expected = flat.findGeoIntersections(ray, distance);
+			List<GeoPoint> actual = bvh.findGeoIntersectionsBVH(ray, distance);
+			List<GeoPoint> nested = flat.findGeoIntersectionsBVH(ray, distance);
+			assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+						 "BVH intersections differ from the flat list " + i);
+			assertEquals(expected == null ? 0 : expected.size(), nested == null ? 0 : nested.size(),
+						 "nested BVH intersections differ from the flat list " + i);
+		}
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: every box is entered only beyond the distance
+		Ray down = new Ray(new Point(0, 0, 50), new Vector(0, 0, -1));
+		assertNull(bvh.findGeoIntersectionsBVH(down, 40), "a hit beyond the maximum distance");
+		
+		// TC12: a box behind the ray
+		Sphere behind = new Sphere(1, new Point(0, 0, 60));
+		new Geometries(behind); // creates the box
+		assertNull(behind.findGeoIntersectionsBVH(down, 100), "a box behind the ray");
+		assertEquals(2, behind.findGeoIntersectionsBVH(new Ray(new Point(0, 0, 50), new Vector(0, 0, 1)), 100).size(),
+					 "the box in front of the ray was skipped");
+	}
+	
+	/**
+	 * Test method for {@link Intersectable#findClosestGeoIntersection(Ray)}.
+	 */
+	@Test
+	void testFindClosestGeoIntersection()
+	{
+		Geometries flat = createGrid(20);
+		Geometries bvh = createGrid(20);
+		bvh.buildBvhTree();
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the nearest hit is the nearest of all the intersections, with and without the tree
+		for (int i = 0; i < 50; i++)
+		{
+			Ray ray = new Ray(new Point(-20 + i, -20 + 2 * i, 50), new Vector(2 + i % 3, 1 + i % 5, -8));
+			GeoPoint expected = ray.findClosestGeoPoint(flat.findGeoIntersections(ray));
+			assertEquals(expected.point, flat.findClosestGeoIntersection(ray).point, "wrong nearest hit " + i);
+			assertEquals(expected.point, bvh.findClosestGeoIntersection(ray).point, "wrong nearest BVH hit " + i);
+		}
+		
+		// TC02: a ray that misses every geometry
+		assertNull(bvh.findClosestGeoIntersection(new Ray(new Point(0, 0, 50), new Vector(0, 0, 1))),
+				   "a ray going away has a hit");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: a hit beyond the maximum distance is ignored, so only the floor remains
+		Ray down = new Ray(new Point(0, 0, 50), new Vector(0, 0, -1));
+		assertEquals(new Point(0, 0, 3), bvh.findClosestGeoIntersection(down).point, "wrong hit from above");
+		assertNull(bvh.findClosestGeoIntersection(down, 40), "a hit beyond the maximum distance");
+	}
+	
+	/**
+	 * Test method for {@link Intersectable#findTransparency(Ray, double, double)} and
+	 * {@link Intersectable#isOccluded(Ray, double)}.
+	 */
+	@Test
+	void testFindTransparency()
+	{
+		Geometries geometries = new Geometries(
+				new Sphere(1, new Point(0, 0, 10)).setMaterial(new Material().setKt(0.5)),
+				new Sphere(1, new Point(0, 0, 20)).setMaterial(new Material().setKt(0.5)),
+				new Sphere(1, new Point(0, 0, 30)));
+		Geometries bvh = new Geometries(geometries);
+		bvh.buildBvhTree();
+		Ray ray = new Ray(new Point(0, 0, 0), new Vector(0, 0, 1));
+		
+		for (Geometries geo : List.of(geometries, bvh))
+		{
+			// ============ Equivalence Partitions Tests ==============
+			// TC01: the light passes two sides of a single transparent sphere
+			assertEquals(new Double3(0.25), geo.findTransparency(ray, 15, 0.001), "wrong transparency");
+			assertFalse(geo.isOccluded(ray, 15), "a transparent sphere occludes");
+			
+			// TC02: the light passes two transparent spheres
+			assertEquals(new Double3(0.0625), geo.findTransparency(ray, 25, 0.001), "wrong transparency");
+			
+			// TC03: the light is blocked by an opaque sphere
+			assertSame(Double3.ZERO, geo.findTransparency(ray, 35, 0.001), "an opaque sphere lets light through");
+			assertTrue(geo.isOccluded(ray, 35), "an opaque sphere does not occlude");
+			
+			// TC04: the light is attenuated below the minimal factor
+			assertSame(Double3.ZERO, geo.findTransparency(ray, 25, 0.1), "the light is not blocked");
+			
+			// =============== Boundary Values Tests ==================
+			// TC11: nothing before the maximum distance
+			assertSame(Double3.ONE, geo.findTransparency(ray, 8, 0.001), "light is attenuated before the spheres");
+			assertFalse(geo.isOccluded(ray, 8), "the ray is occluded before the spheres");
+		}
+	}
+	
+	/**
+	 * Test method for the unbounded geometries and the axis-parallel rays in {@link Geometries#buildBvhTree()}.
+	 */
+	@Test
+	void testUnboundedGeometries()
+	{
+		Geometries flat = new Geometries(createGrid(10), new Plane(new Point(-50, 0, 0), new Vector(1, 0, 0)));
+		Geometries bvh = new Geometries(createGrid(10), new Plane(new Point(-50, 0, 0), new Vector(1, 0, 0)));
+		bvh.buildBvhTree();
+		
+		List<Ray> rays = List.of(
+				// ============ Equivalence Partitions Tests ==============
+				// TC01: a ray down through a sphere to the floor
+				new Ray(new Point(0, 0, 50), new Vector(0, 0, -1)),
+				// TC02: a ray along the x axis through a row of spheres, to the wall behind
+				new Ray(new Point(200, 0, 0), new Vector(-1, 0, 0)),
+				// TC03: a ray parallel to the floor, away from the wall
+				new Ray(new Point(-20, 10, -5), new Vector(1, 0, 0)),
+				// =============== Boundary Values Tests ==================
+				// TC11: a ray along the top face of a row of spheres
+				new Ray(new Point(200, 0, 3), new Vector(-1, 0, 0)),
+				// TC12: a ray in the plane of the wall
+				new Ray(new Point(-50, 0, 50), new Vector(0, 0, -1)));
+		
+		for (int i = 0; i < rays.size(); i++)
+		{
+			Ray ray = rays.get(i);
+			List<GeoPoint> expected = flat.findGeoIntersections(ray);
+			List<GeoPoint> actual = bvh.findGeoIntersectionsBVH(ray);
+			assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+						 "BVH intersections differ from the flat list " + i);
+			
+			GeoPoint closest = expected == null ? null : ray.findClosestGeoPoint(expected);
+			GeoPoint actualClosest = bvh.findClosestGeoIntersection(ray);
+			assertEquals(closest == null ? null : closest.point, actualClosest == null ? null : actualClosest.point,
+						 "wrong nearest BVH hit " + i);
+			assertEquals(expected != null, bvh.isOccluded(ray, Double.POSITIVE_INFINITY), "wrong occlusion " + i);
+		}
+	}
+	
+	/**
+	 * Checks that a tree finds the same intersections as the flat list of its primitives.
+	 *
+	 * @param flat    the flat list
+	 * @param bvh     the tree
+	 * @param message the failure message
+	 */
+	private static void assertSameIntersections(Geometries flat, Geometries bvh, String message)
+	{
+		for (int i = 0; i < 50; i++)
+		{
+			Ray ray = new Ray(new Point(-20 + i, -20 + 2 * i, 50), new Vector(2 + i % 3, 1 + i % 5, -8));
+			List<GeoPoint> expected = flat.findGeoIntersections(ray);
+			List<GeoPoint> actual = bvh.findGeoIntersectionsBVH(ray);
+			assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(), message + " " + i);
+			GeoPoint closest = bvh.findClosestGeoIntersection(ray);
+			assertEquals(expected == null ? null : ray.findClosestGeoPoint(expected).point,
+						 closest == null ? null : closest.point, message + " (nearest) " + i);
+		}
+	}
+	
+	/**
+	 * Test method for {@link Geometries#refitBvhTree()}.
+	 */
+	@Test
+	void testRefitBvhTree()
+	{
+		List<Sphere> spheres = new LinkedList<>();
+		for (int i = 0; i < 10; i++)
+			for (int j = 0; j < 10; j++)
+				spheres.add(new Sphere(3, new Point(i * 10, j * 10, 0)));
+		Geometries flat = new Geometries(spheres.toArray(new Intersectable[0]));
+		Geometries bvh = new Geometries(spheres.toArray(new Intersectable[0]));
+		bvh.buildBvhTree();
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the spheres move a little - the boxes follow, the structure is kept
+		for (Sphere sphere : spheres)
+			sphere.setCenter(sphere.getCenter().add(new Vector(1, 2, -1)));
+		BvhStatistics refit = bvh.refitBvhTree();
+		assertEquals("Refit", refit.builder(), "a small move rebuilt the tree");
+		assertEquals(100, refit.primitiveCount(), "wrong amount of primitives in the refitted tree");
+		assertSameIntersections(flat, bvh, "refitted tree intersections differ from the flat list");
+		
+		// TC02: the spheres scatter - the degraded sub-trees are rebuilt
+		int k = 0;
+		for (Sphere sphere : spheres)
+			sphere.setCenter(new Point((k * 37) % 100, (k++ * 53) % 100, 0));
+		BvhStatistics rebuilt = bvh.refitBvhTree();
+		assertEquals("Partially rebuilt", rebuilt.builder(), "a degraded tree was not rebuilt");
+		assertEquals(100, rebuilt.primitiveCount(), "wrong amount of primitives in the rebuilt tree");
+		assertSameIntersections(flat, bvh, "rebuilt tree intersections differ from the flat list");
+		
+		// TC03: geometries added to a built tree are inserted into it
+		Geometries grid = createGrid(10);
+		Geometries added = createGrid(10);
+		added.buildBvhTree();
+		for (int i = 0; i < 20; i++)
+		{
+			Sphere sphere = new Sphere(2, new Point(5 + i * 4, 5 + i * 3, 1));
+			grid.add(sphere);
+			added.add(sphere);
+		}
+		assertTrue(added.hasBvhTree(), "adding geometries dropped the tree");
+		assertSameIntersections(grid, added, "inserted geometries are missing from the tree");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: geometries added to a tree built when the collection was empty
+		Geometries empty = new Geometries();
+		empty.buildBvhTree();
+		empty.add(createGrid(10));
+		assertEquals(100, empty.refitBvhTree().primitiveCount(), "wrong amount of primitives after the first add");
+		assertSameIntersections(createGrid(10), empty, "geometries added to an empty tree are missing");
+	}
+	
+	/**
+	 * Test method for {@link Geometries#buildAccelerator(Accelerator.Type)}.
+	 */
+	@Test
+	void testBuildAccelerator()
+	{
+		for (Accelerator.Type type : List.of(Accelerator.Type.GRID, Accelerator.Type.OCTREE))
+		{
+			Geometries geometries = createGrid(20).buildAccelerator(type);
+			assertEquals(type, geometries.getAcceleratorType(), "wrong type of index");
+			assertFalse(geometries.hasBvhTree(), "the index is a BVH tree");
+			
+			// ============ Equivalence Partitions Tests ==============
+			// TC01: the index finds the same intersections and nearest hits as the flat list
+			assertSameIntersections(createGrid(20), geometries, type + " intersections differ from the flat list");
+			
+			// TC02: the index finds the same intersections as the flat list up to the distance
+			Geometries flat = createGrid(20);
+			for (int i = 0; i < 50; i++)
+			{
+				Ray ray = new Ray(new Point(-20 + i, -20 + 2 * i, 50), new Vector(2 + i % 3, 1 + i % 5, -8));
+				double distance = 40 + i % 20;
+				List<GeoPoint> expected = flat.findGeoIntersections(ray, distance);
+				List<GeoPoint> actual = geometries.findGeoIntersectionsBVH(ray, distance);
+				assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+							 type + " intersections up to the distance differ from the flat list " + i);
+			}
+			
+			// TC03: an opaque sphere blocks the light, and nothing blocks it before the spheres
+			Ray down = new Ray(new Point(0, 0, 50), new Vector(0, 0, -1));
+			assertTrue(geometries.isOccluded(down, 60), type + " a sphere does not occlude");
+			assertFalse(geometries.isOccluded(down, 40), type + " the ray is occluded before the spheres");
+			
+			// TC04: geometries added to a built index are found
+			Geometries grid = createGrid(10);
+			Geometries added = createGrid(10).buildAccelerator(type);
+			for (int i = 0; i < 20; i++)
+			{
+				Sphere sphere = new Sphere(2, new Point(5 + i * 4, 5 + i * 3, 1));
+				grid.add(sphere);
+				added.add(sphere);
+			}
+			assertSameIntersections(grid, added, type + " added geometries are missing from the index");
+			
+			// TC05: refitting moved geometries rebuilds the index of the same kind
+			List<Sphere> spheres = new LinkedList<>();
+			for (int i = 0; i < 10; i++)
+				for (int j = 0; j < 10; j++)
+					spheres.add(new Sphere(3, new Point(i * 10, j * 10, 0)));
+			Geometries moved = new Geometries(spheres.toArray(new Intersectable[0])).buildAccelerator(type);
+			int k = 0;
+			for (Sphere sphere : spheres)
+				sphere.setCenter(new Point((k * 37) % 100, (k++ * 53) % 100, 0));
+			assertNull(moved.refitBvhTree(), type + " the refit reported a BVH tree");
+			assertEquals(type, moved.getAcceleratorType(), type + " the refit replaced the index");
+			assertFalse(moved.hasBvhTree(), type + " the refit built a BVH tree");
+			assertSameIntersections(new Geometries(spheres.toArray(new Intersectable[0])), moved,
+									type + " intersections after the refit differ from the flat list");
+			
+			// =============== Boundary Values Tests ==================
+			// TC11: axis-parallel rays, along faces of the cells and in the plane of a wall
+			Geometries wall = new Geometries(createGrid(10), new Plane(new Point(-50, 0, 0), new Vector(1, 0, 0)))
+					.buildAccelerator(type);
+			flat = new Geometries(createGrid(10), new Plane(new Point(-50, 0, 0), new Vector(1, 0, 0)));
+			for (Ray ray : List.of(new Ray(new Point(200, 0, 0), new Vector(-1, 0, 0)),
+								   new Ray(new Point(200, 0, 3), new Vector(-1, 0, 0)),
+								   new Ray(new Point(40, 200, 0), new Vector(0, -1, 0)),
+								   new Ray(new Point(-50, 0, 50), new Vector(0, 0, -1))))
+			{
+				List<GeoPoint> expected = flat.findGeoIntersections(ray);
+				List<GeoPoint> actual = wall.findGeoIntersectionsBVH(ray);
+				assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+							 type + " axis-parallel intersections differ from the flat list " + ray);
+				assertEquals(ray.findClosestGeoPoint(expected).point, wall.findClosestGeoIntersection(ray).point,
+							 type + " wrong nearest axis-parallel hit " + ray);
+			}
+			
+			// TC12: all the primitives at the same place
+			Geometries stack = new Geometries();
+			for (int i = 0; i < 50; i++)
+				stack.add(new Sphere(1 + i * 0.01, new Point(0, 0, 0)));
+			stack.buildAccelerator(type);
+			assertEquals(100, stack.findGeoIntersectionsBVH(down).size(), type + " wrong amount of intersections");
+			
+			// TC13: an empty index
+			assertNull(new Geometries().buildAccelerator(type).findClosestGeoIntersection(down),
+					   type + " an empty index has a hit");
+		}
+		
+		// TC14: no index
+		Geometries none = createGrid(10);
+		none.buildBvhTree();
+		none.buildAccelerator(Accelerator.Type.NONE);
+		assertFalse(none.hasBvhTree(), "the tree is kept without an index");
+		assertSameIntersections(createGrid(10), none, "intersections without an index differ from the flat list");
+	}
+	
+	/**
+	 * Test method for {@link Geometries#findClosestGeoIntersections(Ray[])}.
+	 */
+	@Test
+	void testFindClosestGeoIntersections()
+	{
+		Geometries flat = createGrid(20);
+		
+		// a coherent bundle from a common origin, as the primary rays of an 8x8 block of pixels
+		Ray[] coherent = new Ray[64];
+		for (int i = 0; i < 64; i++)
+			coherent[i] = new Ray(new Point(60, 60, 100), new Vector(1 + i % 8 * 2, 1 + i / 8 * 2, -50));
+		
+		// rays from different origins in different directions
+		Ray[] scattered = new Ray[30];
+		for (int i = 0; i < 30; i++)
+			scattered[i] = new Ray(new Point(-20 + i * 7, 200 - i * 5, 30), new Vector(1 + i % 4, -3 - i % 3, -2));
+		
+		for (Accelerator.Type type : Accelerator.Type.values())
+		{
+			Geometries geometries = createGrid(20).buildAccelerator(type);
+			
+			// ============ Equivalence Partitions Tests ==============
+			// TC01: a coherent bundle finds the same nearest hits as single rays
+			assertSameClosest(flat, geometries, coherent, type + " wrong nearest hit of a coherent bundle");
+			
+			// TC02: a bundle of diverging rays finds the same nearest hits as single rays
+			assertSameClosest(flat, geometries, scattered, type + " wrong nearest hit of a diverging bundle");
+			
+			// =============== Boundary Values Tests ==================
+			// TC11: a bundle of axis-parallel rays, some of them missing everything
+			Ray[] parallel = {new Ray(new Point(40, 40, 50), new Vector(0, 0, -1)),
+							  new Ray(new Point(40, 40, 50), new Vector(0, 0, 1)),
+							  new Ray(new Point(200, 0, 0), new Vector(-1, 0, 0)),
+							  new Ray(new Point(1000, 1000, 0), new Vector(1, 1, 0))};
+			assertSameClosest(flat, geometries, parallel, type + " wrong nearest hit of an axis-parallel bundle");
+			
+			// TC12: a single ray and an empty bundle
+			assertSameClosest(flat, geometries, new Ray[]{coherent[20]}, type + " wrong nearest hit of a single ray");
+			assertEquals(0, geometries.findClosestGeoIntersections(new Ray[0]).length, type + " hits of no rays");
+		}
+	}
+	
+	/**
+	 * Checks that the nearest hits of a bundle of rays are those of the rays traced one by one.
+	 *
+	 * @param flat       the geometries without an index
+	 * @param geometries the geometries to trace the bundle through
+	 * @param rays       the bundle
+	 * @param message    the message on failure
+	 */
+	private static void assertSameClosest(Geometries flat, Geometries geometries, Ray[] rays, String message)
+	{
+		GeoPoint[] hits = geometries.findClosestGeoIntersections(rays);
+		assertEquals(rays.length, hits.length, message);
+		for (int i = 0; i < rays.length; i++)
+		{
+			GeoPoint expected = flat.findClosestGeoIntersection(rays[i]);
+			if (expected == null)
+				assertNull(hits[i], message + " " + i);
+			else
+				assertEquals(expected.point, hits[i].point, message + " " + i);
+		}
+	}
+}
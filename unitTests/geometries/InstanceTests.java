@@ -0,0 +1,110 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Transform;
+import primitives.Vector;
+
+import java.util.List;
+
+import geometries.Intersectable.GeoPoint;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Instance}.
+ *
+ * @author Yair and Noam
+ */
+class InstanceTests
+{
+	/**
+	 * Test method for {@link Intersectable#findGeoIntersections(Ray)}.
+	 */
+	@Test
+	void testFindGeoIntersections()
+	{
+		Geometries unit = new Geometries(new Sphere(1, new Point(0, 0, 0)));
+		Instance instance = new Instance(unit, Transform.scaling(2).then(Transform.translation(new Vector(10, 0, 0))));
+		Ray ray = new Ray(new Point(0, 0, 0), new Vector(1, 0, 0));
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the ray crosses the moved and scaled sphere
+		List<Point> result = instance.findIntersections(ray);
+		assertNotNull(result, "the ray misses the instance");
+		assertEquals(2, result.size(), "wrong number of points");
+		assertTrue(result.contains(new Point(8, 0, 0)) && result.contains(new Point(12, 0, 0)),
+				   "wrong intersection points");
+		
+		// TC02: the nearest hit is at the distance in the scene, with the normal in the scene
+		GeoPoint closest = instance.findClosestGeoIntersection(ray);
+		assertEquals(new Point(8, 0, 0), closest.point, "wrong nearest hit");
+		assertEquals(new Vector(-1, 0, 0), closest.geometry.getNormal(closest.point), "wrong normal");
+		
+		// TC03: the ray misses the instance, though it crosses the shared geometry in object space
+		assertNull(instance.findIntersections(new Ray(new Point(0, 0, -5), new Vector(0, 0, 1))),
+				   "the ray hits the shared geometry instead of the instance");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: the maximum distance is measured in the scene, not in object space
+		assertEquals(1, instance.findGeoIntersections(ray, 10).size(), "wrong number of points up to a distance");
+		assertNull(instance.findClosestGeoIntersection(ray, 7), "a hit beyond the maximum distance");
+		
+		// TC12: a non-uniform scaling keeps the normals perpendicular to the surface
+		Instance ellipsoid = new Instance(unit, Transform.scaling(1, 4, 1));
+		GeoPoint hit = ellipsoid.findClosestGeoIntersection(new Ray(new Point(5, 2, 0), new Vector(-1, 0, 0)));
+		Vector normal = hit.geometry.getNormal(hit.point);
+		assertEquals(0, normal.dotProduct(new Vector(-hit.point.getY() / 16, hit.point.getX(), 0)), 1e-10,
+					 "the normal is not perpendicular to the ellipsoid");
+	}
+	
+	/**
+	 * Creates a small mesh of triangles around the origin.
+	 *
+	 * @return the mesh
+	 */
+	private static Geometries createMesh()
+	{
+		Geometries mesh = new Geometries();
+		for (int i = 0; i < 5; i++)
+			for (int j = 0; j < 5; j++)
+				mesh.add(new Triangle(new Point(i * 4 - 10, j * 4 - 10, 0), new Point(i * 4 - 7, j * 4 - 10, 1),
+									  new Point(i * 4 - 10, j * 4 - 7, 2)));
+		return mesh;
+	}
+	
+	/**
+	 * Test method for a two-level tree - a BVH tree over instances of shared geometries.
+	 */
+	@Test
+	void testTwoLevelBvh()
+	{
+		Geometries mesh = createMesh();
+		Geometries instances = new Geometries();
+		Geometries copies = new Geometries();
+		for (int i = 0; i < 10; i++)
+		{
+			Transform transform = Transform.rotation(new Vector(0, 0, 1), 10 * i)
+										   .then(Transform.translation(new Vector(30 * i + 5, 0, 0)));
+			instances.add(new Instance(mesh, transform));
+			copies.add(new Instance(createMesh(), transform));
+		}
+		instances.buildBvhTree();
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the shared tree is built once, and the top level tree holds the instances
+		assertEquals(10, instances.getBvhStatistics().primitiveCount(), "wrong amount of instances in the tree");
+		assertTrue(mesh.hasBvhTree(), "the shared tree was not built");
+		
+		// TC02: the two-level tree finds the same nearest hits as separate copies
+		for (int i = 0; i < 40; i++)
+		{
+			Ray ray = new Ray(new Point(-10 + 8 * i, -5 + i % 7, 50), new Vector(1 + i % 3, 2 - i % 5, -10));
+			GeoPoint expected = copies.findClosestGeoIntersection(ray);
+			GeoPoint actual = instances.findClosestGeoIntersection(ray);
+			assertEquals(expected == null ? null : expected.point, actual == null ? null : actual.point,
+						 "wrong nearest hit " + i);
+		}
+	}
+}
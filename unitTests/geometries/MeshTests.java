@@ -0,0 +1,292 @@
+package geometries;
+
+import geometries.Intersectable.GeoPoint;
+import org.junit.jupiter.api.Test;
+import primitives.Double3;
+import primitives.Material;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing Mesh
+ *
+ * @author Yair and Noam
+ */
+class MeshTests
+{
+	/**
+	 * Creates the vertices of a bumpy square grid over the xy plane, (size + 1) x (size + 1) vertices 10 apart.
+	 *
+	 * @param size the amount of squares along each axis
+	 * @return the coordinates of the vertices
+	 */
+	static float[] gridVertices(int size)
+	{
+		float[] vertices = new float[3 * (size + 1) * (size + 1)];
+		for (int j = 0; j <= size; j++)
+			for (int i = 0; i <= size; i++)
+			{
+				int v = 3 * (j * (size + 1) + i);
+				vertices[v] = i * 10;
+				vertices[v + 1] = j * 10;
+				vertices[v + 2] = (i * 7 + j * 3) % 5;
+			}
+		return vertices;
+	}
+
+	/**
+	 * Creates the triangles of a square grid, two per square, wound counterclockwise seen from above.
+	 *
+	 * @param size the amount of squares along each axis
+	 * @return the vertex indices of the triangles
+	 */
+	static int[] gridIndices(int size)
+	{
+		int[] indices = new int[6 * size * size];
+		int t = 0;
+		for (int j = 0; j < size; j++)
+			for (int i = 0; i < size; i++)
+			{
+				int v = j * (size + 1) + i;
+				indices[t++] = v;
+				indices[t++] = v + 1;
+				indices[t++] = v + size + 2;
+				indices[t++] = v;
+				indices[t++] = v + size + 2;
+				indices[t++] = v + size + 1;
+			}
+		return indices;
+	}
+
+	/**
+	 * Creates the same grid as separate triangles.
+	 *
+	 * @param size the amount of squares along each axis
+	 * @return the triangles
+	 */
+	private static Geometries gridTriangles(int size)
+	{
+		float[] vertices = gridVertices(size);
+		int[] indices = gridIndices(size);
+		Geometries triangles = new Geometries();
+		for (int t = 0; t < indices.length; t += 3)
+		{
+			Point[] points = new Point[3];
+			for (int k = 0; k < 3; k++)
+				points[k] = new Point(vertices[3 * indices[t + k]], vertices[3 * indices[t + k] + 1],
+									  vertices[3 * indices[t + k] + 2]);
+			triangles.add(new Triangle(points[0], points[1], points[2]));
+		}
+		return triangles;
+	}
+
+	/**
+	 * Test method for the {@link Mesh#Mesh(float[], int[])} constructor.
+	 */
+	@Test
+	void testConstructor()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: a correct mesh
+		Mesh mesh = new Mesh(gridVertices(4), gridIndices(4));
+		assertEquals(32, mesh.getTriangleCount(), "wrong amount of triangles");
+		mesh.createBox();
+		assertEquals(0, mesh.box.minX, "wrong box");
+		assertEquals(40, mesh.box.maxY, "wrong box");
+
+		// TC02: a triangle refers to a missing vertex
+		assertThrows(IllegalArgumentException.class, () -> new Mesh(gridVertices(1), new int[]{0, 1, 4}),
+					 "a triangle refers to a missing vertex");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: arrays of partial vertices or triangles
+		assertThrows(IllegalArgumentException.class, () -> new Mesh(new float[4], new int[0]),
+					 "a partial vertex");
+		assertThrows(IllegalArgumentException.class, () -> new Mesh(gridVertices(1), new int[]{0, 1}),
+					 "a partial triangle");
+
+		// TC12: an empty mesh
+		Mesh empty = new Mesh(new float[0], new int[0]);
+		assertNull(empty.findGeoIntersections(new Ray(new Point(0, 0, 1), new Vector(0, 0, -1))),
+				   "an empty mesh has intersections");
+	}
+
+	/**
+	 * Test method for {@link Mesh.Face#getNormal(Point)}.
+	 */
+	@Test
+	void testGetNormal()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the normal of the face hit follows the winding of its vertices
+		Mesh mesh = new Mesh(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0}, new int[]{0, 1, 2});
+		GeoPoint hit = mesh.findClosestGeoIntersection(new Ray(new Point(0.2, 0.2, 1), new Vector(0, 0, -1)));
+		assertEquals(new Vector(0, 0, 1), hit.geometry.getNormal(hit.point), "wrong normal of the face");
+	}
+
+	/**
+	 * Test method for {@link Mesh#getNormal(Point)}.
+	 */
+	@Test
+	void testMeshGetNormal()
+	{
+		// a horizontal triangle facing up and a vertical triangle facing +x
+		Mesh mesh = new Mesh(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0, 3, 0, 0, 3, 1, 0, 3, 0, 1},
+							 new int[]{0, 1, 2, 3, 4, 5});
+
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: a point on a triangle gets the normal of that triangle
+		assertEquals(new Vector(0, 0, 1), mesh.getNormal(new Point(0.2, 0.2, 0)), "wrong normal on a triangle");
+		assertEquals(new Vector(1, 0, 0), mesh.getNormal(new Point(3, 0.2, 0.2)), "wrong normal on a triangle");
+
+		// TC02: a point off the mesh gets the normal of the nearest triangle
+		assertEquals(new Vector(1, 0, 0), mesh.getNormal(new Point(2.4, 0.2, 0.3)), "wrong normal off the mesh");
+
+		// TC03: on a bumpy grid, the normal at every hit is the normal of the face hit
+		Mesh grid = new Mesh(gridVertices(8), gridIndices(8));
+		for (int j = 0; j < 16; j++)
+			for (int i = 0; i < 16; i++)
+			{
+				GeoPoint hit = grid.findClosestGeoIntersection(
+						new Ray(new Point(2.3 + i * 5, 1.7 + j * 5, 10), new Vector(0, 0, -1)));
+				assertEquals(hit.geometry.getNormal(hit.point), grid.getNormal(hit.point), "wrong normal on the grid");
+			}
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a point nearest to a vertex of a triangle
+		assertEquals(new Vector(0, 0, 1), mesh.getNormal(new Point(-1, -1, 0.1)), "wrong normal near a vertex");
+
+		// TC12: an empty mesh has no normal
+		assertThrows(IllegalStateException.class, () -> new Mesh(new float[0], new int[0]).getNormal(Point.ZERO),
+					 "an empty mesh has a normal");
+
+		// TC13: a triangle without an area next to the point is passed over
+		Mesh degenerate = new Mesh(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0, 3, 0, 0, 4, 0, 0},
+								   new int[]{0, 1, 2, 3, 4, 4});
+		assertEquals(new Vector(0, 0, 1), degenerate.getNormal(new Point(3.2, 0.1, 0)),
+					 "wrong normal next to a triangle without an area");
+
+		// TC14: a mesh of triangles without an area has no normal
+		assertThrows(IllegalStateException.class,
+					 () -> new Mesh(new float[]{0, 0, 0, 1, 0, 0}, new int[]{0, 1, 1}).getNormal(Point.ZERO),
+					 "a mesh without an area has a normal");
+	}
+
+	/**
+	 * Test method for {@link Mesh#findGeoIntersections(Ray)}.
+	 */
+	@Test
+	void testFindIntersections()
+	{
+		Mesh mesh = new Mesh(gridVertices(20), gridIndices(20));
+		Geometries triangles = gridTriangles(20);
+
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: rays through the insides of triangles hit the mesh where they hit the separate triangles
+		for (int i = 0; i < 50; i++)
+		{
+			Ray ray = new Ray(new Point(3.3 + i * 3.71, 1.1 + i * 2.93, 30), new Vector(0.1 * (i % 3), 0.2, -1));
+			GeoPoint expected = triangles.findClosestGeoIntersection(ray);
+			GeoPoint actual = mesh.findClosestGeoIntersection(ray);
+			assertEquals(expected.point, actual.point, "wrong nearest hit " + i);
+			assertEquals(expected.geometry.getNormal(expected.point), actual.geometry.getNormal(actual.point),
+						 "wrong normal " + i);
+		}
+
+		// TC02: a ray along the grid crosses the bumps several times
+		Ray along = new Ray(new Point(-10, 55.3, 2.13), new Vector(1, 0.013, 0.001));
+		List<GeoPoint> all = mesh.findGeoIntersections(along);
+		assertEquals(triangles.findGeoIntersections(along).size(), all.size(), "wrong amount of intersections");
+
+		// TC03: a ray beside the mesh
+		assertNull(mesh.findGeoIntersections(new Ray(new Point(300, 300, 10), new Vector(0, 0, -1))),
+				   "a ray beside the mesh hits it");
+
+		// TC04: the hits beyond the maximum distance are ignored
+		Ray down = new Ray(new Point(33, 44, 10), new Vector(0, 0, -1));
+		assertNull(mesh.findClosestGeoIntersection(down, 5), "a hit beyond the maximum distance");
+		assertNotNull(mesh.findClosestGeoIntersection(down, 20), "a hit within the maximum distance is missed");
+
+		// TC05: an opaque mesh blocks the light, a transparent one attenuates it once for every crossing
+		assertTrue(mesh.isOccluded(along, 1000), "an opaque mesh does not occlude");
+		mesh.setMaterial(new Material().setKt(0.5));
+		assertEquals(new Double3(Math.pow(0.5, all.size())), mesh.findTransparency(along, 1000, 0),
+					 "wrong transparency");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a ray through an edge shared by two triangles, and through a vertex, hits the mesh
+		assertNotNull(mesh.findClosestGeoIntersection(new Ray(new Point(15, 15, 10), new Vector(0, 0, -1))),
+					  "a ray through a shared edge passes through the mesh");
+		assertNotNull(mesh.findClosestGeoIntersection(new Ray(new Point(20, 30, 10), new Vector(0, 0, -1))),
+					  "a ray through a vertex passes through the mesh");
+
+		// TC12: a ray parallel to a flat triangle
+		Mesh flat = new Mesh(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0}, new int[]{0, 1, 2});
+		assertNull(flat.findGeoIntersections(new Ray(new Point(-1, 0.2, 0), new Vector(1, 0, 0))),
+				   "a ray in the plane of the triangle hits it");
+
+		// TC13: a mesh in a geometries collection with a BVH tree
+		Geometries scene = new Geometries(new Mesh(gridVertices(20), gridIndices(20)));
+		scene.buildBvhTree();
+		assertEquals(mesh.findClosestGeoIntersection(down).point, scene.findClosestGeoIntersection(down).point,
+					 "wrong nearest hit through the tree");
+	}
+
+	/**
+	 * Test method for {@link Mesh#write(Path)} and {@link Mesh#map(Path)}.
+	 *
+	 * @throws Exception if a file cannot be created
+	 */
+	@Test
+	void testWriteMap() throws Exception
+	{
+		Path directory = Files.createTempDirectory("mesh");
+		Mesh mesh = new Mesh(gridVertices(20), gridIndices(20));
+		Path file = directory.resolve("grid.mesh");
+		mesh.write(file);
+		Mesh mapped = Mesh.map(file);
+
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the mapped mesh has the same box, triangles and hits as the mesh it was written from
+		mapped.createBox();
+		mesh.createBox();
+		assertEquals(mesh.box.maxX, mapped.box.maxX, "wrong box of the mapped mesh");
+		assertEquals(mesh.getTriangleCount(), mapped.getTriangleCount(), "wrong amount of triangles");
+		assertEquals(mesh.getVertex(7, 2), mapped.getVertex(7, 2), "wrong vertex");
+		for (int i = 0; i < 20; i++)
+		{
+			Ray ray = new Ray(new Point(3.3 + i * 9.1, 1.1 + i * 8.3, 30), new Vector(0.1, 0.2, -1));
+			assertEquals(mesh.findClosestGeoIntersection(ray).point, mapped.findClosestGeoIntersection(ray).point,
+						 "wrong nearest hit of the mapped mesh " + i);
+		}
+
+		// TC02: a file that is not a mesh file
+		Path text = Files.writeString(directory.resolve("text.mesh"), "not a mesh, only some text");
+		assertThrows(IllegalArgumentException.class, () -> Mesh.map(text), "a text file is mapped");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a truncated mesh file
+		Path truncated = directory.resolve("truncated.mesh");
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(truncated, java.util.Arrays.copyOf(bytes, bytes.length - 4));
+		assertThrows(IllegalArgumentException.class, () -> Mesh.map(truncated), "a truncated file is mapped");
+
+		// TC12: an empty mesh
+		Path empty = directory.resolve("empty.mesh");
+		new Mesh(new float[0], new int[0]).write(empty);
+		assertNull(Mesh.map(empty).findGeoIntersections(new Ray(new Point(0, 0, 1), new Vector(0, 0, -1))),
+				   "an empty mapped mesh has intersections");
+
+		// a mapped file cannot be deleted on every system while it is mapped
+		directory.toFile().deleteOnExit();
+		for (Path path : List.of(file, text, truncated, empty))
+			path.toFile().deleteOnExit();
+	}
+}
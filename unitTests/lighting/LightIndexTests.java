@@ -0,0 +1,65 @@
+package lighting;
+
+import org.junit.jupiter.api.Test;
+import primitives.Color;
+import primitives.Point;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing LightIndex
+ *
+ * @author Yair and Noam
+ */
+class LightIndexTests
+{
+	/**
+	 * Collects the lights an index finds for a point.
+	 *
+	 * @param index the index
+	 * @param point the point
+	 * @return the lights found
+	 */
+	private static List<LightSource> findLights(LightIndex index, Point point)
+	{
+		List<LightSource> found = new ArrayList<>();
+		index.forEachLight(point, found::add);
+		return found;
+	}
+
+	/**
+	 * Test method for {@link LightIndex#forEachLight(Point, java.util.function.Consumer)}.
+	 */
+	@Test
+	void testForEachLight()
+	{
+		// a row of 50 lights 10 apart, each reaching 9.9 units for a cutoff of 1, and a directional light
+		List<LightSource> lights = new ArrayList<>();
+		for (int i = 0; i < 50; i++)
+			lights.add(new PointLight(new Color(100, 100, 100), new Point(10 * i, 0, 0)).setKl(10));
+		DirectionalLight sun = new DirectionalLight(new Color(50, 50, 50), new Vector(0, 0, -1));
+		lights.add(sun);
+		LightIndex index = new LightIndex(lights, 1);
+
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: a point between two lights meets both of them and the directional light
+		assertEquals(Set.of(lights.get(20), lights.get(21), sun), Set.copyOf(findLights(index, new Point(205, 0, 0))),
+					 "wrong lights found between two lights");
+
+		// TC02: a point near a single light
+		assertEquals(Set.of(lights.get(7), sun), Set.copyOf(findLights(index, new Point(70, 3, 4))),
+					 "wrong lights found near a light");
+
+		// TC03: a point far from all the point lights meets only the directional light
+		assertEquals(List.of(sun), findLights(index, new Point(200, 50, 0)), "wrong lights found far away");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a point in the box of a sphere of influence but out of the sphere
+		assertEquals(List.of(sun), findLights(index, new Point(-8, 8, 0)), "a light found beyond its radius");
+	}
+}
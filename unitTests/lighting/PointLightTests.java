@@ -0,0 +1,82 @@
+package lighting;
+
+import org.junit.jupiter.api.Test;
+import primitives.Color;
+import primitives.Point;
+import primitives.Vector;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static primitives.Util.isZero;
+
+/**
+ * Testing PointLight
+ *
+ * @author Yair and Noam
+ */
+class PointLightTests
+{
+	/**
+	 * Test method for {@link PointLight#generateBeamPoints(Point, Vector, Vector, double, int)}.
+	 */
+	@Test
+	void testGenerateBeamPoints()
+	{
+		PointLight light = new PointLight(new Color(100, 100, 100), new Point(0, 0, 10));
+		Point center = new Point(1, 2, 3);
+		Vector horizontal = new Vector(1, 0, 0);
+		Vector vertical = new Vector(0, 1, 0);
+
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the points lie on the disk, and a quarter of them within half its radius - the disk area
+		// there - as every cell of the stratified grid holds a single point
+		List<Point> beam = light.generateBeamPoints(center, horizontal, vertical, 4, 64);
+		assertEquals(64, beam.size(), "wrong amount of points");
+		int inner = 0;
+		for (Point p : beam)
+		{
+			assertTrue(isZero(p.getZ() - 3), "a point off the plane of the disk");
+			double distance = p.distance(center);
+			assertTrue(distance <= 4, "a point out of the disk");
+			if (distance < 2)
+				inner++;
+		}
+		assertEquals(16, inner, "the points are not spread evenly over the disk");
+
+		// TC02: a budget that is not a square gives the largest square within it
+		assertEquals(36, light.generateBeamPoints(center, horizontal, vertical, 4, 48).size(),
+					 "wrong amount of points");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a budget of a single point
+		assertEquals(1, light.generateBeamPoints(center, horizontal, vertical, 4, 1).size(),
+					 "wrong amount of points");
+	}
+
+	/**
+	 * Test method for {@link PointLight#getInfluenceRadius(double)}.
+	 */
+	@Test
+	void testGetInfluenceRadius()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: at the radius of a quadratically attenuated light, its luminance is the cutoff
+		PointLight light = new PointLight(new Color(100, 100, 100), new Point(0, 0, 0)).setKl(0.1).setKq(0.01);
+		double radius = light.getInfluenceRadius(0.5);
+		assertEquals(0.5, light.getIntensity(new Point(radius, 0, 0)).luminance(), 1e-9, "wrong radius");
+
+		// TC02: the same for a linearly attenuated light
+		PointLight linear = new PointLight(new Color(100, 100, 100), new Point(0, 0, 0)).setKl(0.1);
+		assertEquals(1990, linear.getInfluenceRadius(0.5), 1e-9, "wrong radius of a linear light");
+
+		// =============== Boundary Values Tests ==================
+		// TC11: a light that is not attenuated by distance, or no cutoff, reaches everywhere
+		assertEquals(Double.POSITIVE_INFINITY, new PointLight(new Color(100, 100, 100), new Point(0, 0, 0))
+				.getInfluenceRadius(0.5), "an unattenuated light has a radius");
+		assertEquals(Double.POSITIVE_INFINITY, light.getInfluenceRadius(0), "a radius without a cutoff");
+
+		// TC12: a light dimmer than the cutoff at its own position
+		assertEquals(0, light.getInfluenceRadius(200), "a negligible light has a radius");
+	}
+}
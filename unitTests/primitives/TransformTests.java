@@ -0,0 +1,78 @@
+package primitives;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link primitives.Transform}.
+ *
+ * @author Yair and Noam
+ */
+class TransformTests
+{
+	/**
+	 * Test method for {@link primitives.Transform#transform(primitives.Point)}.
+	 */
+	@Test
+	void testTransformPoint()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: translation
+		assertEquals(new Point(2, 4, 6), Transform.translation(new Vector(1, 2, 3)).transform(new Point(1, 2, 3)),
+					 "wrong translation");
+		
+		// TC02: rotation by 90 degrees around the z axis
+		Point rotated = Transform.rotation(new Vector(0, 0, 1), 90).transform(new Point(1, 0, 5));
+		assertEquals(0, rotated.distance(new Point(0, 1, 5)), 1e-10, "wrong rotation");
+		
+		// TC03: scaling, then translation - the order of the combination matters
+		Transform transform = Transform.scaling(2).then(Transform.translation(new Vector(1, 0, 0)));
+		assertEquals(new Point(3, 2, 2), transform.transform(new Point(1, 1, 1)), "wrong combination");
+		
+		// TC04: the inverse cancels the transformation
+		Transform complex = Transform.rotation(new Vector(1, 1, 0), 30)
+									 .then(Transform.scaling(1, 2, 3))
+									 .then(Transform.translation(new Vector(-4, 5, 6)));
+		Point p = new Point(7, -8, 9);
+		assertEquals(0, complex.inverseTransform(complex.transform(p)).distance(p), 1e-10, "wrong inverse");
+		assertEquals(0, complex.inverse().transform(complex.transform(p)).distance(p), 1e-10, "wrong inverse");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: the identity
+		assertEquals(p, Transform.IDENTITY.transform(p), "the identity moved a point");
+		
+		// TC12: scaling by zero
+		assertThrows(IllegalArgumentException.class, () -> Transform.scaling(1, 0, 1), "scaling by zero");
+	}
+	
+	/**
+	 * Test method for {@link primitives.Transform#transform(primitives.Vector)}.
+	 */
+	@Test
+	void testTransformVector()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: a translation does not move a direction
+		assertEquals(new Vector(1, 2, 3), Transform.translation(new Vector(5, 5, 5)).transform(new Vector(1, 2, 3)),
+					 "a translation moved a vector");
+		
+		// TC02: a scaling changes the length
+		assertEquals(new Vector(2, 0, 0), Transform.scaling(2).transform(new Vector(1, 0, 0)), "wrong vector scaling");
+	}
+	
+	/**
+	 * Test method for {@link primitives.Transform#transformNormal(primitives.Vector)}.
+	 */
+	@Test
+	void testTransformNormal()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: under a non-uniform scaling the normal stays perpendicular to the transformed surface
+		Transform transform = Transform.scaling(1, 4, 1);
+		Vector tangent = transform.transform(new Vector(1, -1, 0));
+		Vector normal = transform.transformNormal(new Vector(1, 1, 0));
+		assertEquals(0, normal.dotProduct(tangent), 1e-10, "the normal is not perpendicular to the surface");
+		assertEquals(1, normal.length(), 1e-10, "the normal is not normalized");
+	}
+}
@@ -1,11 +1,19 @@
 package renderer;
 
 import org.junit.jupiter.api.Test;
+import primitives.Color;
 import primitives.Point;
 import primitives.Ray;
+import primitives.Sampler;
 import primitives.Vector;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Testing Camera Class
@@ -58,4 +66,459 @@ class CameraTests
 		
 	}
 	
-}
\ No newline at end of file
+	
+	/**
+	 * An image writer that keeps the colors written to every pixel in memory, and counts the writes.
+	 */
+	private static class RecordingImageWriter extends ImageWriter
+	{
+		/**
+		 * The colors written, by row and column
+		 */
+		final java.awt.Color[][] colors;
+		
+		/**
+		 * The amount of writes to every pixel, by row and column
+		 */
+		final int[][] writes;
+		
+		/**
+		 * Constructs the writer.
+		 *
+		 * @param nX amount of pixels by width
+		 * @param nY amount of pixels by height
+		 */
+		RecordingImageWriter(int nX, int nY)
+		{
+			super("recording", nX, nY);
+			colors = new java.awt.Color[nY][nX];
+			writes = new int[nY][nX];
+		}
+		
+		/**
+		 * The amount of times the image was written out
+		 */
+		int flushes = 0;
+		
+		/**
+		 * The amount of rays traced when the image was written out for the first time
+		 */
+		int raysAtFirstFlush = -1;
+		
+		/**
+		 * The counter of the traced rays, null if they are not counted
+		 */
+		AtomicInteger rays = null;
+		
+		/**
+		 * Counts the image writes instead of writing a file.
+		 */
+		@Override
+		public void writeToImage()
+		{
+			if (flushes++ == 0 && rays != null)
+				raysAtFirstFlush = rays.get();
+		}
+		
+		/**
+		 * Records the color of a pixel.
+		 *
+		 * @param xIndex X axis index of the pixel
+		 * @param yIndex Y axis index of the pixel
+		 * @param color  final color of the pixel
+		 */
+		@Override
+		public synchronized void writePixel(int xIndex, int yIndex, Color color)
+		{
+			colors[yIndex][xIndex] = color.getColor();
+			writes[yIndex][xIndex]++;
+		}
+	}
+	
+	/**
+	 * Renders an image whose every pixel is colored by the direction of its ray.
+	 *
+	 * @param nX       amount of pixels by width
+	 * @param nY       amount of pixels by height
+	 * @param threads  the number of threads
+	 * @param tileSize the side of a tile
+	 * @return the writer holding the image
+	 */
+	private static RecordingImageWriter renderDirections(int nX, int nY, int threads, int tileSize)
+	{
+		RecordingImageWriter writer = new RecordingImageWriter(nX, nY);
+		new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(nX, nY).setVPDistance(10)
+				.setImageWriter(writer)
+				.setRayTracer(renderDirectionsTracer())
+				.setMultithreading(threads).setDebugPrint(0).setTileSize(tileSize)
+				.renderImage();
+		return writer;
+	}
+	
+	/**
+	 * Test method for {@link Camera#renderImage()} with tiles and threads.
+	 */
+	@Test
+	void testRenderImageTiles()
+	{
+		RecordingImageWriter sequential = renderDirections(37, 23, 1, 16);
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: every pixel of a non-square image is rendered once, through its own ray
+		for (int row = 0; row < 23; row++)
+			for (int col = 0; col < 37; col++)
+			{
+				assertEquals(1, sequential.writes[row][col], "pixel not rendered exactly once");
+				Vector dir = new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+						.setVPSize(37, 23).setVPDistance(10).constructRay(37, 23, col, row).getDir();
+				assertEquals(new Color(128 + 100 * dir.getX(), 128 + 100 * dir.getY(), 128 + 100 * dir.getZ())
+									 .getColor(), sequential.colors[row][col], "wrong pixel color");
+			}
+		
+		// TC02: several threads render the same image
+		RecordingImageWriter parallel = renderDirections(37, 23, 3, 5);
+		for (int row = 0; row < 23; row++)
+		{
+			for (int col = 0; col < 37; col++)
+				assertEquals(1, parallel.writes[row][col], "pixel not rendered exactly once by the threads");
+			assertArrayEquals(sequential.colors[row], parallel.colors[row], "the threads rendered a different image");
+		}
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: single pixel tiles, and a tile larger than the image
+		assertArrayEquals(sequential.colors[5], renderDirections(37, 23, 2, 1).colors[5], "wrong single pixel tiles");
+		assertArrayEquals(sequential.colors[5], renderDirections(37, 23, 2, 100).colors[5], "wrong single tile");
+		
+		// TC12: no threads, and no tile
+		Camera camera = new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0));
+		assertThrows(IllegalArgumentException.class, () -> camera.setMultithreading(0), "zero threads");
+		assertThrows(IllegalArgumentException.class, () -> camera.setTileSize(0), "zero tile size");
+	}
+	
+	/**
+	 * Test method for {@link PixelManager#createTiles(int, int, int)}.
+	 */
+	@Test
+	void testCreateTiles()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the tiles cover the image exactly, in Morton order
+		List<PixelManager.Tile> tiles = PixelManager.createTiles(10, 7, 4);
+		assertEquals(List.of(new PixelManager.Tile(0, 0, 4, 4), new PixelManager.Tile(4, 0, 8, 4),
+							 new PixelManager.Tile(0, 4, 4, 7), new PixelManager.Tile(4, 4, 8, 7),
+							 new PixelManager.Tile(8, 0, 10, 4), new PixelManager.Tile(8, 4, 10, 7)),
+					 tiles, "wrong tiles");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: a single tile
+		assertEquals(List.of(new PixelManager.Tile(0, 0, 3, 2)), PixelManager.createTiles(3, 2, 16),
+					 "wrong single tile");
+	}
+	
+	/**
+	 * Test method for {@link Camera#getProgress()}.
+	 */
+	@Test
+	void testGetProgress()
+	{
+		Camera camera = new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(20, 10).setVPDistance(10)
+				.setImageWriter(new RecordingImageWriter(20, 10))
+				.setMultithreading(4).setDebugPrint(0).setTileSize(3);
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: nothing rendered yet
+		assertNull(camera.getProgress(), "progress before rendering");
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the progress polled while rendering is within the image
+		camera.setRayTracer(new RayTracerBase(null)
+		{
+			@Override
+			public Color traceRay(Ray ray)
+			{
+				RenderProgress progress = camera.getProgress();
+				assertTrue(progress.pixelsDone() >= 0 && progress.pixelsDone() < 200, "wrong progress while rendering");
+				return Color.BLACK;
+			}
+		}).renderImage();
+		
+		// TC02: the whole image is done
+		RenderProgress progress = camera.getProgress();
+		assertEquals(200, progress.pixelsDone(), "wrong amount of pixels done");
+		assertEquals(200, progress.totalPixels(), "wrong amount of pixels");
+		assertEquals(1, progress.fraction(), 1e-9, "wrong fraction done");
+		assertEquals(0, progress.etaSeconds(), 1e-9, "time left after the rendering");
+		assertTrue(progress.pixelsPerSecond() > 0, "no rendering rate");
+	}
+	
+	/**
+	 * Test method for {@link Camera#setRenderMode(Camera.RenderMode)} and
+	 * {@link Camera#setTileListener(TileListener)}.
+	 */
+	@Test
+	void testRenderModeVirtualThreads()
+	{
+		RecordingImageWriter sequential = renderDirections(37, 23, 1, 16);
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the virtual threads render the same image, and every tile reaches the listener once, from the
+		// writer thread
+		RecordingImageWriter writer = new RecordingImageWriter(37, 23);
+		int[][] received = new int[23][37];
+		Set<String> listenerThreads = ConcurrentHashMap.newKeySet();
+		Camera camera = new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(37, 23).setVPDistance(10)
+				.setImageWriter(writer)
+				.setMultithreading(3).setDebugPrint(0).setTileSize(5)
+				.setRenderMode(Camera.RenderMode.VIRTUAL_THREADS)
+				.setTileListener((x0, y0, width, height, colors) ->
+				{
+					listenerThreads.add(Thread.currentThread().getName());
+					assertEquals(width * height, colors.length, "wrong amount of tile colors");
+					for (int row = y0; row < y0 + height; row++)
+						for (int col = x0; col < x0 + width; col++)
+							received[row][col]++;
+				});
+		camera.setRayTracer(renderDirectionsTracer()).renderImage();
+		for (int row = 0; row < 23; row++)
+		{
+			for (int col = 0; col < 37; col++)
+			{
+				assertEquals(1, writer.writes[row][col], "pixel not written exactly once");
+				assertEquals(1, received[row][col], "pixel not passed to the listener exactly once");
+			}
+			assertArrayEquals(sequential.colors[row], writer.colors[row], "the virtual threads rendered a different image");
+		}
+		assertEquals(Set.of("TilePipeline writer"), listenerThreads, "the listener ran on render threads");
+		
+		// TC02: a slow listener does not stall the tracing - all the pixels are traced while it handles the first tile
+		long[] tracedWhileWriting = {-1};
+		camera.setTileListener((x0, y0, width, height, colors) ->
+		{
+			if (tracedWhileWriting[0] >= 0)
+				return;
+			try
+			{
+				Thread.sleep(500);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			tracedWhileWriting[0] = camera.getProgress().pixelsDone();
+		}).renderImage();
+		assertEquals(37 * 23, tracedWhileWriting[0], "the tracing waited for the listener");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: a failing tracer fails the rendering
+		camera.setTileListener(null).setRayTracer(new RayTracerBase(null)
+		{
+			@Override
+			public Color traceRay(Ray ray)
+			{
+				throw new IllegalStateException("trace failed");
+			}
+		});
+		assertThrows(IllegalStateException.class, camera::renderImage, "a failed tile was ignored");
+	}
+	
+	/**
+	 * Creates a ray tracer coloring every ray by its direction.
+	 *
+	 * @return the ray tracer
+	 */
+	private static RayTracerBase renderDirectionsTracer()
+	{
+		return new RayTracerBase(null)
+		{
+			@Override
+			public Color traceRay(Ray ray)
+			{
+				Vector dir = ray.getDir();
+				return new Color(128 + 100 * dir.getX(), 128 + 100 * dir.getY(), 128 + 100 * dir.getZ());
+			}
+		};
+	}
+	
+	/**
+	 * Creates a ray tracer seeing a white half-plane on a black background, separated by a slanted edge on the
+	 * view plane at distance 10, and counting the rays it traces.
+	 *
+	 * @param rays the counter of the traced rays
+	 * @return the ray tracer
+	 */
+	private static RayTracerBase edgeTracer(AtomicInteger rays)
+	{
+		return new RayTracerBase(null)
+		{
+			@Override
+			public Color traceRay(Ray ray)
+			{
+				rays.incrementAndGet();
+				Vector dir = ray.getDir();
+				double x = dir.getX() * 10 / -dir.getZ(), y = dir.getY() * 10 / -dir.getZ();
+				return x > 0.37 * y + 0.13 ? new Color(255, 255, 255) : Color.BLACK;
+			}
+		};
+	}
+	
+	/**
+	 * Test method for the seeding of the {@link primitives.Sampler} streams by {@link Camera#renderImage()}.
+	 */
+	@Test
+	void testReproducibleSampling()
+	{
+		// a tracer whose colors are drawn from the sampling stream
+		RayTracerBase noise = new RayTracerBase(null)
+		{
+			@Override
+			public Color traceRay(Ray ray)
+			{
+				SplittableRandom random = Sampler.current();
+				return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+			}
+		};
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the threads draw the same numbers for every pixel as a single thread, and not the same for all
+		RecordingImageWriter[] images = new RecordingImageWriter[2];
+		int[] threads = {1, 3};
+		for (int k = 0; k < 2; k++)
+		{
+			images[k] = new RecordingImageWriter(37, 23);
+			new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+					.setVPSize(37, 23).setVPDistance(10)
+					.setImageWriter(images[k]).setRayTracer(noise)
+					.setMultithreading(threads[k]).setDebugPrint(0).setTileSize(5)
+					.renderImage();
+		}
+		for (int row = 0; row < 23; row++)
+			assertArrayEquals(images[0].colors[row], images[1].colors[row], "the threads drew different numbers");
+		assertNotEquals(images[0].colors[0][0], images[0].colors[22][36], "the pixels drew the same numbers");
+	}
+	
+	/**
+	 * Test method for {@link Camera#setAdaptiveSupersampling(int)}.
+	 */
+	@Test
+	void testAdaptiveSupersampling()
+	{
+		AtomicInteger rays = new AtomicInteger();
+		RecordingImageWriter adaptive = new RecordingImageWriter(16, 16);
+		new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(16, 16).setVPDistance(10)
+				.setImageWriter(adaptive).setRayTracer(edgeTracer(rays))
+				.setAdaptiveSupersampling(3).setColorThreshold(1)
+				.renderImage();
+		
+		// the reference - every pixel averaged over a uniform 8x8 sampling
+		Camera reference = new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(16, 16).setVPDistance(10);
+		RayTracerBase tracer = edgeTracer(new AtomicInteger());
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the pixels on the edge get the color of the part of the pixel the half-plane covers
+		for (int row = 0; row < 16; row++)
+			for (int col = 0; col < 16; col++)
+			{
+				double expected = 0;
+				for (int i = 0; i < 8; i++)
+					for (int j = 0; j < 8; j++)
+						expected += tracer.traceRay(reference.constructRay(128, 128, col * 8 + j, row * 8 + i))
+								.getColor().getRed() / 64d;
+				assertEquals(expected, adaptive.colors[row][col].getRed(), 20, "wrong edge pixel " + col + "," + row);
+			}
+		
+		// TC02: only the pixels on the edge are refined - half the rays of a uniform 4x4 sampling, for the quality of 8x8
+		assertTrue(rays.get() < 16 * 256 / 2, "too many rays: " + rays.get());
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: a uniform image is never refined - a ray through every pixel center and every shared corner
+		AtomicInteger uniformRays = new AtomicInteger();
+		new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(16, 16).setVPDistance(10)
+				.setImageWriter(new RecordingImageWriter(16, 16))
+				.setRayTracer(new RayTracerBase(null)
+				{
+					@Override
+					public Color traceRay(Ray ray)
+					{
+						uniformRays.incrementAndGet();
+						return Color.BLACK;
+					}
+				})
+				.setAdaptiveSupersampling(3).setTileSize(16)
+				.renderImage();
+		assertEquals(16 * 16 + 17 * 17, uniformRays.get(), "a uniform image was refined");
+		
+		// TC12: a negative depth
+		assertThrows(IllegalArgumentException.class,
+					 () -> new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0)).setAdaptiveSupersampling(-1),
+					 "a negative supersampling depth");
+	}
+	
+	/**
+	 * Test method for {@link Camera#renderProgressive(int, double, boolean)}.
+	 */
+	@Test
+	void testRenderProgressive()
+	{
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the first pass traces a ray per 8x8 block, and the passes refine until the edge pixels converge
+		AtomicInteger rays = new AtomicInteger();
+		RecordingImageWriter writer = new RecordingImageWriter(32, 32);
+		writer.rays = rays;
+		Camera camera = new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(32, 32).setVPDistance(10)
+				.setImageWriter(writer).setRayTracer(edgeTracer(rays));
+		camera.renderProgressive(64, 1, true);
+		assertEquals(16, writer.raysAtFirstFlush, "the first pass is not at 1/8 resolution");
+		for (int row = 0; row < 32; row++)
+			for (int col = 0; col < 32; col++)
+				assertNotNull(writer.colors[row][col], "a pixel was not filled");
+		assertTrue(writer.flushes > 4, "no refinement passes");
+		assertTrue(rays.get() > 32 * 32 * 4, "the edge pixels were not refined");
+		assertTrue(rays.get() < 32 * 32 * 16, "the flat pixels were refined: " + rays.get());
+		
+		// TC02: with several threads, the same samples are taken
+		AtomicInteger parallelRays = new AtomicInteger();
+		RecordingImageWriter parallel = new RecordingImageWriter(32, 32);
+		new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(32, 32).setVPDistance(10)
+				.setImageWriter(parallel).setRayTracer(edgeTracer(parallelRays))
+				.setMultithreading(3).setDebugPrint(0).setTileSize(5)
+				.renderProgressive(64, 1, false);
+		assertEquals(rays.get(), parallelRays.get(), "the threads took different samples");
+		for (int row = 0; row < 32; row++)
+			assertArrayEquals(writer.colors[row], parallel.colors[row], "the threads rendered a different image");
+		assertEquals(0, parallel.flushes, "the passes were written out");
+		
+		// =============== Boundary Values Tests ==================
+		// TC11: a flat image converges at the least amount of samples
+		AtomicInteger flatRays = new AtomicInteger();
+		new Camera(ZERO_POINT, new Vector(0, 0, -1), new Vector(0, -1, 0))
+				.setVPSize(12, 10).setVPDistance(10)
+				.setImageWriter(new RecordingImageWriter(12, 10))
+				.setRayTracer(new RayTracerBase(null)
+				{
+					@Override
+					public Color traceRay(Ray ray)
+					{
+						flatRays.incrementAndGet();
+						return Color.BLACK;
+					}
+				})
+				.renderProgressive(64, 0, false);
+		assertEquals(12 * 10 * 4, flatRays.get(), "a flat image was refined beyond the least samples");
+		
+		// TC12: a single sample per pixel
+		rays.set(0);
+		camera.renderProgressive(1, 0, false);
+		assertEquals(32 * 32, rays.get(), "wrong amount of rays for a single sample");
+		
+		// TC13: no samples
+		assertThrows(IllegalArgumentException.class, () -> camera.renderProgressive(0, 1, false), "no samples");
+	}
+}
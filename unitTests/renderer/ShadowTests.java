@@ -1,20 +1,20 @@
 package renderer;
 
+import geometries.Accelerator;
+import geometries.Geometries;
 import geometries.Intersectable;
 import geometries.Sphere;
 import geometries.Triangle;
 import lighting.*;
 import org.junit.jupiter.api.Test;
-import primitives.Color;
-import primitives.Material;
-import primitives.Point;
-import primitives.Vector;
+import primitives.*;
 import scene.Scene;
 
 import java.util.List;
 
 import static java.awt.Color.BLUE;
 import static java.awt.Color.WHITE;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Testing basic shadows
@@ -38,6 +38,57 @@ public class ShadowTests
 			.setVPDistance(1000)                                                                       //
 			.setRayTracer(new RayTracerBasic(scene));
 	
+	/**
+	 * A wrapper of geometries that counts the shadow rays traced through them
+	 */
+	private static final class CountingGeometries extends Intersectable
+	{
+		/**
+		 * The wrapped geometries
+		 */
+		private final Geometries inner;
+		
+		/**
+		 * The amount of shadow rays traced so far
+		 */
+		private int shadowRays = 0;
+		
+		/**
+		 * Wraps the given geometries.
+		 *
+		 * @param inner the geometries
+		 */
+		CountingGeometries(Geometries inner)
+		{
+			this.inner = inner;
+		}
+		
+		@Override
+		protected void createBox()
+		{
+			inner.createBox();
+			box = inner.box;
+		}
+		
+		@Override
+		protected List<GeoPoint> findGeoIntersectionsHelper(Ray ray, double maxDistance)
+		{
+			return inner.findGeoIntersections(ray, maxDistance);
+		}
+		
+		@Override
+		protected Double3 findTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK)
+		{
+			shadowRays++;
+			Double3 transparency = inner.findTransparency(ray, maxDistance, minK);
+			if (transparency == Double3.ZERO)
+				return Double3.ZERO;
+			
+			ktr = ktr.product(transparency);
+			return ktr.lowerThan(minK) ? Double3.ZERO : ktr;
+		}
+	}
+	
 	/**
 	 * Helper function for the tests in this module
 	 */
@@ -65,6 +116,75 @@ public class ShadowTests
 							 new Point(-100, -100, 200));
 	}
 	
+	/**
+	 * Produce a picture of a sphere and triangle with a soft shadow, sampled adaptively - the full beam of
+	 * shadow rays is traced only in the penumbra
+	 */
+	@Test
+	public void sphereTriangleSoftAdaptive()
+	{
+		camera.setRayTracer(new RayTracerBasic(scene).setSoftShadow(true).setAdaptiveShadow(true));
+		sphereTriangleHelper("shadowSphereTriangleSoftAdaptive", //
+							 new Triangle(new Point(-40, -70, 0), new Point(-70, -40, 0), new Point(-68, -68, -4)), //
+							 new Point(-100, -100, 200));
+	}
+	
+	/**
+	 * Test method for {@link RayTracerBasic#setAdaptiveShadow(boolean)}: the soft shadow of the sphere-triangle
+	 * scene sampled adaptively agrees with the full beam, for fewer shadow rays.
+	 */
+	@Test
+	public void sphereTriangleSoftAdaptiveAgrees()
+	{
+		CountingGeometries counted = new CountingGeometries(new Geometries(
+				sphere,
+				new Triangle(new Point(-40, -70, 0), new Point(-70, -40, 0), new Point(-68, -68, -4))
+						.setEmission(new Color(BLUE)).setMaterial(trMaterial)));
+		scene.geometries.add(counted);
+		scene.lights.add(new SpotLight(new Color(400, 240, 0), new Point(-100, -100, 200), new Vector(1, 1, -3))
+								 .setKl(1E-5).setKq(1.5E-7));
+		
+		final int size = 100;
+		RayTracerBasic full = new RayTracerBasic(scene).setAccelerator(Accelerator.Type.NONE).setSoftShadow(true);
+		RayTracerBasic adaptive = new RayTracerBasic(scene).setAccelerator(Accelerator.Type.NONE)
+				.setSoftShadow(true).setAdaptiveShadow(true);
+		
+		Color[] fullColors = new Color[size * size];
+		for (int i = 0; i < size * size; i++)
+		{
+			Sampler.seed(i % size, i / size);
+			fullColors[i] = full.traceRay(camera.constructRay(size, size, i % size, i / size));
+		}
+		int fullRays = counted.shadowRays;
+		
+		counted.shadowRays = 0;
+		int worst = 0;
+		long total = 0;
+		for (int i = 0; i < size * size; i++)
+		{
+			Sampler.seed(i % size, i / size);
+			java.awt.Color expected = fullColors[i].getColor();
+			java.awt.Color actual = adaptive.traceRay(camera.constructRay(size, size, i % size, i / size)).getColor();
+			int difference = Math.max(Math.abs(expected.getRed() - actual.getRed()),
+									  Math.max(Math.abs(expected.getGreen() - actual.getGreen()),
+											   Math.abs(expected.getBlue() - actual.getBlue())));
+			worst = Math.max(worst, difference);
+			total += difference;
+		}
+		int adaptiveRays = counted.shadowRays;
+		
+		// ============ Equivalence Partitions Tests ==============
+		// TC01: the pixels agree with the full beam - only a few pixels along the penumbra, where a shadow edge
+		// passes between the samples tested, differ noticeably
+		assertTrue(total < size * size / 4, "adaptive soft shadow differs from the full beam on average by "
+				+ (double) total / (size * size) + " levels");
+		assertTrue(worst <= 32, "adaptive soft shadow differs from the full beam by " + worst + " levels");
+		
+		// TC02: the adaptive beam traces far fewer shadow rays - most points are out of the penumbra
+		assertTrue(adaptiveRays < fullRays / 2,
+				   "adaptive soft shadow traced " + adaptiveRays + " shadow rays, the full beam " + fullRays);
+	}
+	
 	/**
 	 * Sphere-Triangle shading - move triangle up-right
 	 */
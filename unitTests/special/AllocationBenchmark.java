@@ -0,0 +1,115 @@
+package special;
+
+import geometries.Plane;
+import geometries.Sphere;
+import geometries.Triangle;
+import lighting.AmbientLight;
+import lighting.DirectionalLight;
+import lighting.PointLight;
+import lighting.SpotLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import renderer.Camera;
+import renderer.RayTracerBasic;
+import scene.Scene;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocated per primary ray - for constructing the ray, and for tracing and shading it -
+ * in a scene with reflections, refractions and shadows of three kinds of lights.
+ * The allocated bytes are counted per thread by the JVM, so the numbers do not depend on the garbage collector.
+ *
+ * @author Yair and Noam
+ */
+public class AllocationBenchmark
+{
+	/**
+	 * The amount of pixels along each axis of the measured image
+	 */
+	private static final int SIZE = 200;
+
+	/**
+	 * The amount of times the image is traced before measuring, for the JIT compiler to settle
+	 */
+	private static final int WARMUP = 3;
+
+	/**
+	 * The thread bean of the JVM, fetched once - fetching it allocates
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Creates the measured scene.
+	 *
+	 * @return the scene
+	 */
+	private static Scene createScene()
+	{
+		Scene scene = new Scene.SceneBuilder("Allocation benchmark")
+				.setAmbientLight(new AmbientLight(new Color(java.awt.Color.WHITE), 0.1)).build();
+
+		Material shiny = new Material().setKd(0.5).setKs(0.5).setShininess(60);
+		scene.geometries.add(
+				new Plane(new Point(0, 0, -100), new Vector(0, 0, 1)).setEmission(new Color(20, 20, 20))
+						.setMaterial(new Material().setKd(0.6).setKs(0.2).setShininess(20).setKr(0.3)),
+				new Sphere(40, new Point(-50, 0, -60)).setEmission(new Color(80, 0, 0))
+						.setMaterial(new Material().setKd(0.4).setKs(0.3).setShininess(100).setKt(0.5)),
+				new Sphere(30, new Point(50, 20, -70)).setEmission(new Color(0, 60, 90)).setMaterial(shiny),
+				new Triangle(new Point(-150, -150, -90), new Point(150, -150, -90), new Point(0, 150, -20))
+						.setEmission(new Color(30, 30, 10)).setMaterial(shiny));
+
+		scene.lights.add(new PointLight(new Color(500, 400, 300), new Point(-100, 100, 100)).setKl(0.0005));
+		scene.lights.add(new SpotLight(new Color(400, 400, 600), new Point(100, -50, 150), new Vector(-1, 0.5, -2))
+								 .setKl(0.0005));
+		scene.lights.add(new DirectionalLight(new Color(100, 100, 100), new Vector(1, 1, -2)));
+		return scene;
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread so far.
+	 *
+	 * @return the allocated bytes
+	 */
+	private static long allocatedBytes()
+	{
+		return THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Measures the bytes allocated per primary ray, and prints them.
+	 */
+	@Test
+	public void allocationPerRay()
+	{
+		Scene scene = createScene();
+		RayTracerBasic tracer = new RayTracerBasic(scene);
+		Camera camera = new Camera(new Point(0, -300, 200), new Vector(0, 300, -250), new Vector(0, 250, 300))
+				.setVPSize(200, 200).setVPDistance(300).setRayTracer(tracer);
+
+		long constructBytes = 0, traceBytes = 0;
+		for (int round = 0; round <= WARMUP; round++)
+		{
+			constructBytes = traceBytes = 0;
+			for (int i = 0; i < SIZE; i++)
+			{
+				for (int j = 0; j < SIZE; j++)
+				{
+					long start = allocatedBytes();
+					Ray ray = camera.constructRay(SIZE, SIZE, j, i);
+					long constructed = allocatedBytes();
+					tracer.traceRay(ray);
+					long traced = allocatedBytes();
+
+					constructBytes += constructed - start;
+					traceBytes += traced - constructed;
+				}
+			}
+		}
+
+		double rays = SIZE * SIZE;
+		System.out.printf("bytes per primary ray: construction %.0f, tracing and shading %.0f%n",
+						  constructBytes / rays, traceBytes / rays);
+	}
+}
@@ -0,0 +1,114 @@
+package special;
+
+import geometries.Accelerator;
+import geometries.Cylinder;
+import geometries.Plane;
+import geometries.Sphere;
+import geometries.Tube;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import renderer.Camera;
+import renderer.RayTracerBasic;
+import scene.Scene;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Measures the time per call of the degenerate configurations of the geometries and lights - a ray that
+ * starts at the center of a sphere or at the reference point of a plane, a normal at the foot of an axis, the
+ * direction of a light at its own position - and the time per primary ray of a camera placed at the center
+ * of a sphere, which meets the first of them on every ray.
+ *
+ * @author Yair and Noam
+ */
+public class DegenerateBenchmark
+{
+	/**
+	 * The amount of calls measured per case
+	 */
+	private static final int CALLS = 200_000;
+
+	/**
+	 * The amount of times every case runs before measuring, for the JIT compiler to settle
+	 */
+	private static final int WARMUP = 3;
+
+	/**
+	 * The amount of pixels along each axis of the image traced from the center of a sphere
+	 */
+	private static final int SIZE = 200;
+
+	/**
+	 * Runs a case several times, and prints the time per call of the last run.
+	 *
+	 * @param name  the name of the case
+	 * @param calls the amount of calls in a run
+	 * @param call  the call, given its index
+	 */
+	private static void measure(String name, int calls, IntConsumer call)
+	{
+		long time = 0;
+		for (int round = 0; round <= WARMUP; round++)
+		{
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				call.accept(i);
+			time = System.nanoTime() - start;
+		}
+		System.out.printf("%-40s %8.1f ns%n", name, (double) time / calls);
+	}
+
+	/**
+	 * Measures the degenerate cases one by one, and prints the time per call of each.
+	 */
+	@Test
+	public void degenerateCases()
+	{
+		Point center = new Point(1, 2, 3);
+		Vector[] directions = new Vector[64];
+		for (int i = 0; i < directions.length; i++)
+			directions[i] = new Vector(Math.cos(i), Math.sin(i), 0.3 + i % 5);
+
+		Sphere sphere = new Sphere(5, center);
+		measure("sphere, ray from the center", CALLS,
+				i -> sphere.findGeoIntersections(new Ray(center, directions[i & 63])));
+
+		Plane plane = new Plane(center, new Vector(0, 0, 1));
+		measure("plane, ray from the reference point", CALLS,
+				i -> plane.findGeoIntersections(new Ray(center, directions[i & 63])));
+
+		Tube tube = new Tube(2, new Ray(center, new Vector(0, 0, 1)));
+		Point onBase = new Point(3, 2, 3);
+		measure("tube, normal at the foot of the axis", CALLS, i -> tube.getNormal(onBase));
+
+		Cylinder cylinder = new Cylinder(2, new Ray(center, new Vector(0, 0, 1)), 4);
+		measure("cylinder, normal at the base center", CALLS, i -> cylinder.getNormal(center));
+
+		PointLight light = new PointLight(new Color(100, 100, 100), center);
+		measure("point light, direction at its position", CALLS, i -> light.getL(center));
+	}
+
+	/**
+	 * Measures the time per primary ray of a camera at the center of a sphere, lit by a light at its center,
+	 * with all the intersections of every ray collected, and prints it.
+	 */
+	@Test
+	public void cameraAtSphereCenter()
+	{
+		Point center = new Point(0, 0, 0);
+		Scene scene = new Scene.SceneBuilder("Degenerate benchmark")
+				.setAmbientLight(new AmbientLight(new Color(java.awt.Color.WHITE), 0.1)).build();
+		scene.geometries.add(new Sphere(100, center).setEmission(new Color(30, 30, 60))
+									 .setMaterial(new Material().setKd(0.5).setKs(0.3).setShininess(20)));
+		scene.lights.add(new PointLight(new Color(300, 300, 300), center));
+
+		RayTracerBasic tracer = new RayTracerBasic(scene).setAccelerator(Accelerator.Type.NONE);
+		Camera camera = new Camera(center, new Vector(0, 1, 0), new Vector(0, 0, 1))
+				.setVPSize(200, 200).setVPDistance(100).setRayTracer(tracer);
+
+		measure("camera at the sphere center, per ray", SIZE * SIZE,
+				i -> tracer.traceRay(camera.constructRay(SIZE, SIZE, i % SIZE, i / SIZE)));
+	}
+}